@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+
+/**
+ * Copies files using <tt>FileChannel.transferTo</tt>, which lets the operating system copy the bytes
+ * without reading them into a buffer, so files of any size can be copied.
+ * <p/>
+ * A directory is copied by a number of threads in parallel, where each thread takes the next file
+ * to copy until all the files are copied.
+ * <p/>
+ * A file is first copied to a <tt>.part</tt> file, which is renamed when the file is complete and given
+ * the last modified time of the source. When copying a directory again the complete files are skipped,
+ * and the <tt>.part</tt> files are continued where they were stopped, so a copy can be resumed.
+ * A <tt>.part</tt> file is copied again from the start if the source has been modified since
+ * the <tt>.part</tt> file was last written.
+ * <p/>
+ * In a Camel route use {@link #copyTo(File)} to copy the files consumed by the file component:
+ * <pre>
+ * from("file:data/inbox?noop=true").threads(4).process(new DirectoryCopier().copyTo(new File("data/outbox")));
+ * </pre>
+ *
+ * @version $Revision: 95 $
+ */
+public class DirectoryCopier {
+
+    public static final String PART_SUFFIX = ".part";
+
+    private int concurrency = 4;
+    private long chunkSize = 64 * 1024 * 1024;
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Number of files to copy in parallel when copying a directory, default 4
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Max number of bytes to transfer per call, default 64 MB
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Number of files copied
+     */
+    public long getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    /**
+     * Number of files skipped as they were already copied
+     */
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * Number of bytes copied, not counting the bytes of a resumed file copied earlier
+     */
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    /**
+     * Copies the files in the source directory and its sub directories to the target directory
+     */
+    public void copyDirectory(File source, File target) throws IOException, InterruptedException {
+        final List<File[]> files = new ArrayList<File[]>();
+        list(source, target, files);
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        int threads = Math.max(1, Math.min(concurrency, files.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        int index;
+                        while (failure.get() == null && (index = next.getAndIncrement()) < files.size()) {
+                            File[] pair = files.get(index);
+                            try {
+                                copyFile(pair[0], pair[1]);
+                            } catch (Throwable e) {
+                                // also keep runtime exceptions and errors, which would otherwise only end the thread
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause != null) {
+            IOException e = new IOException("Could not copy " + source);
+            e.initCause(cause);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the source file to the target file, unless it has already been copied
+     *
+     * @return <tt>true</tt> if the file was copied, <tt>false</tt> if it was skipped
+     */
+    public boolean copyFile(File source, File target) throws IOException {
+        long size = source.length();
+        if (target.exists() && target.length() == size && target.lastModified() == source.lastModified()) {
+            skippedFiles.incrementAndGet();
+            return false;
+        }
+
+        // continue a partial copy from where it was stopped, unless the source has changed since
+        File part = new File(target.getPath() + PART_SUFFIX);
+        long position = 0;
+        if (part.exists() && part.length() <= size && part.lastModified() >= source.lastModified()) {
+            position = part.length();
+        }
+
+        FileChannel in = new FileInputStream(source).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(part, position > 0).getChannel();
+            try {
+                while (position < size) {
+                    long count = in.transferTo(position, Math.min(chunkSize, size - position), out);
+                    if (count <= 0) {
+                        throw new IOException("Could not copy " + source + " at position " + position);
+                    }
+                    position += count;
+                    copiedBytes.addAndGet(count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        part.setLastModified(source.lastModified());
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Could not delete " + target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Could not rename " + part + " to " + target);
+        }
+        copiedFiles.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * A processor which copies the file in the message body to the target directory
+     */
+    public Processor copyTo(final File directory) {
+        directory.mkdirs();
+        return new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                File source = exchange.getIn().getMandatoryBody(File.class);
+                String name = exchange.getIn().getHeader(Exchange.FILE_NAME, source.getName(), String.class);
+                File target = new File(directory, name);
+                target.getParentFile().mkdirs();
+                copyFile(source, target);
+            }
+        };
+    }
+
+    private static void list(File source, File target, List<File[]> files) throws IOException {
+        File[] children = source.listFiles();
+        if (children == null) {
+            throw new IOException("Could not list " + source);
+        }
+        target.mkdirs();
+        for (File child : children) {
+            if (child.isDirectory()) {
+                list(child, new File(target, child.getName()), files);
+            } else {
+                files.add(new File[] {child, new File(target, child.getName())});
+            }
+        }
+    }
+}
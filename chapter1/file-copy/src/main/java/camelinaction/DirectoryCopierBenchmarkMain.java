@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A main class which measures copying a directory with the original <tt>byte[]</tt> per file copy
+ * of {@link FileCopier}, against the {@link DirectoryCopier} using one thread and using 4 threads.
+ * <p/>
+ * Run it with <tt>mvn compile exec:java -Dexec.mainClass=camelinaction.DirectoryCopierBenchmarkMain -Dexec.args="100000 1024"</tt>
+ * where the arguments are the number of files and the size of each file in bytes, optionally followed
+ * by the modes to run, eg <tt>nio-1,nio-4</tt>. The files are created
+ * in <tt>target/copy/inbox</tt> the first time, and the big files are created as sparse files.
+ *
+ * @version $Revision: 95 $
+ */
+public class DirectoryCopierBenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long size = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+
+        File inbox = new File("target/copy/inbox-" + files + "-" + size);
+        if (!inbox.exists()) {
+            System.out.println("Creating " + files + " files of " + size + " bytes in " + inbox);
+            create(inbox, files, size);
+        }
+        long total = files * size;
+
+        String[] modes = args.length > 2 ? args[2].split(",") : new String[] {"byte[]", "nio-1", "nio-4"};
+        for (String mode : modes) {
+            // copy to a new directory each time, as deleting the files of the previous copy slows down the next copy
+            File outbox = new File("target/copy/outbox-" + mode);
+            delete(outbox);
+            outbox.mkdirs();
+
+            long start = System.currentTimeMillis();
+            try {
+                if ("byte[]".equals(mode)) {
+                    for (File source : inbox.listFiles()) {
+                        copyWithBuffer(source, new File(outbox, source.getName()));
+                    }
+                } else {
+                    DirectoryCopier copier = new DirectoryCopier();
+                    copier.setConcurrency("nio-1".equals(mode) ? 1 : 4);
+                    copier.copyDirectory(inbox, outbox);
+                }
+            } catch (Throwable e) {
+                System.out.println(String.format("  %-8s failed: %s", mode, e));
+                continue;
+            }
+            long delta = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println(String.format("  %-8s %d files in %d millis (%d files/sec, %d MB/sec)",
+                    mode, files, delta, files * 1000L / delta, total * 1000 / delta / (1024 * 1024)));
+        }
+        for (String mode : modes) {
+            delete(new File("target/copy/outbox-" + mode));
+        }
+    }
+
+    /**
+     * The copy from the original {@link FileCopier} which reads the entire file into a <tt>byte[]</tt>
+     */
+    private static void copyWithBuffer(File source, File dest) throws IOException {
+        FileOutputStream out = new FileOutputStream(dest);
+        byte[] buffer = new byte[(int) source.length()];
+        FileInputStream in = new FileInputStream(source);
+        in.read(buffer);
+        try {
+            out.write(buffer);
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    private static void create(File dir, int files, long size) throws IOException {
+        dir.mkdirs();
+        byte[] data = new byte[(int) Math.min(size, 1024 * 1024)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        for (int i = 0; i < files; i++) {
+            File file = new File(dir, "file" + i + ".dat");
+            if (size > data.length) {
+                // create big files as sparse files with some data at the start
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.write(data);
+                    raf.setLength(size);
+                } finally {
+                    raf.close();
+                }
+            } else {
+                FileOutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(data);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
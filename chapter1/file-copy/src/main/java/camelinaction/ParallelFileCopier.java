@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+
+/**
+ * The same as {@link FileCopier} but using the {@link DirectoryCopier}, which copies the files in parallel,
+ * also works for files too big to read into memory, and can resume a copy which was stopped.
+ *
+ * @version $Revision: 95 $
+ */
+public class ParallelFileCopier {
+
+    public static void main(String args[]) throws Exception {
+        File inboxDirectory = new File("data/inbox");
+        File outboxDirectory = new File("data/outbox");
+        
+        // copy the files in parallel using FileChannel.transferTo, which also works
+        // for files too big to read into memory, and skips the files already copied
+        DirectoryCopier copier = new DirectoryCopier();
+        copier.copyDirectory(inboxDirectory, outboxDirectory);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class DirectoryCopierTest extends TestCase {
+
+    private final File inbox = new File("target/copier/inbox");
+    private final File outbox = new File("target/copier/outbox");
+
+    @Override
+    protected void setUp() throws Exception {
+        delete(new File("target/copier"));
+        new File(inbox, "orders").mkdirs();
+        for (int i = 0; i < 50; i++) {
+            write(new File(inbox, "message" + i + ".xml"), 100 + i);
+        }
+        write(new File(inbox, "orders/big.csv"), 3 * 1024 * 1024 + 7);
+        write(new File(inbox, "empty.txt"), 0);
+    }
+
+    public void testCopyDirectory() throws Exception {
+        DirectoryCopier copier = new DirectoryCopier();
+        // use small chunks so the big file is transferred in several calls
+        copier.setChunkSize(1024 * 1024);
+        copier.copyDirectory(inbox, outbox);
+
+        assertEquals(52, copier.getCopiedFiles());
+        assertEquals(0, copier.getSkippedFiles());
+        assertSameContent(new File(inbox, "message7.xml"), new File(outbox, "message7.xml"));
+        assertSameContent(new File(inbox, "orders/big.csv"), new File(outbox, "orders/big.csv"));
+        assertSameContent(new File(inbox, "empty.txt"), new File(outbox, "empty.txt"));
+
+        // copying again skips all the files
+        DirectoryCopier again = new DirectoryCopier();
+        again.copyDirectory(inbox, outbox);
+        assertEquals(0, again.getCopiedFiles());
+        assertEquals(52, again.getSkippedFiles());
+    }
+
+    public void testResume() throws Exception {
+        File source = new File(inbox, "orders/big.csv");
+        File target = new File(outbox, "orders/big.csv");
+        target.getParentFile().mkdirs();
+
+        // simulate a copy which was stopped half way
+        byte[] data = read(source);
+        FileOutputStream out = new FileOutputStream(new File(target.getPath() + DirectoryCopier.PART_SUFFIX));
+        out.write(data, 0, data.length / 2);
+        out.close();
+
+        DirectoryCopier copier = new DirectoryCopier();
+        assertTrue(copier.copyFile(source, target));
+
+        assertEquals(data.length - data.length / 2, copier.getCopiedBytes());
+        assertSameContent(source, target);
+        assertFalse(new File(target.getPath() + DirectoryCopier.PART_SUFFIX).exists());
+        assertEquals(source.lastModified(), target.lastModified());
+    }
+
+    public void testResumeChangedSource() throws Exception {
+        File source = new File(inbox, "orders/big.csv");
+        File target = new File(outbox, "orders/big.csv");
+        target.getParentFile().mkdirs();
+
+        File part = new File(target.getPath() + DirectoryCopier.PART_SUFFIX);
+        FileOutputStream out = new FileOutputStream(part);
+        out.write(new byte[1000]);
+        out.close();
+        // the source is modified after the copy was stopped
+        source.setLastModified(part.lastModified() + 5000);
+
+        DirectoryCopier copier = new DirectoryCopier();
+        assertTrue(copier.copyFile(source, target));
+
+        assertEquals(source.length(), copier.getCopiedBytes());
+        assertSameContent(source, target);
+    }
+
+    public void testFailure() throws Exception {
+        DirectoryCopier copier = new DirectoryCopier() {
+            @Override
+            public boolean copyFile(File source, File target) throws IOException {
+                if (source.getName().equals("message7.xml")) {
+                    throw new IllegalStateException("Forced");
+                }
+                return super.copyFile(source, target);
+            }
+        };
+
+        try {
+            copier.copyDirectory(inbox, outbox);
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+            assertEquals("Forced", e.getMessage());
+        }
+    }
+
+    private static void assertSameContent(File expected, File actual) throws IOException {
+        assertTrue(actual + " should exist", actual.exists());
+        assertTrue(actual + " has different content", Arrays.equals(read(expected), read(actual)));
+    }
+
+    private static void write(File file, int size) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                offset += in.read(data, offset, data.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.ThreadPoolProfileSupport;
+import org.apache.camel.model.language.SimpleExpression;
+import org.apache.camel.model.SplitDefinition;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * A main class which runs the big file example with each of the concurrency strategies
+ * (plain, parallel, fixed pool, cached pool, SEDA, virtual threads, lanes and bounded) against a generated file, and records
+ * the throughput, the per line latency (p50 and p99), the peak heap and the peak thread count.
+ * <p/>
+ * The results are printed and written to <tt>target/benchmark/results.csv</tt> and
+ * <tt>target/benchmark/results.json</tt>.
+ * <p/>
+ * Run it with <tt>mvn compile exec:java -PBigFileBenchmark -Dlines=10000 -Ddelay=10</tt>
+ * where <tt>lines</tt> is the number of lines in the file and <tt>delay</tt> is the simulated
+ * time in millis to update the inventory. The strategies to run can be selected using
+ * <tt>-Dstrategies=parallel,seda</tt>.
+ *
+ * @version $Revision: 95 $
+ */
+public class BigFileBenchmarkMain {
+
+    private static final String PROPERTY_START = "BenchmarkLineStart";
+
+    /**
+     * The concurrency strategies from the BigFile*Test examples, and the virtual thread
+     * pool profile from the chapter 10 pools example (requires Java 21), the ordered {@link PartitionedLanes}
+     * and the fixed pool with a {@link BoundedExecutorService} window
+     */
+    enum Strategy {
+        plain, parallel, fixedPool, cachedPool, seda, virtual, lanes, bounded
+    }
+
+    public static void main(String[] args) throws Exception {
+        int lines = Integer.parseInt(System.getProperty("lines", "1000"));
+        if (args.length > 0 && args[0].matches("\\d+")) {
+            lines = Integer.parseInt(args[0]);
+        }
+        long delay = Long.parseLong(System.getProperty("delay", "10"));
+
+        List<Strategy> strategies = new ArrayList<Strategy>();
+        String names = System.getProperty("strategies");
+        if (names == null || names.length() == 0) {
+            strategies.addAll(Arrays.asList(Strategy.values()));
+        } else {
+            for (String name : names.split(",")) {
+                strategies.add(Strategy.valueOf(name.trim()));
+            }
+        }
+
+        // do not let the logging per line be part of the measurement
+        Logger.getLogger(InventoryService.class).setLevel(Level.WARN);
+
+        File dir = new File("target/benchmark/inventory");
+        dir.mkdirs();
+        File file = new File(dir, "bigfile.csv");
+        file.delete();
+        System.out.println("Creating " + file + " with " + lines + " lines");
+        CreateBigFileMain.createBigFile(file, lines);
+
+        List<Result> results = new ArrayList<Result>();
+        for (Strategy strategy : strategies) {
+            System.out.println("Running " + strategy + " with " + lines + " lines and " + delay + " millis delay");
+            Result result = run(strategy, lines, delay);
+            System.out.println("  " + result);
+            results.add(result);
+        }
+
+        writeCsv(new File("target/benchmark/results.csv"), results);
+        writeJson(new File("target/benchmark/results.json"), results);
+        System.out.println("Results written to target/benchmark/results.csv and target/benchmark/results.json");
+    }
+
+    private static Result run(final Strategy strategy, int lines, long delay) throws Exception {
+        final InventoryService service = new InventoryService();
+        service.setUpdateDelay(delay);
+        final LatencyRecorder recorder = new LatencyRecorder(lines);
+
+        ExecutorService threadPool = null;
+        if (strategy == Strategy.fixedPool) {
+            threadPool = Executors.newFixedThreadPool(20);
+        } else if (strategy == Strategy.cachedPool) {
+            threadPool = Executors.newCachedThreadPool();
+        } else if (strategy == Strategy.bounded) {
+            threadPool = new BoundedExecutorService(Executors.newFixedThreadPool(20), 100);
+        }
+        final ExecutorService pool = threadPool;
+
+        CamelContext context = new DefaultCamelContext();
+        if (strategy == Strategy.virtual) {
+            context.getExecutorServiceManager().setThreadPoolFactory(new VirtualThreadPoolFactory());
+            context.getExecutorServiceManager().registerThreadPoolProfile(
+                    new ThreadPoolProfileSupport(VirtualThreadPoolFactory.DEFAULT_PROFILE_ID));
+        }
+        final PartitionedLanes lanes = strategy == Strategy.lanes
+                ? new PartitionedLanes(new SimpleExpression("${body.partId}"), "direct:update", 20) : null;
+        if (lanes != null) {
+            context.addService(lanes);
+        }
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                SplitDefinition split = from("file:target/benchmark/inventory?noop=true&initialDelay=0")
+                    .split(body().tokenize("\n")).streaming();
+                if (strategy == Strategy.parallel) {
+                    split.parallelProcessing();
+                } else if (strategy == Strategy.virtual) {
+                    split.executorServiceRef(VirtualThreadPoolFactory.DEFAULT_PROFILE_ID);
+                } else if (pool != null) {
+                    split.executorService(pool);
+                }
+                split.process(new Processor() {
+                    public void process(Exchange exchange) throws Exception {
+                        exchange.setProperty(PROPERTY_START, System.nanoTime());
+                    }
+                })
+                    .bean(service, "csvToObject");
+                if (lanes != null) {
+                    split.process(lanes);
+                } else {
+                    split.to(strategy == Strategy.seda ? "seda:update" : "direct:update");
+                }
+
+                from(strategy == Strategy.seda ? "seda:update?concurrentConsumers=20" : "direct:update")
+                    .bean(service, "updateInventory")
+                    .process(recorder);
+            }
+        });
+
+        System.gc();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        for (MemoryPoolMXBean memory : ManagementFactory.getMemoryPoolMXBeans()) {
+            memory.resetPeakUsage();
+        }
+
+        long start = System.currentTimeMillis();
+        context.start();
+        boolean done = recorder.await(lines * delay + 60000);
+        long duration = System.currentTimeMillis() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean memory : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memory.getType() == MemoryType.HEAP) {
+                peakHeap += memory.getPeakUsage().getUsed();
+            }
+        }
+        int peakThreads = threads.getPeakThreadCount();
+
+        context.stop();
+        if (pool instanceof BoundedExecutorService) {
+            BoundedExecutorService bounded = (BoundedExecutorService) pool;
+            System.out.println("  Window " + bounded.getWindow() + " with peak " + bounded.getPeakInflight()
+                    + " in flight, reader stalled " + bounded.getStallCount() + " times for " + bounded.getStallTime() + " millis");
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (!done) {
+            System.out.println("  Timeout waiting for " + strategy + " to complete, only "
+                    + recorder.getCount() + " lines processed");
+        }
+
+        return new Result(strategy.name(), recorder.getCount(), delay, duration,
+                recorder.percentile(50), recorder.percentile(99), peakHeap, peakThreads);
+    }
+
+    private static void writeCsv(File file, List<Result> results) throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("strategy,lines,delayMillis,durationMillis,linesPerSecond,p50Millis,p99Millis,peakHeapBytes,peakThreads");
+            for (Result result : results) {
+                writer.println(result.strategy + "," + result.lines + "," + result.delay + "," + result.duration + ","
+                        + result.throughput() + "," + result.p50 + "," + result.p99 + ","
+                        + result.peakHeap + "," + result.peakThreads);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeJson(File file, List<Result> results) throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                writer.print("  {\"strategy\": \"" + result.strategy + "\", \"lines\": " + result.lines
+                        + ", \"delayMillis\": " + result.delay + ", \"durationMillis\": " + result.duration
+                        + ", \"linesPerSecond\": " + result.throughput() + ", \"p50Millis\": " + result.p50
+                        + ", \"p99Millis\": " + result.p99 + ", \"peakHeapBytes\": " + result.peakHeap
+                        + ", \"peakThreads\": " + result.peakThreads + "}");
+                writer.println(i < results.size() - 1 ? "," : "");
+            }
+            writer.println("]");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Records the latency of each line, from when the line was split until the inventory was updated
+     */
+    private static final class LatencyRecorder implements Processor {
+
+        private final long[] latencies;
+        private final AtomicInteger count = new AtomicInteger();
+        private final CountDownLatch latch;
+
+        private LatencyRecorder(int lines) {
+            this.latencies = new long[lines];
+            this.latch = new CountDownLatch(lines);
+        }
+
+        public void process(Exchange exchange) throws Exception {
+            Long start = exchange.getProperty(PROPERTY_START, Long.class);
+            int index = count.getAndIncrement();
+            if (start != null && index < latencies.length) {
+                latencies[index] = System.nanoTime() - start;
+            }
+            latch.countDown();
+        }
+
+        boolean await(long timeout) throws InterruptedException {
+            return latch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        int getCount() {
+            return Math.min(count.get(), latencies.length);
+        }
+
+        double percentile(int percentile) {
+            int size = getCount();
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return sorted[Math.max(0, index)] / 1000000.0;
+        }
+    }
+
+    private static final class Result {
+        private final String strategy;
+        private final int lines;
+        private final long delay;
+        private final long duration;
+        private final double p50;
+        private final double p99;
+        private final long peakHeap;
+        private final int peakThreads;
+
+        private Result(String strategy, int lines, long delay, long duration, double p50, double p99,
+                       long peakHeap, int peakThreads) {
+            this.strategy = strategy;
+            this.lines = lines;
+            this.delay = delay;
+            this.duration = duration;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.peakHeap = peakHeap;
+            this.peakThreads = peakThreads;
+        }
+
+        long throughput() {
+            return duration == 0 ? 0 : lines * 1000L / duration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines in %d millis (%d lines/sec), p50 %.1f ms, p99 %.1f ms, peak heap %d MB, peak threads %d",
+                    lines, duration, throughput(), p50, p99, peakHeap / (1024 * 1024), peakThreads);
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link ExecutorService} which allows at most <tt>window</tt> tasks to be outstanding, which are the
+ * tasks waiting in the queue or being executed by the delegate thread pool.
+ * <p/>
+ * Use it as the thread pool of a streaming parallel splitter, so the splitter blocks reading the next
+ * line when the window is full, instead of queuing up tasks for the entire file when the lines are
+ * processed slower than they are read. This keeps the memory flat no matter the size of the file, and
+ * keeps the thread pool busy as long as the window is larger than the pool:
+ * <pre>
+ * ExecutorService pool = new BoundedExecutorService(Executors.newFixedThreadPool(20), 100);
+ *
+ * from("file:target/inventory")
+ *     .split(body().tokenize("\n")).streaming().executorService(pool)
+ *         ...
+ * </pre>
+ * The window occupancy and the time the splitter was stalled waiting for the window are available as metrics.
+ *
+ * @version $Revision: 95 $
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final int window;
+    private final Semaphore permits;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicInteger peakInflight = new AtomicInteger();
+    private final AtomicLong stallCount = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+
+    /**
+     * @param delegate the thread pool which executes the tasks
+     * @param window   the maximum number of outstanding tasks
+     */
+    public BoundedExecutorService(ExecutorService delegate, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive, was " + window);
+        }
+        this.delegate = delegate;
+        this.window = window;
+        this.permits = new Semaphore(window);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Number of tasks currently outstanding
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * The highest number of tasks outstanding at the same time
+     */
+    public int getPeakInflight() {
+        return peakInflight.get();
+    }
+
+    /**
+     * Number of times a task could not be submitted right away as the window was full
+     */
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    /**
+     * Total time in millis spent waiting for the window
+     */
+    public long getStallTime() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.get());
+    }
+
+    public void execute(final Runnable task) {
+        if (!permits.tryAcquire()) {
+            // the window is full so wait for a task to complete
+            long start = System.nanoTime();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the window", e);
+            } finally {
+                stallCount.incrementAndGet();
+                stallNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        int current = inflight.incrementAndGet();
+        int peak = peakInflight.get();
+        while (current > peak && !peakInflight.compareAndSet(peak, current)) {
+            peak = peakInflight.get();
+        }
+
+        try {
+            delegate.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private void release() {
+        inflight.decrementAndGet();
+        permits.release();
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedExecutorService[window=" + window + ", inflight=" + inflight.get() + "]";
+    }
+}
@@ -43,7 +43,7 @@ public class CreateBigFileMain {
         System.out.println("Creating target/inventory/bigfile.csv done");
     }
 
-    private static void createBigFile(File file, int lines) throws Exception {
+    static void createBigFile(File file, int lines) throws Exception {
         FileOutputStream fos = new FileOutputStream(file);
         for (int i = 0; i < lines; i++) {
             String line = "123," + i + ",bumper,4\n";
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A single CSV line as a view over the bytes of a memory mapped file.
+ * <p/>
+ * The line and field boundaries are found by {@link MappedFileSplitter} while it scans the bytes,
+ * so no <tt>String</tt> is created unless a field is explicitly asked for as text.
+ *
+ * @version $Revision: 95 $
+ */
+public final class CsvLine {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    // the end position (exclusive) of each field, relative to offset
+    private final int[] fieldEnds;
+
+    public CsvLine(ByteBuffer buffer, int offset, int length, int[] fieldEnds) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.fieldEnds = fieldEnds;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getFieldCount() {
+        return fieldEnds.length;
+    }
+
+    /**
+     * Gets the field as text
+     */
+    public String getField(int index) {
+        int start = fieldStart(index);
+        return new String(copyBytes(start, fieldEnds[index] - start), UTF8);
+    }
+
+    /**
+     * Gets all the fields as text.
+     * <p/>
+     * The line is copied from the buffer at once and decoded once, which is cheaper than
+     * calling {@link #getField(int)} for each field.
+     */
+    public String[] getFields() {
+        byte[] bytes = copyBytes();
+        String[] answer = new String[fieldEnds.length];
+
+        // the fields are typically ASCII where a byte is a char, so the offsets are the same
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                // not ASCII so decode each field on its own
+                for (int j = 0; j < answer.length; j++) {
+                    int start = j == 0 ? 0 : fieldEnds[j - 1] + 1;
+                    answer[j] = new String(bytes, start, fieldEnds[j] - start, UTF8);
+                }
+                return answer;
+            }
+            chars[i] = (char) bytes[i];
+        }
+        int start = 0;
+        for (int i = 0; i < answer.length; i++) {
+            answer[i] = new String(chars, start, fieldEnds[i] - start);
+            start = fieldEnds[i] + 1;
+        }
+        return answer;
+    }
+
+    /**
+     * Gets the field as a number parsed directly from the bytes
+     */
+    public long getLong(int index) {
+        int start = fieldStart(index);
+        int end = fieldEnds[index];
+        if (start == end) {
+            throw new NumberFormatException("Field " + index + " is empty in CSV line: " + this);
+        }
+
+        boolean negative = false;
+        int pos = start;
+        if (buffer.get(offset + pos) == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long answer = 0;
+        for (; pos < end; pos++) {
+            int digit = buffer.get(offset + pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Field " + index + " is not a number in CSV line: " + this);
+            }
+            answer = answer * 10 + digit;
+        }
+        return negative ? -answer : answer;
+    }
+
+    /**
+     * Gets the field as a number parsed directly from the bytes
+     */
+    public int getInt(int index) {
+        long answer = getLong(index);
+        if (answer < Integer.MIN_VALUE || answer > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Field " + index + " is out of int range in CSV line: " + this);
+        }
+        return (int) answer;
+    }
+
+    /**
+     * Whether the field contains exactly the given bytes
+     */
+    public boolean fieldEquals(int index, byte[] bytes) {
+        int start = fieldStart(index);
+        if (fieldEnds[index] - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash code of the bytes in the field, computed the same way as {@link java.util.Arrays#hashCode(byte[])}
+     */
+    public int fieldHashCode(int index) {
+        int start = fieldStart(index);
+        int end = fieldEnds[index];
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        return hash;
+    }
+
+    private int fieldStart(int index) {
+        if (index < 0 || index >= fieldEnds.length) {
+            throw new IndexOutOfBoundsException("Field " + index + " does not exist in CSV line: " + this);
+        }
+        // skip the comma which ended the previous field
+        return index == 0 ? 0 : fieldEnds[index - 1] + 1;
+    }
+
+    private byte[] copyBytes() {
+        return copyBytes(0, length);
+    }
+
+    private byte[] copyBytes(int start, int count) {
+        byte[] bytes = new byte[count];
+        // a bulk get on a view, as the buffer is shared between the lines and threads
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + start);
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return new String(copyBytes(), UTF8);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+
+/**
+ * A main class which measures the throughput and heap usage of the {@link MappedIdempotentRepository}
+ * with and without the Bloom filter, and of the memory based idempotent repository, when adding a number
+ * of keys and then looking up keys which have been added and keys which have not.
+ * <p/>
+ * Run it with <tt>mvn compile exec:java -PIdempotentBenchmark -Dkeys=10000000</tt>
+ *
+ * @version $Revision: 95 $
+ */
+public class IdempotentRepositoryBenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        int keys = Integer.parseInt(System.getProperty("keys", "10000000"));
+        String names = System.getProperty("repositories", "mapped,mappedNoBloom,memory");
+
+        for (String name : names.split(",")) {
+            IdempotentRepository<String> repo;
+            File file = new File("target/benchmark/idempotent-" + name + ".dat");
+            file.delete();
+            if ("mapped".equals(name)) {
+                repo = new MappedIdempotentRepository(file, keys);
+            } else if ("mappedNoBloom".equals(name)) {
+                MappedIdempotentRepository mapped = new MappedIdempotentRepository(file, keys);
+                mapped.setFalsePositiveProbability(0);
+                repo = mapped;
+            } else {
+                repo = MemoryIdempotentRepository.memoryIdempotentRepository(keys);
+            }
+
+            System.out.println("Running " + name + " with " + keys + " keys");
+            long heap = usedHeap();
+            ((ServiceSupport) repo).start();
+            try {
+                measure("add", repo, keys, 0, true);
+                System.out.println(String.format("  %-20s %d MB heap, %d MB file", "retained",
+                        (usedHeap() - heap) / (1024 * 1024), file.length() / (1024 * 1024)));
+                measure("contains (seen)", repo, keys, 0, false);
+                measure("contains (not seen)", repo, keys, keys, false);
+            } catch (OutOfMemoryError e) {
+                System.out.println("  Out of memory");
+            } finally {
+                ((ServiceSupport) repo).stop();
+                file.delete();
+            }
+        }
+    }
+
+    private static void measure(String name, IdempotentRepository<String> repo, int keys, int offset, boolean add) {
+        long start = System.currentTimeMillis();
+        int found = 0;
+        for (int i = 0; i < keys; i++) {
+            // a key like the file consumer uses
+            String key = "/data/inventory/inbox/inventory-" + (offset + i) + ".csv";
+            if (add ? repo.add(key) : repo.contains(key)) {
+                found++;
+            }
+        }
+        long delta = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(String.format("  %-20s %d keys in %d millis (%d ops/sec), %d true",
+                name, keys, delta, keys * 1000L / delta, found));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
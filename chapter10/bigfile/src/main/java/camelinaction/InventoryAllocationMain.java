@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
+
+/**
+ * A main class which creates a big file and parses it in the different ways supported by
+ * {@link InventoryService} and prints the time taken and the number of bytes allocated per line.
+ * <p/>
+ * Run it with <tt>mvn compile exec:java -PAllocationBenchmark -Dlines=10000000</tt>
+ * <p/>
+ * The file is created in target/benchmark/allocation and not in target/inventory, as the
+ * tests of this example would otherwise process it line by line.
+ *
+ * @version $Revision: 95 $
+ */
+public class InventoryAllocationMain {
+
+    private static final InventoryService SERVICE = new InventoryService();
+
+    public static void main(String[] args) throws Exception {
+        int lines = Integer.parseInt(System.getProperty("lines", "1000000"));
+        if (args.length == 1) {
+            lines = Integer.parseInt(args[0]);
+        }
+
+        File dir = new File("target/benchmark/allocation");
+        dir.mkdirs();
+        File file = new File(dir, "bigfile.csv");
+        file.delete();
+        System.out.println("Creating " + file + " with " + lines + " lines");
+        CreateBigFileMain.createBigFile(file, lines);
+
+        // run twice to warm up the JVM before the 2nd run
+        for (int run = 1; run <= 2; run++) {
+            System.out.println("Run " + run + " on " + file + " (" + file.length() + " bytes)");
+            measure("String.split", file, 0);
+            measure("CsvLine to UpdateInventory", file, 1);
+            measure("CsvLine to InventoryRecord", file, 2);
+            measure("CsvLine to flyweight InventoryRecord", file, 3);
+        }
+    }
+
+    private static void measure(String name, File file, int mode) throws Exception {
+        long allocated = allocatedBytes();
+        long start = System.currentTimeMillis();
+
+        long lines = 0;
+        long checksum = 0;
+        if (mode == 0) {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    checksum += SERVICE.csvToObject(line).getPartId().length();
+                    lines++;
+                }
+            } finally {
+                reader.close();
+            }
+        } else {
+            Iterator<CsvLine> it = new MappedFileSplitter().split(file);
+            while (it.hasNext()) {
+                CsvLine line = it.next();
+                if (mode == 1) {
+                    checksum += SERVICE.csvToObject(line).getPartId().length();
+                } else if (mode == 2) {
+                    checksum += SERVICE.csvToRecord(line).getPartId();
+                } else {
+                    checksum += SERVICE.csvToFlyweight(line).getPartId();
+                }
+                lines++;
+            }
+        }
+
+        long delta = System.currentTimeMillis() - start;
+        allocated = allocatedBytes() - allocated;
+
+        System.out.println(String.format("  %-40s %d lines in %d millis, %d bytes allocated per line (checksum %d)",
+                name, lines, delta, lines > 0 ? allocated / lines : 0, checksum));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+}
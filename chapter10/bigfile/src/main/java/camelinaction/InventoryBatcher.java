@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+
+/**
+ * Batches {@link UpdateInventory} objects into a <tt>List</tt> so the inventory
+ * can be updated with one call per batch using {@link InventoryService#updateInventory(java.util.List)}.
+ * <p/>
+ * This is used as the aggregation strategy with the Aggregator EIP where a batch is
+ * completed when it has reached the batch size or when the linger time has passed since the first
+ * update in the batch:
+ * <pre>
+ * from("direct:update")
+ *     .aggregate(constant(true), batcher)
+ *         .completionSize(batcher.getBatchSize()).completionTimeout(bean(batcher, "remainingLingerTime"))
+ *     .bean(batcher, "flushed")
+ *     .bean(InventoryService.class, "updateInventory");
+ * </pre>
+ * A fixed completion timeout would be restarted by every update, so a steady trickle of updates
+ * would keep the batch waiting until it is full. Notice the aggregator checks for timeouts once per second.
+ * The <tt>flushed</tt> method keeps track of the number of batches flushed, the average fill
+ * of the batches, and the time the updates spent waiting in a batch.
+ *
+ * @version $Revision: 95 $
+ */
+public class InventoryBatcher implements AggregationStrategy {
+
+    /**
+     * Exchange property with the time the batch was started
+     */
+    public static final String BATCH_STARTED = "InventoryBatchStarted";
+
+    private int batchSize = 100;
+    private long lingerTime = 1000;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The maximum number of updates in a batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    /**
+     * The maximum time in millis a batch is waiting for more updates after its first update before it is flushed
+     */
+    public void setLingerTime(long lingerTime) {
+        this.lingerTime = lingerTime;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        UpdateInventory update = newExchange.getIn().getBody(UpdateInventory.class);
+
+        if (oldExchange == null) {
+            List<UpdateInventory> batch = new ArrayList<UpdateInventory>(batchSize);
+            batch.add(update);
+            newExchange.getIn().setBody(batch);
+            newExchange.setProperty(BATCH_STARTED, System.currentTimeMillis());
+            return newExchange;
+        }
+
+        List<UpdateInventory> batch = oldExchange.getIn().getBody(List.class);
+        batch.add(update);
+        return oldExchange;
+    }
+
+    /**
+     * The time in millis left of the linger time of the batch, to be used as completion timeout
+     * so the linger time is counted from the first update in the batch
+     */
+    public long remainingLingerTime(Exchange exchange) {
+        Long started = exchange.getProperty(BATCH_STARTED, Long.class);
+        if (started == null) {
+            return lingerTime;
+        }
+        // the aggregator ignores a timeout which is not positive
+        return Math.max(1, started + lingerTime - System.currentTimeMillis());
+    }
+
+    /**
+     * To be invoked when a batch has been completed and is flushed to the inventory service
+     */
+    public void flushed(Exchange exchange) {
+        List<?> batch = exchange.getIn().getBody(List.class);
+        Long started = exchange.getProperty(BATCH_STARTED, Long.class);
+
+        batches.incrementAndGet();
+        if (batch != null) {
+            updates.addAndGet(batch.size());
+        }
+        if (started != null) {
+            waitTime.addAndGet(System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * Number of batches flushed
+     */
+    public long getBatchesFlushed() {
+        return batches.get();
+    }
+
+    /**
+     * Number of updates flushed in all the batches
+     */
+    public long getUpdatesFlushed() {
+        return updates.get();
+    }
+
+    /**
+     * The average number of updates per batch
+     */
+    public double getAverageFill() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) updates.get() / count;
+    }
+
+    /**
+     * Total time in millis the batches have been waiting to be completed
+     */
+    public long getTotalWaitTime() {
+        return waitTime.get();
+    }
+
+    /**
+     * The average time in millis a batch was waiting to be completed
+     */
+    public long getAverageWaitTime() {
+        long count = batches.get();
+        return count == 0 ? 0 : waitTime.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryBatcher[batchSize=" + batchSize + ", lingerTime=" + lingerTime
+                + ", batchesFlushed=" + getBatchesFlushed() + ", averageFill=" + getAverageFill()
+                + ", averageWaitTime=" + getAverageWaitTime() + "]";
+    }
+}
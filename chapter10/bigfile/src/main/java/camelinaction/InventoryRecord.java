@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+/**
+ * A primitive typed inventory update, which is the compact counterpart of {@link UpdateInventory}.
+ * <p/>
+ * The numeric fields are parsed directly from the bytes of a {@link CsvLine} and the part name
+ * is interned using a {@link NameTable}, so parsing a line does not create any <tt>String</tt>.
+ * <p/>
+ * The record is mutable so it can be used as a flyweight, where a single instance per thread
+ * is reused for every line, see {@link #flyweight()}.
+ *
+ * @version $Revision: 95 $
+ */
+public final class InventoryRecord {
+
+    private static final NameTable NAMES = new NameTable();
+
+    private static final ThreadLocal<InventoryRecord> FLYWEIGHT = new ThreadLocal<InventoryRecord>() {
+        @Override
+        protected InventoryRecord initialValue() {
+            return new InventoryRecord();
+        }
+    };
+
+    private int supplierId;
+    private long partId;
+    private String name;
+    private int amount;
+
+    public InventoryRecord() {
+    }
+
+    public InventoryRecord(int supplierId, long partId, String name, int amount) {
+        this.supplierId = supplierId;
+        this.partId = partId;
+        this.name = name;
+        this.amount = amount;
+    }
+
+    /**
+     * Gets the flyweight instance for the current thread.
+     * <p/>
+     * <b>Important:</b> the instance is overwritten when the next line is parsed by the same thread,
+     * so it must only be used when each line is fully processed by the thread which parsed it,
+     * eg do not send it to a <tt>seda</tt> endpoint or keep it in an aggregator.
+     */
+    public static InventoryRecord flyweight() {
+        return FLYWEIGHT.get();
+    }
+
+    /**
+     * Parses the CSV line into this record
+     *
+     * @return this record
+     */
+    public InventoryRecord parse(CsvLine line) {
+        if (line.getFieldCount() != 4) {
+            throw new IllegalArgumentException("CSV line is not valid: " + line);
+        }
+
+        supplierId = line.getInt(0);
+        partId = line.getLong(1);
+        name = NAMES.intern(line, 2);
+        amount = line.getInt(3);
+        return this;
+    }
+
+    public int getSupplierId() {
+        return supplierId;
+    }
+
+    public void setSupplierId(int supplierId) {
+        this.supplierId = supplierId;
+    }
+
+    public long getPartId() {
+        return partId;
+    }
+
+    public void setPartId(long partId) {
+        this.partId = partId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public void setAmount(int amount) {
+        this.amount = amount;
+    }
+
+    /**
+     * Creates a {@link UpdateInventory} with the values of this record
+     */
+    public UpdateInventory toUpdateInventory() {
+        return new UpdateInventory(String.valueOf(supplierId), String.valueOf(partId), name, String.valueOf(amount));
+    }
+
+    @Override
+    public String toString() {
+        return supplierId + "," + partId + "," + name + "," + amount;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package camelinaction;
 
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -26,6 +28,19 @@ public class InventoryService {
 
     private static final Log LOG = LogFactory.getLog(InventoryService.class);
 
+    private long updateDelay = 100;
+
+    public long getUpdateDelay() {
+        return updateDelay;
+    }
+
+    /**
+     * The time in millis it takes to update the inventory, which simulates calling the external system
+     */
+    public void setUpdateDelay(long updateDelay) {
+        this.updateDelay = updateDelay;
+    }
+
     /**
      * Convert the CSV to a model object
      */
@@ -43,14 +58,64 @@ public class InventoryService {
         return new UpdateInventory(supplierId, partId, name, amount);
     }
 
+    /**
+     * Convert the CSV line from the {@link MappedFileSplitter} to a model object
+     */
+    public UpdateInventory csvToObject(CsvLine csv) {
+        if (csv.getFieldCount() != 4) {
+            throw new IllegalArgumentException("CSV line is not valid: " + csv);
+        }
+
+        // get the fields at once instead of copying the bytes of each field on its own
+        String[] fields = csv.getFields();
+        return new UpdateInventory(fields[0], fields[1], fields[2], fields[3]);
+    }
+
+    /**
+     * Convert the CSV line from the {@link MappedFileSplitter} to a primitive typed record
+     */
+    public InventoryRecord csvToRecord(CsvLine csv) {
+        return new InventoryRecord().parse(csv);
+    }
+
+    /**
+     * Convert the CSV line from the {@link MappedFileSplitter} to the flyweight record of the current thread,
+     * which avoids creating any objects per line.
+     * <p/>
+     * Only use this when the record is fully processed by the current thread, see {@link InventoryRecord#flyweight()}.
+     */
+    public InventoryRecord csvToFlyweight(CsvLine csv) {
+        return InventoryRecord.flyweight().parse(csv);
+    }
+
     /**
      * To simulate updating the inventory by calling some external system which takes a bit of time
      */
     public void updateInventory(UpdateInventory update) throws Exception {
         // simulate updating using some CPU processing
-        Thread.sleep(100);
+        Thread.sleep(updateDelay);
+
+        LOG.info("Inventory " + update.getPartId() + " updated");
+    }
+
+    /**
+     * To simulate updating the inventory using the primitive typed record
+     */
+    public void updateInventory(InventoryRecord update) throws Exception {
+        // simulate updating using some CPU processing
+        Thread.sleep(updateDelay);
 
         LOG.info("Inventory " + update.getPartId() + " updated");
     }
 
+    /**
+     * To simulate updating the inventory in a batch by calling some external system once for all the updates
+     */
+    public void updateInventory(List<UpdateInventory> updates) throws Exception {
+        // simulate updating using some CPU processing
+        Thread.sleep(updateDelay);
+
+        LOG.info("Inventory batch of " + updates.size() + " updates updated");
+    }
+
 }
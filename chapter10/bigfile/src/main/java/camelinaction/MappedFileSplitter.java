@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
+
+/**
+ * An {@link Expression} to be used with the Splitter EIP which splits a big CSV file line by line
+ * by memory mapping the file.
+ * <p/>
+ * The file is mapped one region at a time and the line and field boundaries are found directly
+ * in the mapped bytes. Each line is returned as a {@link CsvLine} which is a view of the bytes,
+ * so the heap usage stays flat regardless of the size of the file.
+ * <p/>
+ * Use it with streaming mode, for example: <tt>split(new MappedFileSplitter()).streaming()</tt>
+ * <p/>
+ * The file is closed when all the lines have been split, or when the exchange is done, such as when
+ * the splitter stops early because of an exception. The iterator then no longer refers to the mapped
+ * regions, which are unmapped when the last {@link CsvLine} referring to them is garbage collected.
+ * They are not unmapped explicitly, as reading a line which is still in use would then crash the JVM.
+ *
+ * @version $Revision: 95 $
+ */
+public class MappedFileSplitter implements Expression {
+
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private int regionSize = DEFAULT_REGION_SIZE;
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * Sets the number of bytes to map at a time. A single line must fit within a region.
+     */
+    public void setRegionSize(int regionSize) {
+        this.regionSize = regionSize;
+    }
+
+    public <T> T evaluate(Exchange exchange, Class<T> type) {
+        File file = exchange.getIn().getBody(File.class);
+        if (file == null) {
+            throw new IllegalArgumentException("Message body cannot be converted to a file on exchange: " + exchange);
+        }
+
+        final MappedLineIterator answer;
+        try {
+            answer = new MappedLineIterator(file, regionSize);
+        } catch (IOException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+        // the splitter does not close the iterator if it stops before the last line
+        exchange.addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                answer.close();
+            }
+        });
+        return exchange.getContext().getTypeConverter().convertTo(type, answer);
+    }
+
+    /**
+     * Splits the given file into a lazy iterator of lines.
+     * <p/>
+     * The file is closed when the iterator has no more lines. The iterator is {@link Closeable},
+     * so close it when stopping before the last line.
+     */
+    public Iterator<CsvLine> split(File file) throws IOException {
+        return new MappedLineIterator(file, regionSize);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileSplitter[regionSize=" + regionSize + "]";
+    }
+
+    private static final class MappedLineIterator implements Iterator<CsvLine>, Closeable {
+
+        private final File file;
+        private final int regionSize;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final long size;
+        // scratch space for the field boundaries of the line currently being scanned
+        private int[] fieldEnds = new int[8];
+
+        private MappedByteBuffer region;
+        private long regionStart;
+        private int position;
+        private CsvLine next;
+        private volatile boolean closed;
+
+        private MappedLineIterator(File file, int regionSize) throws IOException {
+            this.file = file;
+            this.regionSize = regionSize;
+            this.raf = new RandomAccessFile(file, "r");
+            try {
+                this.channel = raf.getChannel();
+                this.size = channel.size();
+                map(0);
+            } catch (IOException e) {
+                IOHelper.close(raf, file.getName());
+                throw e;
+            }
+        }
+
+        public boolean hasNext() {
+            if (next == null && !closed) {
+                try {
+                    next = scan();
+                } catch (IOException e) {
+                    close();
+                    throw ObjectHelper.wrapRuntimeCamelException(e);
+                }
+                if (next == null) {
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        public CsvLine next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CsvLine answer = next;
+            next = null;
+            return answer;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported");
+        }
+
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                // release the region, so it can be unmapped once the lines using it are gone
+                region = null;
+                next = null;
+                IOHelper.close(raf, file.getName());
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private void map(long start) throws IOException {
+            long length = Math.min(regionSize, size - start);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            regionStart = start;
+            position = 0;
+        }
+
+        /**
+         * Scans the next non empty line, or returns <tt>null</tt> when there are no more lines
+         */
+        private CsvLine scan() throws IOException {
+            while (true) {
+                if (position >= region.limit()) {
+                    if (regionStart + region.limit() >= size) {
+                        return null;
+                    }
+                    map(regionStart + position);
+                }
+
+                int start = position;
+                int fields = 0;
+                int pos = start;
+                int limit = region.limit();
+                while (pos < limit) {
+                    byte b = region.get(pos);
+                    if (b == '\n') {
+                        break;
+                    } else if (b == ',') {
+                        fieldEnds = ensureCapacity(fieldEnds, fields + 1);
+                        fieldEnds[fields++] = pos - start;
+                    }
+                    pos++;
+                }
+
+                boolean eof = regionStart + pos >= size;
+                if (pos == limit && !eof) {
+                    // the line continues in the next region so map again from the start of the line
+                    if (start == 0) {
+                        throw new IOException("Line at position " + regionStart + " in file " + file
+                                + " is longer than the region size " + regionSize);
+                    }
+                    map(regionStart + start);
+                    continue;
+                }
+
+                // skip past the line terminator
+                position = pos + 1;
+
+                int end = pos;
+                if (end > start && region.get(end - 1) == '\r') {
+                    end--;
+                }
+                int length = end - start;
+                if (length == 0) {
+                    // skip empty lines
+                    continue;
+                }
+
+                fieldEnds = ensureCapacity(fieldEnds, fields + 1);
+                fieldEnds[fields++] = length;
+                return new CsvLine(region, start, length, Arrays.copyOf(fieldEnds, fields));
+            }
+        }
+
+        private static int[] ensureCapacity(int[] array, int capacity) {
+            if (array.length >= capacity) {
+                return array;
+            }
+            return Arrays.copyOf(array, array.length * 2);
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IdempotentRepository} which keeps the keys in a hash table in a memory mapped file, so the keys
+ * survive a restart and millions of keys take up little heap.
+ * <p/>
+ * Each key is stored as a 64 bit hash together with the time it was added, using 16 bytes per slot.
+ * Two different keys with the same hash are seen as the same key, which at 10 million keys
+ * happens with a probability of about 1 in 370000.
+ * <p/>
+ * A Bloom filter on the heap is checked before the table, so keys which have never been seen, which is
+ * the common case for a file consumer, are rejected without touching the mapped file. The filter uses 10 to 20
+ * bits per key for the default false positive probability of 1%, and is rebuilt from the file on startup.
+ * <p/>
+ * Keys older than <tt>expireAfter</tt> millis are treated as not seen. When there are more than
+ * <tt>maxEntries</tt> keys, the oldest 10% are evicted by rewriting the table to a new file, which
+ * also purges the expired and removed keys. Keys added in the same milli are evicted together. The new file
+ * replaces the file by renaming it, so the table is left as is if the eviction fails.
+ * <p/>
+ * The repository fails to start if the file exists but is not a file written by this repository.
+ * <p/>
+ * Use it with a <tt>noop=true</tt> file consumer, for example:
+ * <tt>from("file:target/inventory?noop=true&amp;idempotentRepository=#fileStore")</tt>
+ *
+ * @version $Revision: 95 $
+ */
+public class MappedIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedIdempotentRepository.class);
+
+    private static final int MAGIC = 0x43414D31;
+    private static final int HEADER = 64;
+    private static final int SLOT = 16;
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long EMPTY = 0;
+    private static final long DELETED = 1;
+    private static final double LOAD_FACTOR = 0.6;
+    private static final double COMPACT_LOAD_FACTOR = 0.75;
+    private static final double EVICT_FRACTION = 0.1;
+    private static final int SAMPLES = 10000;
+
+    private File fileStore;
+    private int maxEntries = 1000000;
+    private long expireAfter;
+    private double falsePositiveProbability = 0.01;
+
+    private Table table;
+    private long size;
+    private long tombstones;
+    private long[] bloom;
+    private long bloomMask;
+    private int bloomHashes;
+    private long bloomRejects;
+    private long evicted;
+
+    public MappedIdempotentRepository() {
+    }
+
+    public MappedIdempotentRepository(File fileStore, int maxEntries) {
+        this.fileStore = fileStore;
+        this.maxEntries = maxEntries;
+    }
+
+    public File getFileStore() {
+        return fileStore;
+    }
+
+    public void setFileStore(File fileStore) {
+        this.fileStore = fileStore;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The maximum number of keys to keep, default 1000000
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getExpireAfter() {
+        return expireAfter;
+    }
+
+    /**
+     * Millis after which a key is no longer seen, default 0 to never expire
+     */
+    public void setExpireAfter(long expireAfter) {
+        this.expireAfter = expireAfter;
+    }
+
+    public double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+
+    /**
+     * The false positive probability of the Bloom filter, default 0.01. Use 0 to not use a Bloom filter.
+     */
+    public void setFalsePositiveProbability(double falsePositiveProbability) {
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    /**
+     * Number of keys in the table, which may include expired keys not yet evicted
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Number of slots in the table
+     */
+    public synchronized long getCapacity() {
+        return table != null ? table.capacity : 0;
+    }
+
+    /**
+     * Size of the Bloom filter in bytes
+     */
+    public synchronized long getBloomFilterSize() {
+        return bloom != null ? bloom.length * 8L : 0;
+    }
+
+    /**
+     * Number of lookups answered by the Bloom filter without checking the table
+     */
+    public synchronized long getBloomRejects() {
+        return bloomRejects;
+    }
+
+    /**
+     * Number of keys evicted because the table had more than <tt>maxEntries</tt> keys or the keys expired
+     */
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    public synchronized boolean add(String key) {
+        long hash = hash(key);
+        long now = System.currentTimeMillis();
+        long slot = find(hash);
+        if (slot >= 0) {
+            if (!isExpired(table.getTime(slot), now)) {
+                return false;
+            }
+            // seen again after it expired
+            table.setTime(slot, now);
+            return true;
+        }
+
+        insert(table, hash, now);
+        bloomAdd(hash);
+        size++;
+        if (size > maxEntries || size + tombstones > table.capacity * COMPACT_LOAD_FACTOR) {
+            try {
+                compact(now);
+            } catch (RuntimeException e) {
+                // the table is left as is, so just keep using it
+                LOG.warn("Failed to compact " + fileStore + ", will try again later", e);
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(String key) {
+        long slot = find(hash(key));
+        return slot >= 0 && !isExpired(table.getTime(slot), System.currentTimeMillis());
+    }
+
+    public synchronized boolean remove(String key) {
+        long slot = find(hash(key));
+        if (slot < 0) {
+            return false;
+        }
+        table.setHash(slot, DELETED);
+        size--;
+        tombstones++;
+        return true;
+    }
+
+    public boolean confirm(String key) {
+        // noop
+        return true;
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+        ObjectHelper.notNull(fileStore, "fileStore", this);
+
+        long capacity = Long.highestOneBit((long) Math.ceil(maxEntries / LOAD_FACTOR) - 1) << 1;
+        capacity = Math.max(capacity, 16);
+        if (falsePositiveProbability > 0) {
+            // round the number of bits up to a power of 2 so a bit is found using a mask
+            long bits = (long) Math.ceil(-maxEntries * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+            bloomMask = Math.max(64, Long.highestOneBit(bits - 1) << 1) - 1;
+            bloom = new long[(int) ((bloomMask + 1) / 64)];
+            bloomHashes = Math.max(1, (int) Math.round(-Math.log(falsePositiveProbability) / Math.log(2)));
+        }
+
+        size = 0;
+        tombstones = 0;
+        if (!fileStore.exists() || fileStore.length() == 0) {
+            table = Table.create(fileStore, capacity);
+            return;
+        }
+        table = Table.open(fileStore);
+
+        // the counters are rebuilt from the slots as the file may not have been closed properly
+        for (long slot = 0; slot < table.capacity; slot++) {
+            long hash = table.getHash(slot);
+            if (hash == DELETED) {
+                tombstones++;
+            } else if (hash != EMPTY) {
+                size++;
+                bloomAdd(hash);
+            }
+        }
+        if (table.capacity != capacity) {
+            // the max entries has been changed, so move the keys to a table of the new size
+            compact(System.currentTimeMillis(), capacity);
+        }
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+        if (table != null) {
+            table.close();
+            table = null;
+        }
+        bloom = null;
+    }
+
+    private long find(long hash) {
+        if (bloom != null && !bloomContains(hash)) {
+            bloomRejects++;
+            return -1;
+        }
+        long mask = table.capacity - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long current = table.getHash(slot);
+            if (current == hash) {
+                return slot;
+            } else if (current == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(Table target, long hash, long time) {
+        long mask = target.capacity - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long current = target.getHash(slot);
+            if (current == EMPTY || current == DELETED) {
+                if (current == DELETED) {
+                    tombstones--;
+                }
+                target.setHash(slot, hash);
+                target.setTime(slot, time);
+                return;
+            }
+        }
+    }
+
+    private boolean isExpired(long time, long now) {
+        return expireAfter > 0 && time < now - expireAfter;
+    }
+
+    private void compact(long now) {
+        compact(now, table.capacity);
+    }
+
+    /**
+     * Rewrites the table to a new file without the removed, expired and evicted keys
+     */
+    private void compact(long now, long capacity) {
+        long cutoff = expireAfter > 0 ? now - expireAfter : Long.MIN_VALUE;
+        boolean inclusive = false;
+        if (size > maxEntries) {
+            // estimate the time of the oldest keys to evict from a sample of the slots
+            long[] samples = new long[SAMPLES];
+            int count = 0;
+            Random random = new Random();
+            for (int i = 0; i < SAMPLES * 10 && count < SAMPLES; i++) {
+                long slot = (random.nextLong() >>> 1) % table.capacity;
+                long hash = table.getHash(slot);
+                if (hash != EMPTY && hash != DELETED) {
+                    samples[count++] = table.getTime(slot);
+                }
+            }
+            if (count > 0) {
+                Arrays.sort(samples, 0, count);
+                double fraction = (size - maxEntries * (1 - EVICT_FRACTION)) / size;
+                long time = samples[(int) Math.min(count - 1, fraction * count)];
+                if (time >= cutoff) {
+                    cutoff = time;
+                    inclusive = true;
+                }
+            }
+        }
+
+        File file = new File(fileStore.getPath() + ".compact");
+        Table target = null;
+        boolean renamed = false;
+        try {
+            target = Table.create(file, capacity);
+            // the new keys go into a new Bloom filter, so the current filter is intact if the compaction fails
+            long[] oldBloom = bloom;
+            bloom = oldBloom != null ? new long[oldBloom.length] : null;
+            long kept = 0;
+            try {
+                for (long slot = 0; slot < table.capacity; slot++) {
+                    long hash = table.getHash(slot);
+                    if (hash == EMPTY || hash == DELETED) {
+                        continue;
+                    }
+                    long time = table.getTime(slot);
+                    if (time < cutoff || (inclusive && time == cutoff)) {
+                        continue;
+                    }
+                    insert(target, hash, time);
+                    bloomAdd(hash);
+                    kept++;
+                }
+                target.force();
+
+                // the rename is atomic so the file is always a complete table
+                renamed = file.renameTo(fileStore);
+                if (!renamed) {
+                    throw new IOException("Cannot rename " + file + " to " + fileStore);
+                }
+            } finally {
+                if (!renamed) {
+                    bloom = oldBloom;
+                }
+            }
+
+            table.close();
+            table = target;
+            evicted += size - kept;
+            size = kept;
+            tombstones = 0;
+        } catch (IOException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        } finally {
+            if (!renamed) {
+                if (target != null) {
+                    target.close();
+                }
+                file.delete();
+            }
+        }
+    }
+
+    private void bloomAdd(long hash) {
+        if (bloom == null) {
+            return;
+        }
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < bloomHashes; i++) {
+            long bit = (h1 + i * h2) & bloomMask;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean bloomContains(long hash) {
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < bloomHashes; i++) {
+            long bit = (h1 + i * h2) & bloomMask;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the key followed by the MurmurHash3 finalizer
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        // the lowest values marks empty and deleted slots
+        return h == EMPTY || h == DELETED ? h + 2 : h;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedIdempotentRepository[" + fileStore + "]";
+    }
+
+    /**
+     * The slots in the memory mapped file, which is mapped in segments of at most 1 GB
+     */
+    private static final class Table {
+
+        private final File file;
+        private final RandomAccessFile raf;
+        private final long capacity;
+        private final MappedByteBuffer[] segments;
+
+        private Table(File file, RandomAccessFile raf, long capacity) throws IOException {
+            this.file = file;
+            this.raf = raf;
+            this.capacity = capacity;
+            long segmentSlots = 1L << SEGMENT_SHIFT;
+            this.segments = new MappedByteBuffer[(int) ((capacity + segmentSlots - 1) / segmentSlots)];
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < segments.length; i++) {
+                long slots = Math.min(segmentSlots, capacity - i * segmentSlots);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + i * segmentSlots * SLOT, slots * SLOT);
+            }
+        }
+
+        static Table create(File file, long capacity) throws IOException {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                // a new file is sparse and all zeros, which are empty slots
+                raf.setLength(0);
+                raf.setLength(HEADER + capacity * SLOT);
+                raf.writeInt(MAGIC);
+                raf.writeLong(capacity);
+                return new Table(file, raf, capacity);
+            } catch (IOException e) {
+                IOHelper.close(raf, file.getName());
+                throw e;
+            }
+        }
+
+        /**
+         * Opens an existing file, which is left as is if it is not a valid file
+         */
+        static Table open(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() >= HEADER && raf.readInt() == MAGIC) {
+                    long capacity = raf.readLong();
+                    if (Long.bitCount(capacity) == 1 && raf.length() == HEADER + capacity * SLOT) {
+                        return new Table(file, raf, capacity);
+                    }
+                }
+                throw new IOException("Not a valid idempotent repository file: " + file);
+            } catch (IOException e) {
+                IOHelper.close(raf, file.getName());
+                throw e;
+            }
+        }
+
+        long getHash(long slot) {
+            return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong(offset(slot));
+        }
+
+        void setHash(long slot, long hash) {
+            segments[(int) (slot >>> SEGMENT_SHIFT)].putLong(offset(slot), hash);
+        }
+
+        long getTime(long slot) {
+            return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong(offset(slot) + 8);
+        }
+
+        void setTime(long slot, long time) {
+            segments[(int) (slot >>> SEGMENT_SHIFT)].putLong(offset(slot) + 8, time);
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        void close() {
+            force();
+            IOHelper.close(raf, file.getName());
+        }
+
+        private static int offset(long slot) {
+            return (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * SLOT;
+        }
+    }
+}
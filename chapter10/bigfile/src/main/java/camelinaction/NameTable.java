@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.nio.charset.Charset;
+
+/**
+ * A table of interned names which are looked up directly from the bytes of a {@link CsvLine}.
+ * <p/>
+ * A big inventory file only has a few distinct part names, so by looking up the bytes in this table
+ * the same <tt>String</tt> instance is reused for every line, and a new <tt>String</tt> is only
+ * created the first time a name is seen.
+ * <p/>
+ * Lookups are lock free, adding a new name is synchronized.
+ *
+ * @version $Revision: 95 $
+ */
+public final class NameTable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int maxSize;
+    private volatile Entry[] entries = new Entry[64];
+    private int size;
+
+    private static final class Entry {
+        private final int hash;
+        private final byte[] bytes;
+        private final String name;
+
+        private Entry(int hash, byte[] bytes, String name) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.name = name;
+        }
+    }
+
+    public NameTable() {
+        this(100000);
+    }
+
+    /**
+     * @param maxSize the maximum number of names to intern, names seen after the table is full are not interned
+     */
+    public NameTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the interned name of the field in the CSV line
+     */
+    public String intern(CsvLine line, int index) {
+        int hash = line.fieldHashCode(index);
+
+        Entry entry = find(entries, line, index, hash);
+        if (entry != null) {
+            return entry.name;
+        }
+        return add(line, index, hash);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized String add(CsvLine line, int index, int hash) {
+        // another thread may have added the name in the meantime
+        Entry entry = find(entries, line, index, hash);
+        if (entry != null) {
+            return entry.name;
+        }
+
+        String name = line.getField(index);
+        if (size >= maxSize) {
+            return name;
+        }
+
+        Entry[] table = entries;
+        if ((size + 1) * 2 > table.length) {
+            table = resize(table);
+        }
+        insert(table, new Entry(hash, name.getBytes(UTF8), name));
+        size++;
+        // publish the table after the entry has been inserted
+        entries = table;
+        return name;
+    }
+
+    private static Entry find(Entry[] table, CsvLine line, int index, int hash) {
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Entry entry = table[i];
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hash == hash && line.fieldEquals(index, entry.bytes)) {
+                return entry;
+            }
+        }
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int i = entry.hash & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    private static Entry[] resize(Entry[] table) {
+        Entry[] answer = new Entry[table.length * 2];
+        for (Entry entry : table) {
+            if (entry != null) {
+                insert(answer, entry);
+            }
+        }
+        return answer;
+    }
+
+}
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.ObjectHelper;
+import org.apache.camel.util.ServiceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the split messages in parallel while keeping the order of the messages with the same key.
+ * <p/>
+ * Each message is hashed by its key onto one of N lanes, where each lane is a single thread which sends
+ * the messages to the endpoint in the order they were split. Messages with different keys are processed in
+ * parallel by the lanes, but all messages with the same key, such as the same part id, are processed by the
+ * same lane in order. Use it in a sequential (not parallel) streaming splitter:
+ * <pre>
+ * PartitionedLanes lanes = new PartitionedLanes(simple("${body.partId}"), "direct:update", 10);
+ * getContext().addService(lanes);
+ *
+ * from("file:target/inventory")
+ *     .split(body().tokenize("\n")).streaming()
+ *         .bean(InventoryService.class, "csvToObject")
+ *         .process(lanes)
+ *     .end()
+ *     .process(lanes.awaitCompletion());
+ * </pre>
+ * The messages are copied onto the lanes, so the splitter continues with the next message right away. Each lane
+ * holds at most <tt>capacity</tt> messages, and the splitter blocks when the lane of the next message is full.
+ * The {@link #awaitCompletion()} processor waits until the lanes are done with the messages of the split,
+ * and fails if any of them failed. The messages of each split are tracked by the
+ * {@link Exchange#CORRELATION_ID} the splitter sets, so the lanes can be shared by concurrent splits.
+ *
+ * @version $Revision: 95 $
+ */
+public class PartitionedLanes extends ServiceSupport implements Processor, CamelContextAware {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedLanes.class);
+
+    private final Expression keyExpression;
+    private final String uri;
+    private final int laneCount;
+    private CamelContext camelContext;
+    private int capacity = 1000;
+    private Producer producer;
+    private ExecutorService[] lanes;
+    private Semaphore[] permits;
+    private final AtomicLong processed = new AtomicLong();
+    private int inflight;
+    // the messages of each split by the exchange id of the split, guarded by this
+    private final Map<String, Split> splits = new HashMap<String, Split>();
+
+    /**
+     * The messages of a split in the lanes
+     */
+    private static final class Split {
+        private int inflight;
+        private Exception failure;
+    }
+
+    /**
+     * @param keyExpression the key of the messages which must be processed in order
+     * @param uri           the endpoint to send the messages to
+     * @param laneCount     the number of lanes, which is the number of messages processed in parallel
+     */
+    public PartitionedLanes(Expression keyExpression, String uri, int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("LaneCount must be positive, was " + laneCount);
+        }
+        this.keyExpression = keyExpression;
+        this.uri = uri;
+        this.laneCount = laneCount;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The maximum number of messages waiting in each lane
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Number of messages processed by the lanes
+     */
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * Number of messages currently waiting or being processed by the lanes
+     */
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    /**
+     * Gets the lane for the given key
+     */
+    public int lane(Object key) {
+        int hash = key != null ? key.hashCode() : 0;
+        // spread the bits as keys often only differ in the last characters
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % laneCount;
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        // evaluate as a String so the key has the same hash code no matter its type
+        String key = keyExpression.evaluate(exchange, String.class);
+        final int lane = lane(key);
+        final String splitId = exchange.getProperty(Exchange.CORRELATION_ID, exchange.getExchangeId(), String.class);
+        final Exchange copy = exchange.copy();
+
+        // block while the lane is full
+        permits[lane].acquire();
+        synchronized (this) {
+            Split split = splits.get(splitId);
+            if (split == null) {
+                split = new Split();
+                splits.put(splitId, split);
+            }
+            split.inflight++;
+            inflight++;
+        }
+        try {
+            lanes[lane].execute(new Runnable() {
+                public void run() {
+                    try {
+                        producer.process(copy);
+                    } catch (Exception e) {
+                        copy.setException(e);
+                    } finally {
+                        permits[lane].release();
+                        done(splitId, copy);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the lane did not take the message, so fail it here or the split would await it forever
+            permits[lane].release();
+            copy.setException(e);
+            done(splitId, copy);
+        }
+    }
+
+    /**
+     * Creates a processor which waits until the messages split from the exchange have been processed by the lanes.
+     * <p/>
+     * If any of the messages failed, then the first failure is set on the exchange.
+     */
+    public Processor awaitCompletion() {
+        return new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                Exception cause = null;
+                synchronized (PartitionedLanes.this) {
+                    Split split = splits.get(exchange.getExchangeId());
+                    while (split != null && split.inflight > 0) {
+                        PartitionedLanes.this.wait();
+                    }
+                    if (split != null) {
+                        splits.remove(exchange.getExchangeId());
+                        cause = split.failure;
+                    }
+                }
+                if (cause != null) {
+                    exchange.setException(cause);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "AwaitCompletion[" + PartitionedLanes.this + "]";
+            }
+        };
+    }
+
+    private synchronized void done(String splitId, Exchange exchange) {
+        processed.incrementAndGet();
+        inflight--;
+
+        Split split = splits.get(splitId);
+        if (exchange.getException() != null) {
+            LOG.warn("Failed to process " + exchange + " in lane", exchange.getException());
+            if (split.failure == null) {
+                split.failure = exchange.getException();
+            }
+        }
+        if (--split.inflight == 0) {
+            if (split.failure == null) {
+                // nothing to report, so do not keep it in case the split never awaits completion
+                splits.remove(splitId);
+            }
+            notifyAll();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ObjectHelper.notNull(camelContext, "camelContext");
+
+        producer = camelContext.getEndpoint(uri).createProducer();
+        ServiceHelper.startService(producer);
+
+        lanes = new ExecutorService[laneCount];
+        permits = new Semaphore[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = camelContext.getExecutorServiceManager().newSingleThreadExecutor(this, "Lane-" + i);
+            permits[i] = new Semaphore(capacity);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (lanes != null) {
+            // let the lanes complete the messages they already have
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(30, TimeUnit.SECONDS);
+                camelContext.getExecutorServiceManager().shutdownNow(lane);
+            }
+            lanes = null;
+        }
+        ServiceHelper.stopService(producer);
+        producer = null;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedLanes[" + keyExpression + " -> " + laneCount + " lanes to " + uri + "]";
+    }
+}
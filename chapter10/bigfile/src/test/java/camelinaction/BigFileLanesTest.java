@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.builder.NotifyBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Processing a big file with concurrency using lanes, which keeps the order of the updates per part.
+ *
+ * @version $Revision: 325 $
+ */
+public class BigFileLanesTest extends CamelTestSupport {
+
+    @Test
+    public void testBigFile() throws Exception {
+        // when the first exchange is done
+        NotifyBuilder notify = new NotifyBuilder(context).whenDoneByIndex(0).create();
+
+        long start = System.currentTimeMillis();
+
+        System.out.println("Waiting to be done with 2 min timeout (use ctrl + c to stop)");
+        notify.matches(2 * 60, TimeUnit.SECONDS);
+
+        long delta = System.currentTimeMillis() - start;
+        System.out.println("Took " + delta / 1000 + " seconds");
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                // the updates for the same part is processed in order by the same lane
+                // and the updates for different parts is processed in parallel by 20 lanes
+                PartitionedLanes lanes = new PartitionedLanes(simple("${body.partId}"), "direct:update", 20);
+                getContext().addService(lanes);
+
+                from("file:target/inventory?noop=true")
+                    .log("Starting to process big file: ${header.CamelFileName}")
+                    // the splitter must be sequential to keep the order
+                    .split(body().tokenize("\n")).streaming()
+                        .bean(InventoryService.class, "csvToObject")
+                        .process(lanes)
+                    .end()
+                    // wait for the lanes to complete
+                    .process(lanes.awaitCompletion())
+                    .log("Done processing big file: ${header.CamelFileName}");
+
+                from("direct:update")
+                    .bean(InventoryService.class, "updateInventory");
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class BoundedExecutorServiceTest extends CamelTestSupport {
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private BoundedExecutorService pool;
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        getMockEndpoint("mock:update").expectedMessageCount(200);
+        getMockEndpoint("mock:done").expectedMessageCount(1);
+
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            csv.append("123,").append(i).append(",bumper,4\n");
+        }
+        template.sendBody("direct:start", csv.toString());
+
+        assertMockEndpointsSatisfied();
+
+        // the pool has 10 threads but only 5 lines are outstanding at any time
+        assertTrue("Window exceeded: " + pool.getPeakInflight(), pool.getPeakInflight() <= 5);
+        assertTrue("Concurrency exceeded: " + peak.get(), peak.get() <= 5);
+        // the lines are processed slower than they are read so the splitter is stalled
+        assertTrue(pool.getStallCount() > 0);
+        assertTrue(pool.getStallTime() > 0);
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        delegate.shutdown();
+        BoundedExecutorService rejecting = new BoundedExecutorService(delegate, 1);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                rejecting.execute(new Runnable() {
+                    public void run() {
+                    }
+                });
+                fail("Should have thrown an exception");
+            } catch (RejectedExecutionException e) {
+                // the window is released so the next task is not stalled
+                assertEquals(0, rejecting.getInflight());
+            }
+        }
+        assertEquals(0, rejecting.getStallCount());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                pool = new BoundedExecutorService(Executors.newFixedThreadPool(10), 5);
+
+                from("direct:start")
+                    .split(body().tokenize("\n")).streaming().executorService(pool)
+                        .bean(InventoryService.class, "csvToObject")
+                        .process(new Processor() {
+                            public void process(Exchange exchange) throws Exception {
+                                int current = concurrent.incrementAndGet();
+                                int max = peak.get();
+                                while (current > max && !peak.compareAndSet(max, current)) {
+                                    max = peak.get();
+                                }
+                                // simulate updating the inventory
+                                Thread.sleep(2);
+                                concurrent.decrementAndGet();
+                            }
+                        })
+                        .to("mock:update")
+                    .end()
+                    .to("mock:done");
+            }
+        };
+    }
+}
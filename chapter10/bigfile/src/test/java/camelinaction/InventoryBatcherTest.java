@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Tests batching the inventory updates by size and by linger time.
+ *
+ * @version $Revision: 95 $
+ */
+public class InventoryBatcherTest extends CamelTestSupport {
+
+    private InventoryBatcher batcher;
+
+    @Test
+    public void testBatchBySizeAndLingerTime() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:batch");
+        mock.expectedMessageCount(3);
+        mock.message(0).body().isInstanceOf(List.class);
+
+        for (int i = 0; i < 25; i++) {
+            template.sendBody("direct:update", "123," + i + ",bumper,4");
+        }
+
+        // the last batch with 5 updates is flushed by the linger time
+        assertMockEndpointsSatisfied();
+
+        assertEquals(10, mock.getReceivedExchanges().get(0).getIn().getBody(List.class).size());
+        assertEquals(10, mock.getReceivedExchanges().get(1).getIn().getBody(List.class).size());
+        assertEquals(5, mock.getReceivedExchanges().get(2).getIn().getBody(List.class).size());
+
+        assertEquals(3, batcher.getBatchesFlushed());
+        assertEquals(25, batcher.getUpdatesFlushed());
+        assertEquals(25.0 / 3, batcher.getAverageFill(), 0.01);
+        assertTrue("Should have waited for the linger time", batcher.getTotalWaitTime() >= 500);
+    }
+
+    @Test
+    public void testLingerTimeFromFirstUpdate() throws Exception {
+        // the updates keep coming faster than the linger time, but the batch is not full
+        for (int i = 0; i < 9; i++) {
+            template.sendBody("direct:update", "123," + i + ",bumper,4");
+            Thread.sleep(250);
+        }
+
+        // so the batch is flushed when the first update has waited for the linger time
+        assertTrue("Should have flushed while updating", batcher.getBatchesFlushed() > 0);
+
+        // and the rest when their linger time has passed
+        MockEndpoint mock = getMockEndpoint("mock:batch");
+        int updates = 0;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (updates < 9 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            updates = 0;
+            for (Exchange exchange : mock.getReceivedExchanges()) {
+                updates += exchange.getIn().getBody(List.class).size();
+            }
+        }
+        assertEquals(9, updates);
+        assertTrue(mock.getReceivedCounter() >= 2);
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        batcher = new InventoryBatcher();
+        batcher.setBatchSize(10);
+        batcher.setLingerTime(500);
+
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:update")
+                    .bean(InventoryService.class, "csvToObject")
+                    .aggregate(constant(true), batcher)
+                        .completionSize(batcher.getBatchSize()).completionTimeout(bean(batcher, "remainingLingerTime"))
+                        .bean(batcher, "flushed")
+                        .bean(InventoryService.class, "updateInventory")
+                        .to("mock:batch");
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class InventoryRecordTest extends TestCase {
+
+    public void testParse() throws Exception {
+        InventoryRecord record = new InventoryService().csvToRecord(line("123,4567890123,bumper,4"));
+
+        assertEquals(123, record.getSupplierId());
+        assertEquals(4567890123L, record.getPartId());
+        assertEquals("bumper", record.getName());
+        assertEquals(4, record.getAmount());
+        assertEquals("123,4567890123,bumper,4", record.toUpdateInventory().toString());
+    }
+
+    public void testNamesAreInterned() throws Exception {
+        InventoryService service = new InventoryService();
+        InventoryRecord first = service.csvToRecord(line("123,1,wheel,4"));
+        InventoryRecord second = service.csvToRecord(line("123,2,wheel,5"));
+
+        assertNotSame(first, second);
+        assertSame(first.getName(), second.getName());
+    }
+
+    public void testFlyweight() throws Exception {
+        InventoryService service = new InventoryService();
+        InventoryRecord first = service.csvToFlyweight(line("123,1,wheel,4"));
+        assertEquals(1, first.getPartId());
+
+        InventoryRecord second = service.csvToFlyweight(line("123,2,seat,5"));
+        assertSame(first, second);
+        assertEquals(2, second.getPartId());
+        assertEquals("seat", second.getName());
+    }
+
+    public void testInvalidLine() throws Exception {
+        try {
+            new InventoryService().csvToRecord(line("123,1,wheel"));
+            fail("Should have thrown an exception");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("CSV line is not valid"));
+        }
+    }
+
+    private static CsvLine line(String text) throws Exception {
+        byte[] bytes = text.getBytes("UTF-8");
+        int fields = 0;
+        int[] ends = new int[bytes.length + 1];
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == ',') {
+                ends[fields++] = i;
+            }
+        }
+        ends[fields++] = bytes.length;
+
+        int[] fieldEnds = new int[fields];
+        System.arraycopy(ends, 0, fieldEnds, 0, fields);
+        return new CsvLine(ByteBuffer.wrap(bytes), 0, bytes.length, fieldEnds);
+    }
+}
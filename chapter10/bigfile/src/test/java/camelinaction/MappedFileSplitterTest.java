@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Iterator;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.spi.Synchronization;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the memory mapped splitter using a tiny region size so lines cross region boundaries.
+ *
+ * @version $Revision: 95 $
+ */
+public class MappedFileSplitterTest extends CamelTestSupport {
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        deleteDirectory("target/mapped");
+        super.setUp();
+    }
+
+    @Test
+    public void testSplitLines() throws Exception {
+        File file = createFile("target/mapped-unit/lines.csv", "123,1,bumper,4\r\n124,22,wheel,10\n\n125,333,,-7");
+
+        MappedFileSplitter splitter = new MappedFileSplitter();
+        splitter.setRegionSize(20);
+        Iterator<CsvLine> it = splitter.split(file);
+
+        CsvLine line = it.next();
+        assertEquals("123,1,bumper,4", line.toString());
+        assertEquals(4, line.getFieldCount());
+        assertEquals(123, line.getInt(0));
+        assertEquals("bumper", line.getField(2));
+
+        line = it.next();
+        assertEquals("124,22,wheel,10", line.toString());
+        assertEquals(10, line.getLong(3));
+
+        line = it.next();
+        assertEquals("125,333,,-7", line.toString());
+        assertEquals("", line.getField(2));
+        assertEquals(-7, line.getLong(3));
+
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testLineTooLong() throws Exception {
+        File file = createFile("target/mapped-unit/long.csv", "123,1,a-very-long-part-name,4\n");
+
+        MappedFileSplitter splitter = new MappedFileSplitter();
+        splitter.setRegionSize(10);
+        Iterator<CsvLine> it = splitter.split(file);
+        try {
+            it.hasNext();
+            fail("Should have thrown an exception");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().contains("longer than the region size"));
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        File file = createFile("target/mapped-unit/close.csv", "123,1,bumper,4\n124,22,wheel,10\n");
+
+        Iterator<CsvLine> it = new MappedFileSplitter().split(file);
+        assertEquals("123,1,bumper,4", it.next().toString());
+
+        // stop before the last line
+        ((Closeable) it).close();
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testClosedWhenExchangeDone() throws Exception {
+        File file = createFile("target/mapped-unit/done.csv", "123,1,bumper,4\n124,22,wheel,10\n");
+
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(file);
+        Iterator<CsvLine> it = new MappedFileSplitter().evaluate(exchange, Iterator.class);
+        assertEquals("123,1,bumper,4", it.next().toString());
+
+        // the exchange fails before the splitter reached the last line
+        exchange.setException(new IllegalArgumentException("Forced"));
+        for (Synchronization synchronization : exchange.handoverCompletions()) {
+            synchronization.onFailure(exchange);
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testSplitRoute() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:update");
+        mock.expectedMessageCount(100);
+        mock.message(0).body().isInstanceOf(UpdateInventory.class);
+        mock.message(99).body(String.class).isEqualTo("123,99,bumper,4");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("123,").append(i).append(",bumper,4\n");
+        }
+        template.sendBodyAndHeader("file:target/mapped", sb.toString(), Exchange.FILE_NAME, "inventory.csv");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    private static File createFile(String name, String content) throws Exception {
+        File file = new File(name);
+        file.getParentFile().mkdirs();
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content.getBytes("UTF-8"));
+        fos.close();
+        return file;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        final MappedFileSplitter splitter = new MappedFileSplitter();
+        // use a small region so the file is mapped in several regions
+        splitter.setRegionSize(256);
+
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("file:target/mapped?noop=true")
+                    .split(splitter).streaming()
+                        .bean(InventoryService.class, "csvToObject")
+                        .to("mock:update")
+                    .end();
+            }
+        };
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.JndiRegistry;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class MappedIdempotentRepositoryTest extends CamelTestSupport {
+
+    private MappedIdempotentRepository fileStore;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        deleteDirectory("target/idempotent");
+        deleteDirectory("target/idempotent-store");
+        super.setUp();
+    }
+
+    @Override
+    protected JndiRegistry createRegistry() throws Exception {
+        fileStore = new MappedIdempotentRepository(new File("target/idempotent-store/route.dat"), 1000);
+        JndiRegistry jndi = super.createRegistry();
+        jndi.bind("fileStore", fileStore);
+        return jndi;
+    }
+
+    @Test
+    public void testAddContainsRemove() throws Exception {
+        MappedIdempotentRepository repo = new MappedIdempotentRepository(new File("target/idempotent-store/keys.dat"), 1000);
+        repo.start();
+
+        assertFalse(repo.contains("order1.xml"));
+        assertTrue(repo.add("order1.xml"));
+        assertFalse(repo.add("order1.xml"));
+        assertTrue(repo.add("order2.xml"));
+        assertTrue(repo.contains("order1.xml"));
+        assertTrue(repo.remove("order1.xml"));
+        assertFalse(repo.contains("order1.xml"));
+        assertFalse(repo.remove("order1.xml"));
+        assertEquals(1, repo.getSize());
+        assertTrue("Unseen keys should be rejected by the Bloom filter", repo.getBloomRejects() > 0);
+        repo.stop();
+
+        // the keys survive a restart
+        repo = new MappedIdempotentRepository(new File("target/idempotent-store/keys.dat"), 1000);
+        repo.start();
+        assertEquals(1, repo.getSize());
+        assertTrue(repo.contains("order2.xml"));
+        assertFalse(repo.contains("order1.xml"));
+        repo.stop();
+
+        // and a change of max entries
+        repo = new MappedIdempotentRepository(new File("target/idempotent-store/keys.dat"), 100000);
+        repo.start();
+        assertTrue(repo.contains("order2.xml"));
+        assertEquals(262144, repo.getCapacity());
+        repo.stop();
+    }
+
+    @Test
+    public void testEvictOldest() throws Exception {
+        MappedIdempotentRepository repo = new MappedIdempotentRepository(new File("target/idempotent-store/evict.dat"), 100);
+        repo.start();
+
+        for (int batch = 0; batch < 10; batch++) {
+            for (int i = 0; i < 20; i++) {
+                repo.add("file-" + batch + "-" + i);
+            }
+            Thread.sleep(5);
+        }
+
+        assertTrue("Size was " + repo.getSize(), repo.getSize() <= 100);
+        assertTrue(repo.getEvicted() >= 100);
+        assertFalse(repo.contains("file-0-0"));
+        assertTrue(repo.contains("file-9-19"));
+        repo.stop();
+    }
+
+    @Test
+    public void testEvictFailure() throws Exception {
+        MappedIdempotentRepository repo = new MappedIdempotentRepository(new File("target/idempotent-store/failure.dat"), 100);
+        repo.start();
+
+        // the new file cannot be created when there is a directory in the way
+        File compact = new File("target/idempotent-store/failure.dat.compact");
+        assertTrue(new File(compact, "blocker").mkdirs());
+        for (int i = 0; i < 150; i++) {
+            assertTrue(repo.add("file-" + i));
+        }
+
+        // the keys are still kept in the table
+        assertEquals(150, repo.getSize());
+        assertEquals(0, repo.getEvicted());
+        assertTrue(repo.contains("file-0"));
+        assertTrue(repo.contains("file-149"));
+
+        // and evicted when the eviction succeeds
+        deleteDirectory(compact);
+        assertTrue(repo.add("file-150"));
+        assertTrue("Size was " + repo.getSize(), repo.getSize() <= 100);
+        assertTrue(repo.contains("file-150"));
+        repo.stop();
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+        File file = new File("target/idempotent-store/invalid.dat");
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("Not a repository".getBytes());
+        out.close();
+
+        MappedIdempotentRepository repo = new MappedIdempotentRepository(file, 1000);
+        try {
+            repo.start();
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the file must not be truncated
+        assertEquals("Not a repository".length(), file.length());
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        MappedIdempotentRepository repo = new MappedIdempotentRepository(new File("target/idempotent-store/expire.dat"), 1000);
+        repo.setExpireAfter(100);
+        repo.start();
+
+        assertTrue(repo.add("order1.xml"));
+        assertFalse(repo.add("order1.xml"));
+        Thread.sleep(200);
+        assertFalse(repo.contains("order1.xml"));
+        assertTrue(repo.add("order1.xml"));
+        assertTrue(repo.contains("order1.xml"));
+        repo.stop();
+    }
+
+    @Test
+    public void testNoopFileConsumer() throws Exception {
+        getMockEndpoint("mock:file").expectedBodiesReceived("Hello World");
+
+        template.sendBodyAndHeader("file:target/idempotent", "Hello World", Exchange.FILE_NAME, "hello.txt");
+
+        assertMockEndpointsSatisfied();
+        // the file is left as is but not picked up again
+        Thread.sleep(500);
+        assertMockEndpointsSatisfied();
+        assertEquals(1, fileStore.getSize());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("file:target/idempotent?noop=true&idempotentRepository=#fileStore&initialDelay=0&delay=10")
+                    .to("mock:file");
+            }
+        };
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.DefaultThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class PartitionedLanesTest extends CamelTestSupport {
+
+    private final Map<String, List<Integer>> amounts = new HashMap<String, List<Integer>>();
+    private final Map<String, Set<String>> threads = new HashMap<String, Set<String>>();
+    private final Set<String> allThreads = new HashSet<String>();
+    private PartitionedLanes lanes;
+
+    @Test
+    public void testOrderedPerPart() throws Exception {
+        getMockEndpoint("mock:done").expectedMessageCount(1);
+
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            csv.append("123,").append(i % 10).append(",bumper,").append(i).append("\n");
+        }
+        template.sendBody("direct:start", csv.toString());
+
+        assertMockEndpointsSatisfied();
+
+        // all the lines has been processed when the splitter completes
+        assertEquals(500, lanes.getProcessedCount());
+        assertEquals(0, lanes.getInflight());
+
+        assertEquals(10, amounts.size());
+        for (String partId : amounts.keySet()) {
+            List<Integer> list = amounts.get(partId);
+            assertEquals(50, list.size());
+            for (int i = 1; i < list.size(); i++) {
+                assertTrue("Part " + partId + " out of order: " + list, list.get(i - 1) < list.get(i));
+            }
+            // each part is processed by its own lane
+            assertEquals(1, threads.get(partId).size());
+        }
+        assertTrue("Should use more than one lane", allThreads.size() > 1);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        getMockEndpoint("mock:done").expectedMessageCount(0);
+
+        try {
+            template.sendBody("direct:start", "123,1,bumper,1\n123,2,bumper,kaboom\n123,3,bumper,3");
+            fail("Should have thrown an exception");
+        } catch (CamelExecutionException e) {
+            assertIsInstanceOf(IllegalArgumentException.class, e.getCause());
+        }
+
+        assertMockEndpointsSatisfied();
+        assertEquals(3, lanes.getProcessedCount());
+    }
+
+    @Test
+    public void testFailureIsNotReportedToNextSplit() throws Exception {
+        getMockEndpoint("mock:done").expectedMessageCount(1);
+
+        // the invalid line fails the split before it awaits the lanes, one of which also fails
+        try {
+            template.sendBody("direct:start", "123,1,bumper,kaboom\ninvalid\n123,2,bumper,2");
+            fail("Should have thrown an exception");
+        } catch (CamelExecutionException e) {
+            assertIsInstanceOf(IllegalArgumentException.class, e.getCause());
+        }
+
+        // so the next split must not see the failure of the lanes of the previous split
+        template.sendBody("direct:start", "123,1,bumper,1\n123,2,bumper,2");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testConcurrentSplits() throws Exception {
+        getMockEndpoint("mock:done").expectedMessageCount(1);
+
+        final StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            csv.append("123,").append(i % 10).append(",bumper,").append(i).append("\n");
+        }
+        // the failure of one split must not fail the other split
+        Future<Exchange> bad = template.asyncSend("direct:start", new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                exchange.getIn().setBody("123,1,bumper,1\n123,2,bumper,kaboom\n123,3,bumper,3");
+            }
+        });
+        Future<Exchange> good = template.asyncSend("direct:start", new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                exchange.getIn().setBody(csv.toString());
+            }
+        });
+
+        assertIsInstanceOf(IllegalArgumentException.class, bad.get(10, TimeUnit.SECONDS).getException());
+        assertNull(good.get(10, TimeUnit.SECONDS).getException());
+        assertMockEndpointsSatisfied();
+
+        assertEquals(203, lanes.getProcessedCount());
+        assertEquals(0, lanes.getInflight());
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        // lanes which do not accept any messages
+        context.getExecutorServiceManager().setThreadPoolFactory(new DefaultThreadPoolFactory() {
+            @Override
+            public ExecutorService newThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+                ExecutorService answer = Executors.newSingleThreadExecutor(threadFactory);
+                answer.shutdown();
+                return answer;
+            }
+        });
+        PartitionedLanes rejecting = new PartitionedLanes(body(), "direct:update", 1);
+        rejecting.setCapacity(1);
+        context.addService(rejecting);
+
+        // the second message would block if the first kept its place in the lane
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody("123,1,bumper,1");
+        rejecting.process(exchange);
+        rejecting.process(exchange);
+        rejecting.awaitCompletion().process(exchange);
+
+        assertIsInstanceOf(RejectedExecutionException.class, exchange.getException());
+        assertEquals(2, rejecting.getProcessedCount());
+        assertEquals(0, rejecting.getInflight());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                lanes = new PartitionedLanes(simple("${body.partId}"), "direct:update", 4);
+                lanes.setCapacity(10);
+                getContext().addService(lanes);
+
+                from("direct:start")
+                    .split(body().tokenize("\n")).streaming()
+                        .bean(InventoryService.class, "csvToObject")
+                        .process(lanes)
+                    .end()
+                    .process(lanes.awaitCompletion())
+                    .to("mock:done");
+
+                from("direct:update")
+                    .process(new Processor() {
+                        public void process(Exchange exchange) throws Exception {
+                            UpdateInventory update = exchange.getIn().getBody(UpdateInventory.class);
+                            int amount = Integer.parseInt(update.getAmount());
+                            // simulate updating the inventory
+                            Thread.sleep(1);
+                            record(update.getPartId(), amount);
+                        }
+                    });
+            }
+        };
+    }
+
+    private synchronized void record(String partId, int amount) {
+        if (!amounts.containsKey(partId)) {
+            amounts.put(partId, new ArrayList<Integer>());
+            threads.put(partId, new HashSet<String>());
+        }
+        amounts.get(partId).add(amount);
+        threads.get(partId).add(Thread.currentThread().getName());
+        allThreads.add(Thread.currentThread().getName());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.impl.DefaultThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ThreadPoolFactory} which backs the thread pools created from the <tt>virtual</tt>
+ * thread pool profile with virtual threads, where each task runs in its own virtual thread.
+ * <p/>
+ * This is useful when the tasks are dominated by blocking calls, as the concurrency is then
+ * no longer limited by the size of the pool. All other thread pools are created as usual.
+ * <p/>
+ * Virtual threads requires Java 21 or newer, as they are only a preview feature in Java 19 and 20.
+ * On older JVMs the pools are created as cached thread pools instead, which also grow as needed
+ * but use a platform thread per task.
+ * <p/>
+ * In Java DSL install the factory with <tt>context.getExecutorServiceManager().setThreadPoolFactory(factory)</tt>,
+ * and in Spring XML just declare it as a bean, which Camel then installs. Then register a thread pool profile with the id
+ * <tt>virtual</tt> and refer to it using <tt>executorServiceRef="virtual"</tt>.
+ *
+ * @version $Revision: 98 $
+ */
+public class VirtualThreadPoolFactory implements ThreadPoolFactory {
+
+    public static final String DEFAULT_PROFILE_ID = "virtual";
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPoolFactory.class);
+
+    private final ThreadPoolFactory delegate = new DefaultThreadPoolFactory();
+    private final AtomicInteger created = new AtomicInteger();
+    private String profileId = DEFAULT_PROFILE_ID;
+
+    public String getProfileId() {
+        return profileId;
+    }
+
+    /**
+     * The id of the thread pool profile which should use virtual threads
+     */
+    public void setProfileId(String profileId) {
+        this.profileId = profileId;
+    }
+
+    /**
+     * Number of thread pools created using virtual threads
+     */
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Whether the JVM supports virtual threads, which requires Java 21 or newer
+     */
+    public static boolean isVirtualThreadsSupported() {
+        if (getJavaVersion() < 21) {
+            // Java 19 and 20 have the method, but it fails unless preview features are enabled
+            return false;
+        }
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The major Java version, such as 6 for <tt>1.6</tt> or 21 for <tt>21</tt>
+     */
+    static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version", "0");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int dot = version.indexOf('.');
+        if (dot > 0) {
+            version = version.substring(0, dot);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
+        return delegate.newCachedThreadPool(threadFactory);
+    }
+
+    public ExecutorService newThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        if (profileId.equals(profile.getId())) {
+            created.incrementAndGet();
+            ExecutorService answer = newVirtualThreadPerTaskExecutor();
+            if (answer != null) {
+                LOG.debug("Created virtual thread executor for thread pool profile: {}", profileId);
+                return answer;
+            }
+            LOG.warn("Virtual threads are not supported on this JVM (requires Java 21)."
+                    + " Using a cached thread pool for thread pool profile: {}", profileId);
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+        return delegate.newThreadPool(profile, threadFactory);
+    }
+
+    public ScheduledExecutorService newScheduledThreadPool(ThreadPoolProfile profile, ThreadFactory threadFactory) {
+        return delegate.newScheduledThreadPool(profile, threadFactory);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isVirtualThreadsSupported()) {
+            return null;
+        }
+        try {
+            // use reflection as this example is compiled for older Java versions
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+}
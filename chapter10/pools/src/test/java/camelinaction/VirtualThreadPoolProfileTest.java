@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.ThreadPoolProfileSupport;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * How to use virtual threads for a thread pool profile in Java DSL
+ *
+ * @version $Revision: 98 $
+ */
+public class VirtualThreadPoolProfileTest extends CamelTestSupport {
+
+    private VirtualThreadPoolFactory factory;
+
+    @Test
+    public void testVirtualThreadPoolProfile() throws Exception {
+        getMockEndpoint("mock:result").expectedMessageCount(200);
+
+        // split into 200 messages which each blocks for 1 second,
+        // which would take a long time with a bounded pool
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("Hello ").append(i).append(",");
+        }
+
+        long start = System.currentTimeMillis();
+        template.sendBody("direct:start", sb.toString());
+
+        assertMockEndpointsSatisfied();
+        long delta = System.currentTimeMillis() - start;
+        assertTrue("Should process concurrently, took " + delta + " millis", delta < 5000);
+        assertEquals(1, factory.getCreatedCount());
+    }
+
+    @Test
+    public void testRequiresJava21() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        try {
+            System.setProperty("java.specification.version", "1.6");
+            assertEquals(6, VirtualThreadPoolFactory.getJavaVersion());
+            // virtual threads are only a preview in Java 20
+            System.setProperty("java.specification.version", "20");
+            assertEquals(20, VirtualThreadPoolFactory.getJavaVersion());
+            assertFalse(VirtualThreadPoolFactory.isVirtualThreadsSupported());
+        } finally {
+            System.setProperty("java.specification.version", version);
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                // install the factory which creates virtual threads for the virtual profile
+                factory = new VirtualThreadPoolFactory();
+                context.getExecutorServiceManager().setThreadPoolFactory(factory);
+                context.getExecutorServiceManager().registerThreadPoolProfile(
+                        new ThreadPoolProfileSupport(VirtualThreadPoolFactory.DEFAULT_PROFILE_ID));
+
+                from("direct:start")
+                    // use the virtual profile so each message is processed in its own virtual thread
+                    .split(body().tokenize(",")).executorServiceRef("virtual")
+                        .delay(1000)
+                        .to("mock:result");
+            }
+        };
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An adaptive limit on the number of concurrent calls, which grows or shrinks the limit to keep the
+ * latency of the calls near a target latency.
+ * <p/>
+ * The limit is adjusted using AIMD (additive increase, multiplicative decrease): when a call completes
+ * within the target latency while the limit is in use, the limit grows by one per limit calls (roughly one
+ * per round trip), and when a call is slower than the target the limit is multiplied by the backoff ratio.
+ * The limit is decreased at most once per target latency, as the calls in-flight at the time of the
+ * decrease was started under the old limit.
+ * <p/>
+ * Each call must be started with {@link #tryAcquire()} or {@link #acquire()} and ended with
+ * {@link #release(long)} with the time the call took.
+ *
+ * @version $Revision: 193 $
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatency;
+    private final double backoffRatio;
+
+    private double limit;
+    private int inflight;
+    private long lastDecrease;
+
+    /**
+     * @param initialLimit  the limit to start with
+     * @param minLimit      the limit never goes below this
+     * @param maxLimit      the limit never goes above this
+     * @param targetLatency the target latency in millis
+     * @param backoffRatio  the ratio to multiply the limit with when a call is slower than the target latency
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatency, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must be 1 <= minLimit <= maxLimit, was " + minLimit + " and " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1, was " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatency = targetLatency;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Starts a call if the limit has not been reached
+     *
+     * @return <tt>true</tt> if the call can be started, <tt>false</tt> if the limit has been reached
+     */
+    public synchronized boolean tryAcquire() {
+        if (inflight >= getLimit()) {
+            return false;
+        }
+        inflight++;
+        return true;
+    }
+
+    /**
+     * Starts a call, waiting until the number of calls in-flight is below the limit
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inflight >= getLimit()) {
+            wait();
+        }
+        inflight++;
+    }
+
+    /**
+     * Ends a call and adjusts the limit based on the time the call took
+     *
+     * @param latency the time in millis the call took
+     */
+    public synchronized void release(long latency) {
+        // whether the limit was in use when the call ended, otherwise a fast call does not tell
+        // us the backend can cope with more concurrent calls
+        boolean saturated = inflight * 2 >= getLimit();
+        inflight--;
+
+        if (latency > targetLatency) {
+            long now = System.nanoTime();
+            if (lastDecrease == 0 || now - lastDecrease >= TimeUnit.MILLISECONDS.toNanos(targetLatency)) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecrease = now;
+            }
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * The current limit of concurrent calls
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * The number of calls currently in-flight
+     */
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public long getTargetLatency() {
+        return targetLatency;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveConcurrencyLimiter[limit=" + getLimit() + ", inflight=" + inflight
+                + ", targetLatency=" + targetLatency + "]";
+    }
+}
@@ -29,10 +29,140 @@ import org.apache.camel.impl.DefaultEndpoint;
  */
 public class ErpEndpoint extends DefaultEndpoint {
 
+    private long delay = 5000;
+    private int poolSize = 10;
+    private boolean scheduled;
+    private int maxInflight = 1000;
+    private boolean blockWhenFull = true;
+    private boolean adaptive;
+    private long targetLatency = 10000;
+    private int minLimit = 1;
+    private double backoffRatio = 0.9;
+    private int capacity;
+
     public ErpEndpoint(String uri, Component component) {
         super(uri, component);
     }
 
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Time in millis the ERP system takes to reply
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Number of threads used for the communication with the ERP system
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Whether the reply from the ERP system should be scheduled, instead of letting a thread wait for the reply.
+     * <p/>
+     * When scheduled the number of concurrent ERP calls is not limited by the pool size, but by the
+     * <tt>maxInflight</tt> option.
+     */
+    public void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
+
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+
+    /**
+     * The maximum number of concurrent ERP calls when using scheduled mode
+     */
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
+    public boolean isBlockWhenFull() {
+        return blockWhenFull;
+    }
+
+    /**
+     * Whether the exchange should wait when the maximum number of concurrent ERP calls has been reached,
+     * or fail with a {@link java.util.concurrent.RejectedExecutionException}.
+     * <p/>
+     * A waiting exchange is called when another ERP call ends, so the caller thread is not blocked.
+     */
+    public void setBlockWhenFull(boolean blockWhenFull) {
+        this.blockWhenFull = blockWhenFull;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Whether to adapt the limit of concurrent ERP calls to keep the latency near the <tt>targetLatency</tt>.
+     * <p/>
+     * The limit starts at the <tt>poolSize</tt> and is kept between the <tt>minLimit</tt> and <tt>maxInflight</tt> options.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public long getTargetLatency() {
+        return targetLatency;
+    }
+
+    /**
+     * The target latency in millis of the ERP calls when using adaptive mode
+     */
+    public void setTargetLatency(long targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * The minimum limit of concurrent ERP calls when using adaptive mode
+     */
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * The ratio to decrease the limit with when the ERP latency is above the target when using adaptive mode
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of concurrent calls the simulated ERP system can handle before its latency degrades,
+     * use 0 for unlimited.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
     public boolean isSingleton() {
         return true;
     }
@@ -16,69 +16,323 @@
  */
 package camelinaction;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.camel.AsyncCallback;
-import org.apache.camel.Endpoint;
 import org.apache.camel.Exchange;
 import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.impl.ThreadPoolProfileSupport;
+import org.apache.camel.spi.ThreadPoolProfile;
 
 /**
  * Producer to simulate asynchronous communication with ERP system.
-
- * @version $Revision: 192 $
+ * <p/>
+ * By default each ERP call uses a thread from a pool which waits for the reply. In scheduled mode
+ * the reply is scheduled to complete the exchange when it arrives, so no thread is waiting and
+ * the number of concurrent ERP calls is only limited by the <tt>maxInflight</tt> option.
+ * <p/>
+ * In adaptive mode the number of concurrent ERP calls is limited by an {@link AdaptiveConcurrencyLimiter}
+ * which adjusts the limit to keep the ERP latency near the <tt>targetLatency</tt> option.
+ * <p/>
+ * When the limit has been reached the call waits until another call ends, without blocking the caller thread.
+ * When the producer is stopped the calls which have not received a reply fail with a
+ * {@link RejectedExecutionException}.
+ *
+ * @version $Revision: 193 $
  */
 public class ErpProducer extends DefaultAsyncProducer {
 
     // use a thread pool for async communication with ERP
     private ExecutorService executor;
+    // or a scheduled thread pool to complete the replies in scheduled mode
+    private ScheduledExecutorService scheduler;
+    // fixed limit of concurrent ERP calls in scheduled mode
+    private Semaphore permits;
+    // or an adaptive limit in adaptive mode
+    private AdaptiveConcurrencyLimiter limiter;
+    // the calls waiting for the limit, guarded by itself
+    private final LinkedList<Call> waiting = new LinkedList<Call>();
+    // the calls waiting for the ERP reply
+    private final Map<Exchange, AsyncCallback> pending = new ConcurrentHashMap<Exchange, AsyncCallback>();
+    private final AtomicInteger inflight = new AtomicInteger();
 
-    public ErpProducer(Endpoint endpoint) {
+    public ErpProducer(ErpEndpoint endpoint) {
         super(endpoint);
-        // use Camel to create the thread pool for us
-        this.executor = endpoint.getCamelContext().getExecutorServiceStrategy().newFixedThreadPool(this, "ERP", 10);
+    }
+
+    @Override
+    public ErpEndpoint getEndpoint() {
+        return (ErpEndpoint) super.getEndpoint();
     }
 
     public boolean process(final Exchange exchange, final AsyncCallback callback) {
-        // simulate async communication using a thread pool in which will return a reply in 5 seconds.
-        executor.submit(new ERPTask(exchange, callback));
+        // apply backpressure when the maximum number of concurrent ERP calls has been reached
+        boolean full;
+        synchronized (waiting) {
+            if (tryAcquire()) {
+                full = false;
+            } else if (getEndpoint().isBlockWhenFull()) {
+                // the call is started when another call ends, so the caller thread is not blocked
+                waiting.add(new Call(exchange, callback));
+                return false;
+            } else {
+                full = true;
+            }
+        }
+        if (full) {
+            if (limiter != null) {
+                exchange.setException(new RejectedExecutionException("Adaptive limit of concurrent ERP calls reached: "
+                        + limiter.getLimit()));
+            } else {
+                exchange.setException(new RejectedExecutionException("Maximum number of concurrent ERP calls reached: "
+                        + getEndpoint().getMaxInflight()));
+            }
+            callback.done(true);
+            return true;
+        }
+
+        call(exchange, callback);
 
         // return false to tell Camel that we process asynchronously
         // which enables the Camel routing engine to know this and act accordingly
         // notice the ERPTask must invoke the callback.done(false) because what
         // we return here must match the boolean in the callback.done method.
-        log.info("Returning false (processing will continue asynchronously)");
         return false;
     }
 
-    private class ERPTask implements Runnable {
+    private boolean tryAcquire() {
+        if (limiter != null) {
+            return limiter.tryAcquire();
+        } else if (permits != null) {
+            return permits.tryAcquire();
+        }
+        return true;
+    }
+
+    private void call(Exchange exchange, final AsyncCallback callback) {
+        inflight.incrementAndGet();
+
+        // measure the round trip of the ERP call when it is done
+        final long start = System.currentTimeMillis();
+        pending.put(exchange, new AsyncCallback() {
+            public void done(boolean doneSync) {
+                end(System.currentTimeMillis() - start);
+                callback.done(doneSync);
+            }
+        });
+
+        try {
+            if (getEndpoint().isScheduled()) {
+                // simulate async communication by scheduling the reply, so no thread is waiting for the reply
+                log.debug("Calling ERP");
+                scheduler.schedule(new ERPReply(exchange), getErpDelay(), TimeUnit.MILLISECONDS);
+            } else {
+                // simulate async communication using a thread pool in which will return a reply in 5 seconds.
+                executor.submit(new ERPTask(exchange));
+                log.info("Returning false (processing will continue asynchronously)");
+            }
+        } catch (RejectedExecutionException e) {
+            // the producer is stopping
+            fail(exchange, e);
+        }
+    }
+
+    private void end(long latency) {
+        inflight.decrementAndGet();
+
+        // start the waiting calls there is room for now
+        List<Call> calls = new ArrayList<Call>();
+        synchronized (waiting) {
+            if (limiter != null) {
+                limiter.release(latency);
+            } else if (permits != null) {
+                permits.release();
+            }
+            while (!waiting.isEmpty() && tryAcquire()) {
+                calls.add(waiting.removeFirst());
+            }
+        }
+        for (Call call : calls) {
+            call(call.exchange, call.callback);
+        }
+    }
+
+    private void complete(Exchange exchange) {
+        // the reply may have been failed when stopping
+        AsyncCallback callback = pending.remove(exchange);
+        if (callback != null) {
+            reply(exchange);
+
+            // notify callback we are done
+            // we must use done(false) because the process method returned false
+            callback.done(false);
+        }
+    }
+
+    private void fail(Exchange exchange, Exception cause) {
+        AsyncCallback callback = pending.remove(exchange);
+        if (callback != null) {
+            exchange.setException(cause);
+            callback.done(false);
+        }
+    }
+
+    /**
+     * The time the ERP system takes to reply, which degrades when it is overloaded
+     */
+    private long getErpDelay() {
+        long delay = getEndpoint().getDelay();
+        int capacity = getEndpoint().getCapacity();
+        int current = inflight.get();
+        if (capacity > 0 && current > capacity) {
+            // the latency grows with the square of the overload
+            double overload = (double) current / capacity;
+            delay = (long) (delay * overload * overload);
+        }
+        return delay;
+    }
+
+    /**
+     * Number of ERP calls currently in progress
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * Number of ERP calls waiting for the limit
+     */
+    public int getWaiting() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * The adaptive limiter, or <tt>null</tt> if not in adaptive mode
+     */
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        ErpEndpoint endpoint = getEndpoint();
+        if (endpoint.isAdaptive()) {
+            // start from the pool size and let the limiter find the best limit
+            limiter = new AdaptiveConcurrencyLimiter(endpoint.getPoolSize(), endpoint.getMinLimit(),
+                    endpoint.getMaxInflight(), endpoint.getTargetLatency(), endpoint.getBackoffRatio());
+        } else if (endpoint.isScheduled()) {
+            permits = new Semaphore(endpoint.getMaxInflight());
+        }
+
+        // use Camel to create the thread pool for us
+        if (endpoint.isScheduled()) {
+            // Camel rejects the tasks above the max queue size of the profile, which defaults to 1000, and as
+            // the scheduled replies are bounded by the max in-flight the queue must be able to hold them all
+            ThreadPoolProfile profile = new ThreadPoolProfileSupport("ERP");
+            profile.setPoolSize(endpoint.getPoolSize());
+            profile.setMaxQueueSize(endpoint.getMaxInflight());
+            scheduler = endpoint.getCamelContext().getExecutorServiceManager()
+                    .newScheduledThreadPool(this, "ERP", profile);
+        } else {
+            executor = endpoint.getCamelContext().getExecutorServiceStrategy()
+                    .newFixedThreadPool(this, "ERP", endpoint.getPoolSize());
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (scheduler != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(scheduler);
+        }
+        if (executor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceStrategy().shutdownNow(executor);
+        }
+
+        // the calls which did not get a reply must be completed, so the exchanges continue
+        List<Call> calls;
+        synchronized (waiting) {
+            calls = new ArrayList<Call>(waiting);
+            waiting.clear();
+        }
+        for (Call call : calls) {
+            call.exchange.setException(new RejectedExecutionException("ERP producer stopped before calling ERP"));
+            call.callback.done(false);
+        }
+        for (Exchange exchange : pending.keySet()) {
+            fail(exchange, new RejectedExecutionException("ERP producer stopped before the ERP reply was received"));
+        }
+
+        scheduler = null;
+        executor = null;
+        permits = null;
+        limiter = null;
+        super.doStop();
+    }
+
+    private void reply(Exchange exchange) {
+        // set reply
+        String in = exchange.getIn().getBody(String.class);
+        exchange.getOut().setBody(in + ";516");
+    }
+
+    private static final class Call {
 
         private final Exchange exchange;
         private final AsyncCallback callback;
 
-        private ERPTask(Exchange exchange, AsyncCallback callback) {
+        private Call(Exchange exchange, AsyncCallback callback) {
             this.exchange = exchange;
             this.callback = callback;
         }
+    }
+
+    private class ERPTask implements Runnable {
+
+        private final Exchange exchange;
+
+        private ERPTask(Exchange exchange) {
+            this.exchange = exchange;
+        }
 
         public void run() {
             log.info("Calling ERP");
             // simulate communication with ERP takes 5 seconds
             try {
-                Thread.sleep(5000);
+                Thread.sleep(getErpDelay());
             } catch (InterruptedException e) {
                 // ignore
             }
             log.info("ERP reply received");
 
-            // set reply
-            String in = exchange.getIn().getBody(String.class);
-            exchange.getOut().setBody(in + ";516");
-
-            // notify callback we are done
-            // we must use done(false) because the process method returned false
             log.info("Continue routing");
-            callback.done(false);
+            complete(exchange);
+        }
+    }
+
+    private class ERPReply implements Runnable {
+
+        private final Exchange exchange;
+
+        private ERPReply(Exchange exchange) {
+            this.exchange = exchange;
+        }
+
+        public void run() {
+            log.debug("ERP reply received");
+            complete(exchange);
         }
     }
 }
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision: 193 $
+ */
+public class AdaptiveConcurrencyLimiterTest extends TestCase {
+
+    public void testRejectAboveLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 100, 0.5);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInflight());
+
+        limiter.release(10);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    public void testIncreaseWhenFast() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 4, 100, 0.5);
+
+        // keep the limit in use with fast calls
+        for (int i = 0; i < 100; i++) {
+            while (limiter.tryAcquire()) {
+                // fill up
+            }
+            limiter.release(10);
+        }
+
+        // never above the max limit
+        assertEquals(4, limiter.getLimit());
+    }
+
+    public void testNoIncreaseWhenIdle() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 100, 0.5);
+
+        // a single call at a time does not tell whether more concurrent calls are ok
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(10);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    public void testDecreaseWhenSlow() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 2, 10, 0, 0.5);
+
+        limiter.tryAcquire();
+        limiter.release(50);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(50);
+        assertEquals(2, limiter.getLimit());
+
+        // never below the min limit
+        limiter.tryAcquire();
+        limiter.release(50);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    public void testDecreaseOncePerTargetLatency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 10, 60000, 0.5);
+
+        for (int i = 0; i < 8; i++) {
+            limiter.tryAcquire();
+        }
+        // the slow calls were all started under the old limit so only decrease once
+        for (int i = 0; i < 8; i++) {
+            limiter.release(70000);
+        }
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    public void testInvalidOptions() throws Exception {
+        try {
+            new AdaptiveConcurrencyLimiter(1, 0, 10, 100, 0.5);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveConcurrencyLimiter(1, 1, 10, 100, 1.0);
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
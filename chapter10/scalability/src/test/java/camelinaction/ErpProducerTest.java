@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Pushes thousands of concurrent requests through the ERP producer in scheduled mode,
+ * which only uses a handful of threads as no thread is waiting for the ERP replies.
+ *
+ * @version $Revision: 191 $
+ */
+public class ErpProducerTest extends CamelTestSupport {
+
+    @Test
+    public void testScheduledThousandsConcurrent() throws Exception {
+        ErpEndpoint endpoint = context.getEndpoint("erp:pricing?scheduled=true&delay=1000&poolSize=2&maxInflight=5000",
+                ErpEndpoint.class);
+        ErpProducer producer = (ErpProducer) endpoint.createProducer();
+        producer.start();
+
+        final int requests = 3000;
+        final CountDownLatch latch = new CountDownLatch(requests);
+        final AtomicInteger replies = new AtomicInteger();
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < requests; i++) {
+            final Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody("1234;4;1719;bumper");
+            producer.process(exchange, new AsyncCallback() {
+                public void done(boolean doneSync) {
+                    if ("1234;4;1719;bumper;516".equals(exchange.getOut().getBody(String.class))) {
+                        replies.incrementAndGet();
+                    }
+                    threads.add(Thread.currentThread().getName());
+                    latch.countDown();
+                }
+            });
+        }
+        assertEquals(requests, producer.getInflight());
+
+        assertTrue("Should complete all requests", latch.await(10, TimeUnit.SECONDS));
+        long delta = System.currentTimeMillis() - start;
+
+        // all the requests was in-flight at the same time so it only took a bit more than the 1 second delay
+        assertTrue("Should be concurrent, took " + delta + " millis", delta < 5000);
+        assertEquals(requests, replies.get());
+        assertTrue("Should only use a handful of threads: " + threads, threads.size() <= 2);
+        assertEquals(0, producer.getInflight());
+
+        producer.stop();
+    }
+
+    @Test
+    public void testScheduledRejectWhenFull() throws Exception {
+        ErpEndpoint endpoint = context.getEndpoint("erp:pricing?scheduled=true&delay=1000&maxInflight=10&blockWhenFull=false",
+                ErpEndpoint.class);
+        ErpProducer producer = (ErpProducer) endpoint.createProducer();
+        producer.start();
+
+        AsyncCallback noop = new AsyncCallback() {
+            public void done(boolean doneSync) {
+            }
+        };
+
+        for (int i = 0; i < 10; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            assertFalse("Should process asynchronously", producer.process(exchange, noop));
+        }
+
+        // the 11th call is over the limit
+        Exchange exchange = new DefaultExchange(context);
+        assertTrue("Should be rejected synchronously", producer.process(exchange, noop));
+        assertIsInstanceOf(RejectedExecutionException.class, exchange.getException());
+
+        producer.stop();
+    }
+
+    @Test
+    public void testScheduledWaitWhenFull() throws Exception {
+        ErpEndpoint endpoint = context.getEndpoint("erp:pricing?scheduled=true&delay=200&maxInflight=2", ErpEndpoint.class);
+        ErpProducer producer = (ErpProducer) endpoint.createProducer();
+        producer.start();
+
+        final CountDownLatch latch = new CountDownLatch(5);
+        final AtomicInteger replies = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            final Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody("1234;4;1719;bumper");
+            // does not block the caller even though the limit is reached
+            assertFalse("Should process asynchronously", producer.process(exchange, new AsyncCallback() {
+                public void done(boolean doneSync) {
+                    if ("1234;4;1719;bumper;516".equals(exchange.getOut().getBody(String.class))) {
+                        replies.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }));
+        }
+        assertEquals(2, producer.getInflight());
+        assertEquals(3, producer.getWaiting());
+
+        assertTrue("Should complete all requests", latch.await(5, TimeUnit.SECONDS));
+        assertEquals(5, replies.get());
+        assertEquals(0, producer.getInflight());
+        assertEquals(0, producer.getWaiting());
+
+        producer.stop();
+    }
+
+    @Test
+    public void testStopFailsPendingCalls() throws Exception {
+        ErpEndpoint endpoint = context.getEndpoint("erp:pricing?scheduled=true&delay=60000&maxInflight=2", ErpEndpoint.class);
+        ErpProducer producer = (ErpProducer) endpoint.createProducer();
+        producer.start();
+
+        final CountDownLatch latch = new CountDownLatch(3);
+        List<Exchange> exchanges = new ArrayList<Exchange>();
+        for (int i = 0; i < 3; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchanges.add(exchange);
+            producer.process(exchange, new AsyncCallback() {
+                public void done(boolean doneSync) {
+                    latch.countDown();
+                }
+            });
+        }
+        assertEquals(2, producer.getInflight());
+        assertEquals(1, producer.getWaiting());
+
+        // the replies are not received in time so the exchanges must fail when stopping
+        producer.stop();
+
+        assertTrue("Should complete all requests", latch.await(5, TimeUnit.SECONDS));
+        for (Exchange exchange : exchanges) {
+            assertIsInstanceOf(RejectedExecutionException.class, exchange.getException());
+        }
+        assertEquals(0, producer.getInflight());
+        assertEquals(0, producer.getWaiting());
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws Exception {
+        // the ERP system slows down when more than 20 calls are in-flight, so the limit
+        // should grow from the pool size of 5 until the latency goes above the target
+        ErpEndpoint endpoint = context.getEndpoint("erp:pricing?scheduled=true&delay=100&capacity=20"
+                + "&adaptive=true&targetLatency=150&poolSize=5&maxInflight=200", ErpEndpoint.class);
+        final ErpProducer producer = (ErpProducer) endpoint.createProducer();
+        producer.start();
+
+        final int requests = 1000;
+        final CountDownLatch latch = new CountDownLatch(requests);
+        final AtomicInteger peakInflight = new AtomicInteger();
+        AsyncCallback callback = new AsyncCallback() {
+            public void done(boolean doneSync) {
+                int current = producer.getInflight();
+                int peak = peakInflight.get();
+                while (current > peak && !peakInflight.compareAndSet(peak, current)) {
+                    peak = peakInflight.get();
+                }
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < requests; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody("1234;4;1719;bumper");
+            // waits for a free slot while the limit is reached
+            producer.process(exchange, callback);
+        }
+        assertTrue("Should complete all requests", latch.await(10, TimeUnit.SECONDS));
+
+        int peak = peakInflight.get();
+        int limit = producer.getLimiter().getLimit();
+        log.info("Adaptive limit " + limit + " with peak " + peak + " concurrent ERP calls");
+        assertTrue("Should grow above the initial limit, was " + peak, peak > 10);
+        assertTrue("Should stay near the capacity, was " + limit, limit >= 10 && limit <= 30);
+        assertEquals(0, producer.getInflight());
+
+        producer.stop();
+    }
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+
+        // add the ERP component
+        context.addComponent("erp", new ErpComponent());
+
+        return context;
+    }
+
+}
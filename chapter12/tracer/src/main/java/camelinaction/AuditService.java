@@ -16,6 +16,11 @@
  */
 package camelinaction;
 
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Handler;
+import org.apache.camel.Property;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -26,9 +31,34 @@ import org.apache.commons.logging.LogFactory;
  */
 public class AuditService {
 
+    private static final String LS = System.getProperty("line.separator");
+
     private Log LOG = LogFactory.getLog(AuditService.class);
 
+    @Handler
     public void auditFile(String body) {
+        // audit log it
+        LOG.info(auditMessage(body));
+    }
+
+    /**
+     * Audit logs a batch of orders at once, which is taken from a <tt>seda</tt> endpoint
+     * using <tt>batchSize</tt> and <tt>groupExchanges=true</tt>
+     */
+    public void auditFiles(@Property(Exchange.GROUPED_EXCHANGE) List<Exchange> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (Exchange exchange : batch) {
+            if (sb.length() > 0) {
+                sb.append(LS);
+            }
+            sb.append(auditMessage(exchange.getIn().getBody(String.class)));
+        }
+
+        // audit log the batch as a single log statement
+        LOG.info(sb.toString());
+    }
+
+    private static String auditMessage(String body) {
         // transform the message into pieces we can grab interesting data from
         String[] parts = body.split(",");
         String id = parts[0];
@@ -36,10 +66,7 @@ public class AuditService {
 
         // construct the Audit message according to requirements
         // which is often something readable by humans
-        String msg = "Customer " + customerId + " send order id " + id;
-
-        // audit log it
-        LOG.info(msg);
+        return "Customer " + customerId + " send order id " + id;
     }
 
 }
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Unit test auditing the orders in batches using the {@link BatchSedaConsumer}.
+ *
+ * @version $Revision: 95 $
+ */
+public class AuditBatchTest extends CamelTestSupport {
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        context.addComponent("seda", new RingBufferSedaComponent());
+        return context;
+    }
+
+    @Test
+    public void testAuditBatch() throws Exception {
+        getMockEndpoint("mock:audited").expectedMessageCount(2);
+        getMockEndpoint("mock:audited").message(0).property(Exchange.BATCH_SIZE).isEqualTo(100);
+        getMockEndpoint("mock:audited").message(1).property(Exchange.BATCH_SIZE).isEqualTo(20);
+
+        // queue the orders before the audit is started so they are audited in batches
+        for (int i = 0; i < 120; i++) {
+            template.sendBody("seda:audit?batchSize=100&groupExchanges=true", i + ",4444,20100110,222,1");
+        }
+        context.startRoute("audit");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testAuditWhileRunning() throws Exception {
+        getMockEndpoint("mock:audited").expectedMessageCount(5);
+        context.startRoute("audit");
+
+        // the orders arrive slower than they are audited, so most batches have a single order
+        for (int i = 0; i < 5; i++) {
+            template.sendBody("seda:audit?batchSize=100&groupExchanges=true", i + ",4444,20100110,222,1");
+            Thread.sleep(50);
+        }
+
+        assertMockEndpointsSatisfied();
+        for (Exchange audited : getMockEndpoint("mock:audited").getExchanges()) {
+            assertNull(audited.getException());
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("seda:audit?batchSize=100&groupExchanges=true").routeId("audit").noAutoStartup()
+                        .bean(AuditService.class, "auditFiles")
+                        .to("mock:audited");
+            }
+        };
+    }
+
+}
@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.BinaryPredicate;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Navigate;
+import org.apache.camel.Predicate;
+import org.apache.camel.Processor;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.FilterProcessor;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ServiceHelper;
+
+/**
+ * A content-based router which works as the <tt>choice</tt> processor, but looks up the matching
+ * <tt>when</tt> in a table instead of evaluating the predicates one by one.
+ * <p/>
+ * Consecutive predicates which compare the same header with a constant using <tt>isEqualTo</tt>,
+ * <tt>endsWith</tt> or <tt>startsWith</tt> are compiled into one table with a hash map of the values,
+ * a trie of the reversed suffixes and a trie of the prefixes, so the cost of routing depends on the length
+ * of the header value and not on the number of predicates. Any other predicate is evaluated as usual, and
+ * the first <tt>when</tt> which matches wins as with the <tt>choice</tt> processor.
+ * <p/>
+ * A table is only used when the header value is a <tt>String</tt>, otherwise its predicates are evaluated
+ * one by one, so values are converted exactly as usual.
+ * <p/>
+ * Use the {@link CompiledChoiceProcessorFactory} to use it for all the <tt>choice</tt> in the routes.
+ *
+ * @version $Revision: 95 $
+ */
+public class CompiledChoiceProcessor extends ServiceSupport implements AsyncProcessor, Navigate<Processor> {
+
+    private final List<FilterProcessor> filters;
+    private final AsyncProcessor otherwise;
+    // each segment is either a table or a single predicate to evaluate
+    private final List<Object> segments = new ArrayList<Object>();
+    private int compiledCount;
+
+    public CompiledChoiceProcessor(CamelContext context, List<FilterProcessor> filters, Processor otherwise) {
+        this.filters = filters;
+        this.otherwise = otherwise != null ? AsyncProcessorConverterHelper.convert(otherwise) : null;
+
+        Exchange probe = new DefaultExchange(context);
+        HeaderTable table = null;
+        for (int i = 0; i < filters.size(); i++) {
+            Predicate predicate = filters.get(i).getPredicate();
+            String header = compilableHeader(predicate, probe);
+            if (header == null) {
+                table = null;
+                segments.add(i);
+                continue;
+            }
+            if (table == null || !table.header.equals(header)) {
+                table = new HeaderTable(header);
+                segments.add(table);
+            }
+            BinaryPredicate binary = (BinaryPredicate) predicate;
+            table.add(binary.getOperator(), (String) binary.getRight().evaluate(probe, Object.class), i);
+            compiledCount++;
+        }
+    }
+
+    /**
+     * Number of predicates which are looked up in a table
+     */
+    public int getCompiledCount() {
+        return compiledCount;
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        AsyncProcessor processor;
+        try {
+            processor = choose(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+
+        if (processor == null) {
+            // no when matched and there is no otherwise
+            callback.done(true);
+            return true;
+        }
+        return AsyncProcessorHelper.process(processor, exchange, callback);
+    }
+
+    private AsyncProcessor choose(Exchange exchange) {
+        for (Object segment : segments) {
+            int index = -1;
+            if (segment instanceof HeaderTable) {
+                HeaderTable table = (HeaderTable) segment;
+                Object value = exchange.getIn().getHeader(table.header);
+                if (value instanceof String) {
+                    index = table.lookup((String) value);
+                } else {
+                    index = evaluate(exchange, table.branches);
+                }
+            } else {
+                int i = (Integer) segment;
+                if (filters.get(i).getPredicate().matches(exchange)) {
+                    index = i;
+                }
+            }
+            if (index >= 0) {
+                return filters.get(index).getProcessor();
+            }
+        }
+        return otherwise;
+    }
+
+    private int evaluate(Exchange exchange, List<Integer> branches) {
+        for (int i : branches) {
+            if (filters.get(i).getPredicate().matches(exchange)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the name of the header if the predicate compares a header with a constant string
+     * in a way which can be looked up in a table, or <tt>null</tt> if not
+     */
+    private static String compilableHeader(Predicate predicate, Exchange probe) {
+        if (!(predicate instanceof BinaryPredicate)) {
+            return null;
+        }
+        BinaryPredicate binary = (BinaryPredicate) predicate;
+        String operator = binary.getOperator();
+        if (!"==".equals(operator) && !"endsWith".equals(operator) && !"startsWith".equals(operator)) {
+            return null;
+        }
+
+        // the left side must be header(name) or header{name} so check it really returns the header
+        Expression left = binary.getLeft();
+        String text = String.valueOf(left);
+        if (!(text.startsWith("header(") && text.endsWith(")")) && !(text.startsWith("header{") && text.endsWith("}"))) {
+            return null;
+        }
+        String header = text.substring(7, text.length() - 1);
+        Object marker = new Object();
+        probe.getIn().setHeader(header, marker);
+        boolean isHeader = left.evaluate(probe, Object.class) == marker;
+        probe.getIn().removeHeader(header);
+        if (!isHeader || left.evaluate(probe, Object.class) != null) {
+            return null;
+        }
+
+        // the right side must be a constant string
+        Object value = binary.getRight().evaluate(probe, Object.class);
+        if (!(value instanceof String) || !value.equals(String.valueOf(binary.getRight()))) {
+            return null;
+        }
+        return header;
+    }
+
+    public List<Processor> next() {
+        if (!hasNext()) {
+            return null;
+        }
+        List<Processor> answer = new ArrayList<Processor>(filters);
+        if (otherwise != null) {
+            answer.add(otherwise);
+        }
+        return answer;
+    }
+
+    public boolean hasNext() {
+        return otherwise != null || !filters.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledChoice[" + filters.size() + " when, " + compiledCount + " compiled"
+                + (otherwise != null ? ", otherwise: " + otherwise : "") + "]";
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startServices(filters, otherwise);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        ServiceHelper.stopServices(otherwise, filters);
+    }
+
+    /**
+     * The equals, suffix and prefix predicates of consecutive <tt>when</tt> on the same header
+     */
+    private static final class HeaderTable {
+
+        private final String header;
+        private final List<Integer> branches = new ArrayList<Integer>();
+        private final Map<String, Integer> equals = new HashMap<String, Integer>();
+        private final Node suffixes = new Node();
+        private final Node prefixes = new Node();
+
+        private HeaderTable(String header) {
+            this.header = header;
+        }
+
+        void add(String operator, String value, int branch) {
+            branches.add(branch);
+            if ("==".equals(operator)) {
+                if (!equals.containsKey(value)) {
+                    equals.put(value, branch);
+                }
+            } else if ("endsWith".equals(operator)) {
+                Node node = suffixes;
+                for (int i = value.length() - 1; i >= 0; i--) {
+                    node = node.add(value.charAt(i));
+                }
+                node.mark(branch);
+            } else {
+                Node node = prefixes;
+                for (int i = 0; i < value.length(); i++) {
+                    node = node.add(value.charAt(i));
+                }
+                node.mark(branch);
+            }
+        }
+
+        /**
+         * Gets the first branch which matches, or -1 if none
+         */
+        int lookup(String value) {
+            Integer branch = equals.get(value);
+            int answer = branch != null ? branch : -1;
+
+            Node node = suffixes;
+            answer = first(answer, node.branch);
+            for (int i = value.length() - 1; i >= 0 && node != null; i--) {
+                node = node.get(value.charAt(i));
+                if (node != null) {
+                    answer = first(answer, node.branch);
+                }
+            }
+
+            node = prefixes;
+            answer = first(answer, node.branch);
+            for (int i = 0; i < value.length() && node != null; i++) {
+                node = node.get(value.charAt(i));
+                if (node != null) {
+                    answer = first(answer, node.branch);
+                }
+            }
+            return answer;
+        }
+
+        private static int first(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            return b < 0 ? a : Math.min(a, b);
+        }
+    }
+
+    /**
+     * A trie node with the children sorted by their character
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int branch = -1;
+
+        Node get(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node add(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            newKeys[i] = c;
+            newChildren[i] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[i];
+        }
+
+        void mark(int branch) {
+            // the first when with the same value wins
+            if (this.branch < 0) {
+                this.branch = branch;
+            }
+        }
+    }
+}
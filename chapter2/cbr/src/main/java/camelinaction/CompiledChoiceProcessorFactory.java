@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.Processor;
+import org.apache.camel.model.ChoiceDefinition;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.processor.ChoiceProcessor;
+import org.apache.camel.spi.ProcessorFactory;
+import org.apache.camel.spi.RouteContext;
+
+/**
+ * A {@link ProcessorFactory} which creates a {@link CompiledChoiceProcessor} for each <tt>choice</tt>
+ * in the routes, and leaves all other processors as usual.
+ * <p/>
+ * In Java DSL install it with <tt>context.setProcessorFactory(new CompiledChoiceProcessorFactory())</tt>,
+ * and in Spring XML just declare it as a bean.
+ *
+ * @version $Revision: 95 $
+ */
+public class CompiledChoiceProcessorFactory implements ProcessorFactory {
+
+    public Processor createChildProcessor(RouteContext routeContext, ProcessorDefinition<?> definition, boolean mandatory) throws Exception {
+        return null;
+    }
+
+    public Processor createProcessor(RouteContext routeContext, ProcessorDefinition<?> definition) throws Exception {
+        if (definition instanceof ChoiceDefinition) {
+            // let the choice create its when and otherwise, and then compile their predicates
+            ChoiceProcessor choice = (ChoiceProcessor) definition.createProcessor(routeContext);
+            return new CompiledChoiceProcessor(routeContext.getCamelContext(), choice.getFilters(), choice.getOtherwise());
+        }
+        return null;
+    }
+}
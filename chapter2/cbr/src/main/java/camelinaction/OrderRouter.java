@@ -42,6 +42,8 @@ public class OrderRouter {
     public static void main(String args[]) throws Exception {
         // create CamelContext
         CamelContext context = new DefaultCamelContext();
+        // dispatch the header predicates in the choice using lookup tables
+        context.setProcessorFactory(new CompiledChoiceProcessorFactory());
         
         // connect to embedded ActiveMQ JMS broker
         ConnectionFactory connectionFactory = 
@@ -46,6 +46,8 @@ public class OrderRouterWithStop {
     public static void main(String args[]) throws Exception {
         // create CamelContext
         CamelContext context = new DefaultCamelContext();
+        // dispatch the header predicates in the choice using lookup tables
+        context.setProcessorFactory(new CompiledChoiceProcessorFactory());
         
         // connect to embedded ActiveMQ JMS broker
         ConnectionFactory connectionFactory = 
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.List;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Navigate;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.ChoiceDefinition;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class CompiledChoiceProcessorTest extends CamelTestSupport {
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        context.setProcessorFactory(new CompiledChoiceProcessorFactory());
+        return context;
+    }
+
+    @Test
+    public void testOrders() throws Exception {
+        getMockEndpoint("mock:xml").expectedHeaderReceived(Exchange.FILE_NAME, "message1.xml");
+        getMockEndpoint("mock:csv").expectedBodiesReceived("message2.csv", "message3.csl");
+        getMockEndpoint("mock:bad").expectedBodiesReceived("message4.bad", "null");
+
+        for (String name : new String[] {"message1.xml", "message2.csv", "message3.csl", "message4.bad"}) {
+            template.sendBodyAndHeader("direct:orders", name, Exchange.FILE_NAME, name);
+        }
+        template.sendBody("direct:orders", "null");
+
+        assertMockEndpointsSatisfied();
+        // the regex is evaluated as usual
+        assertEquals(1, findChoice("orders").getCompiledCount());
+    }
+
+    @Test
+    public void testFirstMatchWins() throws Exception {
+        getMockEndpoint("mock:a").expectedBodiesReceived("order.xml", "invoice.xml");
+        getMockEndpoint("mock:b").expectedBodiesReceived("order");
+        getMockEndpoint("mock:c").expectedBodiesReceived("order.csv", "urgent.txt");
+        getMockEndpoint("mock:d").expectedBodiesReceived("invoice.txt");
+
+        for (String name : new String[] {"order.xml", "order", "order.csv", "invoice.xml", "urgent.txt", "invoice.txt"}) {
+            template.sendBodyAndHeader("direct:first", name, "name", name);
+        }
+
+        assertMockEndpointsSatisfied();
+        assertEquals(4, findChoice("first").getCompiledCount());
+    }
+
+    @Test
+    public void testNotStringHeader() throws Exception {
+        getMockEndpoint("mock:five").expectedMessageCount(1);
+
+        template.sendBodyAndHeader("direct:number", "Hello", "number", 5);
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testManyBranches() throws Exception {
+        getMockEndpoint("mock:branch").expectedHeaderReceived("branch", 142);
+
+        template.sendBodyAndHeader("direct:many", "Hello", Exchange.FILE_NAME, "report.e142");
+
+        assertMockEndpointsSatisfied();
+        assertEquals(200, findChoice("many").getCompiledCount());
+    }
+
+    private CompiledChoiceProcessor findChoice(String routeId) {
+        CompiledChoiceProcessor answer = findChoice(context.getRoute(routeId).navigate());
+        assertNotNull("Should use the compiled choice", answer);
+        return answer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompiledChoiceProcessor findChoice(Navigate<Processor> nav) {
+        List<Processor> children = nav.next();
+        if (children == null) {
+            return null;
+        }
+        for (Processor child : children) {
+            if (child instanceof CompiledChoiceProcessor) {
+                return (CompiledChoiceProcessor) child;
+            }
+            if (child instanceof Navigate) {
+                CompiledChoiceProcessor answer = findChoice((Navigate<Processor>) child);
+                if (answer != null) {
+                    return answer;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:orders").routeId("orders")
+                    .choice()
+                        .when(header("CamelFileName").endsWith(".xml"))
+                            .to("mock:xml")
+                        .when(header("CamelFileName").regex("^.*(csv|csl)$"))
+                            .to("mock:csv")
+                        .otherwise()
+                            .to("mock:bad");
+
+                from("direct:first").routeId("first")
+                    .choice()
+                        .when(header("name").endsWith(".xml"))
+                            .to("mock:a")
+                        .when(header("name").isEqualTo("order"))
+                            .to("mock:b")
+                        .when(header("name").startsWith("order"))
+                            .to("mock:c")
+                        // not compiled so it splits the table in two
+                        .when(body().contains("urgent"))
+                            .to("mock:c")
+                        .when(header("name").endsWith(".txt"))
+                            .to("mock:d");
+
+                from("direct:number")
+                    .choice()
+                        .when(header("number").isEqualTo("5"))
+                            .to("mock:five");
+
+                ChoiceDefinition choice = from("direct:many").routeId("many").choice();
+                for (int i = 0; i < 200; i++) {
+                    choice.when(header("CamelFileName").endsWith(".e" + i)).setHeader("branch", constant(i)).to("mock:branch");
+                }
+            }
+        };
+    }
+}
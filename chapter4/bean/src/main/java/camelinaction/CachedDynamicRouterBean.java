@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.DynamicRouter;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Header;
+
+/**
+ * A bean which uses the dynamic router EIP, as the <tt>DynamicRouterAnnotationBean</tt> from chapter 8,
+ * but returns the endpoints from the {@link EndpointCache}.
+ *
+ * @version $Revision: 95 $
+ */
+public class CachedDynamicRouterBean {
+
+    /**
+     * The method invoked by Dynamic Router EIP to compute where to go next.
+     *
+     * @param body          the message body
+     * @param previous      the previous endpoint, is <tt>null</tt> on the first invocation
+     * @param camelContext  the Camel context
+     * @return endpoint where to go, or <tt>null</tt> to indicate no more
+     */
+    @DynamicRouter
+    public Endpoint route(String body, @Header(Exchange.SLIP_ENDPOINT) String previous, CamelContext camelContext) {
+        String uri = whereToGo(body, previous);
+        // use the endpoint from the cache so the uri is only resolved once
+        return uri != null ? EndpointCache.lookup(camelContext).getEndpoint(uri) : null;
+    }
+
+    /**
+     * Method which computes where to go next
+     */
+    private String whereToGo(String body, String previous) {
+        if (previous == null) {
+            // 1st time
+            return "mock://a";
+        } else if ("mock://a".equals(previous)) {
+            // 2nd time - transform the message body using the simple language
+            return "language://simple:Bye ${body}";
+        } else {
+            // no more, so return null to indicate end of dynamic router
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.List;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.RoutingSlip;
+
+/**
+ * A bean which uses the routing slip EIP, as the <tt>SlipBean</tt> from chapter 8,
+ * but returns the slip as the endpoints from the {@link EndpointCache}.
+ * <p/>
+ * Camel would otherwise parse the slip and resolve its uris for every message.
+ *
+ * @version $Revision: 95 $
+ */
+public class CachedSlipBean {
+
+    @RoutingSlip
+    public List<Endpoint> slip(String body, CamelContext camelContext) {
+        // always include A
+        String answer = "mock:a";
+
+        // extra step if we are cool
+        if (body.contains("Cool")) {
+            answer += ",mock:b";
+        }
+
+        // and always include C as well
+        answer += ",mock:c";
+        return EndpointCache.lookup(camelContext).getEndpoints(answer);
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Endpoint;
+import org.apache.camel.StartupListener;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.spi.ManagementNamingStrategy;
+import org.apache.camel.spi.ManagementStrategy;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.CamelContextHelper;
+import org.apache.camel.util.ObjectHelper;
+
+/**
+ * A bounded cache of the endpoints resolved from the uris computed by beans used with the
+ * recipient list, routing slip and dynamic router EIPs.
+ * <p/>
+ * Camel normalizes and looks up an uri in the endpoint registry every time it routes to an uri
+ * given as a <tt>String</tt>, and splits a routing slip such as <tt>mock:a,mock:c</tt> for every message.
+ * When a bean returns the {@link Endpoint} instead, Camel uses it as is. So a bean can return
+ * <tt>EndpointCache.lookup(camelContext).getEndpoints("mock:a,mock:c")</tt> and only the first message
+ * pays for parsing the slip and resolving the endpoints. The producers are cached by the EIPs already.
+ * <p/>
+ * The cache is keyed by the uri or slip as given, and holds at most <tt>maxSize</tt> of each.
+ * The cache is registered in JMX with the hits and misses. In Spring XML it can be declared as a bean with
+ * the id <tt>endpointCache</tt> to configure it. Call {@link #clear()} after removing endpoints from
+ * the {@link CamelContext}, as the cache would otherwise still return the removed endpoints.
+ *
+ * @version $Revision: 95 $
+ */
+@ManagedResource(description = "Managed EndpointCache")
+public class EndpointCache extends ServiceSupport implements CamelContextAware, StartupListener {
+
+    public static final String DEFAULT_DELIMITER = ",";
+
+    // the caches are removed when their context is shutdown, as a weak map would never release a context its cache refers to
+    private static final ConcurrentMap<CamelContext, EndpointCache> CACHES = new ConcurrentHashMap<CamelContext, EndpointCache>();
+
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+    private final ConcurrentMap<String, List<Endpoint>> slips = new ConcurrentHashMap<String, List<Endpoint>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private CamelContext camelContext;
+    private ObjectName objectName;
+    private int maxSize = 1000;
+
+    /**
+     * Gets the cache for the given Camel context.
+     * <p/>
+     * Uses the cache with the id <tt>endpointCache</tt> from the registry if there is one,
+     * otherwise a cache with the default settings is installed on the context.
+     * The cache is kept until the context is shutdown, so a bean can look it up for every message.
+     */
+    public static EndpointCache lookup(CamelContext camelContext) {
+        EndpointCache answer = CACHES.get(camelContext);
+        if (answer != null) {
+            return answer;
+        }
+
+        answer = camelContext.getRegistry().lookup("endpointCache", EndpointCache.class);
+        if (answer == null || (answer.getCamelContext() != null && answer.getCamelContext() != camelContext)) {
+            answer = new EndpointCache();
+        }
+        answer.setCamelContext(camelContext);
+        // another thread may have installed its cache first
+        return CACHES.get(camelContext);
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    /**
+     * Installs this cache on the given Camel context, unless the context already has a cache
+     */
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+        if (CACHES.putIfAbsent(camelContext, this) != null) {
+            return;
+        }
+        try {
+            camelContext.addService(this);
+        } catch (Exception e) {
+            CACHES.remove(camelContext, this);
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+    }
+
+    @ManagedAttribute(description = "Maximum number of endpoints and slips cached")
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The maximum number of endpoints, and the maximum number of slips, to cache
+     */
+    @ManagedAttribute(description = "Maximum number of endpoints and slips cached")
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the endpoint for the uri
+     *
+     * @throws org.apache.camel.ResolveEndpointFailedException if the uri could not be resolved
+     */
+    public Endpoint getEndpoint(String uri) {
+        Endpoint answer = endpoints.get(uri);
+        if (answer != null) {
+            hits.incrementAndGet();
+            return answer;
+        }
+
+        misses.incrementAndGet();
+        answer = CamelContextHelper.getMandatoryEndpoint(camelContext, uri.trim());
+        evictIfFull(endpoints);
+        endpoints.put(uri, answer);
+        return answer;
+    }
+
+    /**
+     * Gets the endpoints for the slip, which is the uris separated by comma
+     *
+     * @throws org.apache.camel.ResolveEndpointFailedException if an uri could not be resolved
+     */
+    public List<Endpoint> getEndpoints(String slip) {
+        List<Endpoint> answer = slips.get(slip);
+        if (answer != null) {
+            hits.incrementAndGet();
+            return answer;
+        }
+
+        misses.incrementAndGet();
+        List<Endpoint> list = new ArrayList<Endpoint>();
+        for (String uri : slip.split(DEFAULT_DELIMITER)) {
+            if (uri.trim().length() > 0) {
+                list.add(getEndpoint(uri));
+            }
+        }
+        answer = Collections.unmodifiableList(list);
+        evictIfFull(slips);
+        slips.put(slip, answer);
+        return answer;
+    }
+
+    private <T> void evictIfFull(ConcurrentMap<String, T> map) {
+        // remove any entry, as an approximate LRU would cost more to maintain than resolving again
+        Iterator<String> it = map.keySet().iterator();
+        while (map.size() >= maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evicted.incrementAndGet();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of lookups found in the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of lookups which had to resolve the endpoints")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of entries removed as the cache was full")
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    @ManagedAttribute(description = "Number of endpoints cached")
+    public int getSize() {
+        return endpoints.size();
+    }
+
+    @ManagedAttribute(description = "Number of slips cached")
+    public int getSlipSize() {
+        return slips.size();
+    }
+
+    @ManagedOperation(description = "Removes all the endpoints and slips from the cache")
+    public void clear() {
+        endpoints.clear();
+        slips.clear();
+    }
+
+    @ManagedOperation(description = "Resets the hits, misses and evicted counters")
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evicted.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointCache[" + endpoints.size() + " endpoints, " + slips.size() + " slips]";
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ObjectHelper.notNull(camelContext, "camelContext", this);
+        camelContext.addStartupListener(this);
+    }
+
+    public void onCamelContextStarted(CamelContext context, boolean alreadyStarted) throws Exception {
+        // JMX is setup when the context is starting, so register the cache as a MBean now
+        ManagementStrategy management = context.getManagementStrategy();
+        ManagementNamingStrategy naming = management.getManagementNamingStrategy();
+        if (naming != null && objectName == null) {
+            objectName = naming.getObjectNameForService(context, this);
+            management.manageNamedObject(this, objectName);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        clear();
+    }
+
+    @Override
+    protected void doShutdown() throws Exception {
+        if (objectName != null) {
+            camelContext.getManagementStrategy().unmanageNamedObject(objectName);
+            objectName = null;
+        }
+        CACHES.remove(camelContext, this);
+    }
+
+}
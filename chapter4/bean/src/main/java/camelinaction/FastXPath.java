@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.apache.camel.language.LanguageAnnotation;
+
+/**
+ * Binds a bean parameter to the result of an XPath expression, the same way as
+ * {@link org.apache.camel.language.XPath}, but using a {@link FastXPathExpression}.
+ * <p/>
+ * Simple paths such as <tt>order/@name</tt> or <tt>partner/date/text()</tt> are extracted for all the
+ * parameters in a single StAX pass over the message, without building a DOM. Other paths are compiled
+ * once and evaluated over a DOM which is shared by all the parameters.
+ *
+ * @version $Revision: 57 $
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER})
+@LanguageAnnotation(language = "xpath", factory = FastXPathExpressionFactory.class)
+public @interface FastXPath {
+
+    String value();
+
+}
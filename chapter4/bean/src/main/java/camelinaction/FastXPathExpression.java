@@ -0,0 +1,442 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.InvalidPayloadException;
+import org.apache.camel.support.ExpressionAdapter;
+import org.apache.camel.util.ObjectHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * An XPath expression which is optimized for binding many bean parameters from the same message.
+ * <p/>
+ * Simple paths of element names ending with an attribute or <tt>text()</tt>, such as <tt>order/@name</tt>
+ * or <tt>partner/date/text()</tt>, are extracted using StAX. When binding the parameters of a bean method,
+ * the first parameter extracts the values of the simple paths of all the parameters of the method in a single
+ * pass, which stops as soon as all the values are found. The other parameters then look up their value without
+ * parsing the message again.
+ * <p/>
+ * Camel does not tell the expression which method it belongs to, so the paths of a method are learned when
+ * its parameters are bound, as Camel binds the parameters of a method one after the other in the order they
+ * were created. The values are kept by the current thread until the last parameter of the method is bound,
+ * and not on the exchange.
+ * <p/>
+ * Other paths, and messages which already are a DOM, are evaluated using a compiled XPath expression.
+ * The compiled expressions are pooled as they are not thread safe, and the message is only converted
+ * to a DOM once for all the parameters of the method.
+ * <p/>
+ * The result is the text of the first matching node. If no node matches the result is an empty text,
+ * which is converted to the parameter type the same way as the empty node set from {@link org.apache.camel.language.XPath}.
+ *
+ * @version $Revision: 57 $
+ */
+public class FastXPathExpression extends ExpressionAdapter {
+
+    // the parameters of a method are created one after the other, which the sequence tells
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    // the parameters being bound by the current thread
+    private static final ThreadLocal<Binding> BINDING = new ThreadLocal<Binding>();
+
+    // a simple path is element names ending with an attribute or text()
+    private static final String NAME = "[A-Za-z_][\\w.-]*";
+    private static final Pattern SIMPLE_PATH = Pattern.compile("/?(" + NAME + "(?:/" + NAME + ")*)/(?:@(" + NAME + ")|(text\\(\\)))");
+
+    // the JDK factory may reuse its readers, so it cannot be shared between threads
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            return factory;
+        }
+    };
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+
+    private final String path;
+    private final Class<?> resultType;
+    private final long sequence;
+    private final String key;
+    private final String elementPath;
+    private final String attribute;
+    private final boolean simple;
+    private final Queue<XPathExpression> pool = new ConcurrentLinkedQueue<XPathExpression>();
+
+    // the simple paths of the method and its number of parameters, learned when this is its first parameter
+    private volatile PathSet methodPaths;
+    private volatile int methodParameters;
+
+    public FastXPathExpression(String path) {
+        this(path, null);
+    }
+
+    /**
+     * @param resultType the type to convert the text to, such as the type of the bean parameter
+     */
+    public FastXPathExpression(String path, Class<?> resultType) {
+        this.path = path;
+        this.sequence = SEQUENCE.incrementAndGet();
+        // convert to the wrapper type, as converting a String to a primitive type falls back
+        // to a property editor in the type converter, which is not thread safe
+        this.resultType = resultType != null && resultType != Object.class
+                ? ObjectHelper.convertPrimitiveTypeToWrapperType(resultType) : null;
+        Matcher matcher = SIMPLE_PATH.matcher(path);
+        this.simple = matcher.matches();
+        if (simple) {
+            // the values are keyed by the path without the leading slash
+            this.elementPath = matcher.group(1);
+            this.attribute = matcher.group(2);
+            this.key = elementPath + (attribute != null ? "/@" + attribute : "/text()");
+            this.methodPaths = new PathSet(null, this);
+        } else {
+            this.elementPath = null;
+            this.attribute = null;
+            this.key = path;
+            this.methodPaths = new PathSet(null, null);
+            // compile the path up front to fail fast if its invalid
+            pool.add(compile());
+        }
+    }
+
+    /**
+     * Whether the path is extracted using StAX
+     */
+    public boolean isSimple() {
+        return simple;
+    }
+
+    /**
+     * The simple paths extracted when this is the first parameter of a bean method
+     */
+    Set<String> getMethodPaths() {
+        return methodPaths.paths;
+    }
+
+    public Object evaluate(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        if (body == null) {
+            return null;
+        }
+        Binding binding = bind(exchange, body);
+        Object answer;
+        try {
+            if (simple && !(body instanceof Node)) {
+                answer = binding.value(exchange, this);
+            } else {
+                answer = evaluateDom(exchange, binding, body);
+            }
+        } catch (RuntimeException e) {
+            BINDING.remove();
+            throw e;
+        }
+        if (binding.size == binding.first.methodParameters) {
+            // the last parameter of the method is bound
+            BINDING.remove();
+        }
+
+        if (answer == null) {
+            // no node matched, which @XPath returns as an empty node set that converts to an empty text
+            answer = "";
+        }
+        if (resultType != null) {
+            answer = exchange.getContext().getTypeConverter().convertTo(resultType, exchange, answer);
+        }
+        return answer;
+    }
+
+    @Override
+    public String toString() {
+        return "fastXPath(" + path + ")";
+    }
+
+    private Binding bind(Exchange exchange, Object body) {
+        if (exchange.getIn().getHeader(Exchange.BEAN_MULTI_PARAMETER_ARRAY) == null) {
+            // not binding the parameters of a bean method
+            return new Binding(exchange, body, this);
+        }
+
+        Binding binding = BINDING.get();
+        if (binding != null && binding.isContinuedBy(exchange, body, this)) {
+            binding.add(this);
+        } else {
+            if (binding != null) {
+                // the previous method did not bind any more parameters
+                binding.first.methodParameters = binding.size;
+            }
+            binding = new Binding(exchange, body, this);
+            BINDING.set(binding);
+        }
+        return binding;
+    }
+
+    private synchronized void learn(FastXPathExpression parameter) {
+        if (parameter.simple && !methodPaths.paths.contains(parameter.key)) {
+            methodPaths = new PathSet(methodPaths, parameter);
+        }
+    }
+
+    private Object evaluateDom(Exchange exchange, Binding binding, Object body) {
+        Node node;
+        if (body instanceof Node) {
+            node = (Node) body;
+        } else {
+            // convert the body to a DOM once for all the parameters
+            if (binding.document == null) {
+                try {
+                    binding.document = exchange.getIn().getMandatoryBody(Document.class);
+                } catch (InvalidPayloadException e) {
+                    throw ObjectHelper.wrapRuntimeCamelException(e);
+                }
+            }
+            node = binding.document;
+        }
+
+        XPathExpression expression = pool.poll();
+        if (expression == null) {
+            expression = compile();
+        }
+        try {
+            Node answer = (Node) expression.evaluate(node, XPathConstants.NODE);
+            return answer != null ? answer.getTextContent() : null;
+        } catch (XPathExpressionException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        } finally {
+            pool.offer(expression);
+        }
+    }
+
+    private XPathExpression compile() {
+        try {
+            // the factory is not thread safe
+            synchronized (XPATH_FACTORY) {
+                return XPATH_FACTORY.newXPath().compile(path);
+            }
+        } catch (XPathExpressionException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+    }
+
+    /**
+     * The parameters of a bean method bound so far from a message, and the values extracted for them
+     */
+    private static final class Binding {
+        private final Exchange exchange;
+        private final Object body;
+        private final FastXPathExpression first;
+        private FastXPathExpression last;
+        private int size = 1;
+        private Set<String> extracted = Collections.emptySet();
+        private Map<String, String> values;
+        private Document document;
+
+        private Binding(Exchange exchange, Object body, FastXPathExpression first) {
+            this.exchange = exchange;
+            this.body = body;
+            this.first = first;
+            this.last = first;
+        }
+
+        private boolean isContinuedBy(Exchange exchange, Object body, FastXPathExpression parameter) {
+            return this.exchange == exchange && this.body == body && parameter.sequence == last.sequence + 1;
+        }
+
+        private void add(FastXPathExpression parameter) {
+            last = parameter;
+            size++;
+            first.learn(parameter);
+        }
+
+        private String value(Exchange exchange, FastXPathExpression parameter) {
+            if (!extracted.contains(parameter.key)) {
+                // the first parameter, or the method has a parameter which was not learned yet
+                PathSet set = first.methodPaths;
+                try {
+                    XMLStreamReader reader;
+                    if (body instanceof byte[]) {
+                        reader = XML_INPUT_FACTORY.get().createXMLStreamReader(new ByteArrayInputStream((byte[]) body));
+                    } else {
+                        String xml = body instanceof String ? (String) body : exchange.getIn().getBody(String.class);
+                        reader = XML_INPUT_FACTORY.get().createXMLStreamReader(new StringReader(xml));
+                    }
+                    try {
+                        values = extract(reader, set);
+                    } finally {
+                        reader.close();
+                    }
+                } catch (XMLStreamException e) {
+                    throw ObjectHelper.wrapRuntimeCamelException(e);
+                }
+                extracted = set.paths;
+            }
+            return values.get(parameter.key);
+        }
+    }
+
+    /**
+     * The simple paths of the parameters of a bean method, which is copied when a path is added
+     */
+    private static final class PathSet {
+        private final Set<String> paths = new HashSet<String>();
+        private final Map<String, Integer> roots = new HashMap<String, Integer>();
+        private final Map<String, Map<String, String>> attributes = new HashMap<String, Map<String, String>>();
+        private final Map<String, String> texts = new HashMap<String, String>();
+
+        private PathSet(PathSet old, FastXPathExpression parameter) {
+            if (old != null) {
+                paths.addAll(old.paths);
+                roots.putAll(old.roots);
+                for (Map.Entry<String, Map<String, String>> entry : old.attributes.entrySet()) {
+                    attributes.put(entry.getKey(), new HashMap<String, String>(entry.getValue()));
+                }
+                texts.putAll(old.texts);
+            }
+            if (parameter == null) {
+                return;
+            }
+
+            paths.add(parameter.key);
+            String elementPath = parameter.elementPath;
+            int slash = elementPath.indexOf('/');
+            String root = slash > 0 ? elementPath.substring(0, slash) : elementPath;
+            Integer count = roots.get(root);
+            roots.put(root, count != null ? count + 1 : 1);
+            if (parameter.attribute != null) {
+                Map<String, String> names = attributes.get(elementPath);
+                if (names == null) {
+                    names = new HashMap<String, String>();
+                    attributes.put(elementPath, names);
+                }
+                names.put(parameter.attribute, parameter.key);
+            } else {
+                texts.put(elementPath, parameter.key);
+            }
+        }
+    }
+
+    private static Map<String, String> extract(XMLStreamReader reader, PathSet set) throws XMLStreamException {
+        Map<String, String> values = new HashMap<String, String>();
+        // the number of paths with the same root element as the message
+        int expected = 0;
+        StringBuilder elementPath = new StringBuilder();
+        int[] lengths = new int[16];
+        int depth = 0;
+        String textPath = null;
+        int textDepth = 0;
+        StringBuilder text = new StringBuilder();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (textPath != null && text.length() > 0) {
+                    // the first text node ends where the first child element starts
+                    values.put(textPath, text.toString());
+                    textPath = null;
+                }
+
+                String name = reader.getLocalName();
+                boolean namespace = !isEmpty(reader.getNamespaceURI());
+                if (depth == 0) {
+                    Integer count = namespace ? null : set.roots.get(name);
+                    if (count == null) {
+                        // no paths for this root element
+                        return values;
+                    }
+                    expected = count;
+                }
+
+                if (depth == lengths.length) {
+                    int[] copy = new int[depth * 2];
+                    System.arraycopy(lengths, 0, copy, 0, depth);
+                    lengths = copy;
+                }
+                lengths[depth++] = elementPath.length();
+                if (depth > 1) {
+                    elementPath.append('/');
+                }
+                elementPath.append(name);
+                if (namespace) {
+                    // simple paths only match elements without a namespace
+                    elementPath.append('{');
+                }
+
+                String current = elementPath.toString();
+                Map<String, String> names = set.attributes.get(current);
+                if (names != null) {
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String attributePath = names.get(reader.getAttributeLocalName(i));
+                        if (attributePath != null && isEmpty(reader.getAttributeNamespace(i))
+                                && !values.containsKey(attributePath)) {
+                            values.put(attributePath, reader.getAttributeValue(i));
+                        }
+                    }
+                }
+                String path = set.texts.get(current);
+                if (path != null && textPath == null && !values.containsKey(path)) {
+                    textPath = path;
+                    textDepth = depth;
+                    text.setLength(0);
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                if (textPath != null && depth == textDepth) {
+                    text.append(reader.getText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (textPath != null && depth == textDepth) {
+                    if (text.length() > 0) {
+                        values.put(textPath, text.toString());
+                    }
+                    textPath = null;
+                }
+                elementPath.setLength(lengths[--depth]);
+            }
+
+            if (values.size() == expected) {
+                // stop as soon as we have all the values
+                return values;
+            }
+        }
+        return values;
+    }
+
+    private static boolean isEmpty(String namespace) {
+        return namespace == null || namespace.length() == 0;
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.lang.annotation.Annotation;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Expression;
+import org.apache.camel.component.bean.AnnotationExpressionFactory;
+import org.apache.camel.language.LanguageAnnotation;
+
+/**
+ * Creates the {@link FastXPathExpression} for the {@link FastXPath} annotation.
+ * <p/>
+ * Camel creates the expressions once when it introspects the bean, so the paths are only compiled once.
+ * The simple paths of the parameters of a bean method are extracted together when the parameters are bound.
+ *
+ * @version $Revision: 57 $
+ */
+public class FastXPathExpressionFactory implements AnnotationExpressionFactory {
+
+    public Expression createExpression(CamelContext camelContext, Annotation annotation,
+                                       LanguageAnnotation languageAnnotation, Class<?> expressionReturnType) {
+        return new FastXPathExpression(((FastXPath) annotation).value(), expressionReturnType);
+    }
+
+}
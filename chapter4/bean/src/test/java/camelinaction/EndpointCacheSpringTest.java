@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.test.junit4.CamelSpringTestSupport;
+import org.junit.Test;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * The same routing slip as in EndpointCacheTest but using Spring XML, where the {@link EndpointCache} is configured as a bean
+ *
+ * @version $Revision: 95 $
+ */
+public class EndpointCacheSpringTest extends CamelSpringTestSupport {
+
+    @Override
+    protected AbstractXmlApplicationContext createApplicationContext() {
+        return new ClassPathXmlApplicationContext("camelinaction/EndpointCache.xml");
+    }
+
+    @Test
+    public void testRoutingSlip() throws Exception {
+        getMockEndpoint("mock:a").expectedBodiesReceived("Hello", "Cool");
+        getMockEndpoint("mock:b").expectedBodiesReceived("Cool");
+        getMockEndpoint("mock:c").expectedBodiesReceived("Hello", "Cool");
+
+        template.sendBody("direct:slip", "Hello");
+        template.sendBody("direct:slip", "Cool");
+
+        assertMockEndpointsSatisfied();
+
+        // the cache declared in the XML file is used
+        EndpointCache cache = EndpointCache.lookup(context);
+        assertSame(context.getRegistry().lookup("endpointCache"), cache);
+        assertEquals(100, cache.getMaxSize());
+        assertEquals(2, cache.getSlipSize());
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.List;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.ResolveEndpointFailedException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Test to demonstrate routing slips and recipient lists using the endpoints from the {@link EndpointCache}.
+ *
+ * @version $Revision: 95 $
+ */
+public class EndpointCacheTest extends CamelTestSupport {
+
+    @Override
+    protected boolean useJmx() {
+        return true;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:slip").bean(CachedSlipBean.class);
+                from("direct:recipients").recipientList().method(RecipientsBean.class);
+                from("direct:dynamic").bean(CachedDynamicRouterBean.class).to("mock:result");
+            }
+        };
+    }
+
+    @Test
+    public void testRoutingSlip() throws Exception {
+        getMockEndpoint("mock:a").expectedBodiesReceived("A", "Cool", "C");
+        getMockEndpoint("mock:b").expectedBodiesReceived("Cool");
+        getMockEndpoint("mock:c").expectedBodiesReceived("A", "Cool", "C");
+
+        template.sendBody("direct:slip", "A");
+        template.sendBody("direct:slip", "Cool");
+        template.sendBody("direct:slip", "C");
+
+        assertMockEndpointsSatisfied();
+
+        // each slip and the endpoints not seen before are resolved once, everything else is found in the cache
+        EndpointCache cache = EndpointCache.lookup(context);
+        assertEquals(5, cache.getMisses());
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getSize());
+        assertEquals(2, cache.getSlipSize());
+    }
+
+    @Test
+    public void testDynamicRouter() throws Exception {
+        getMockEndpoint("mock:a").expectedBodiesReceived("Camel", "Donkey");
+        getMockEndpoint("mock:result").expectedBodiesReceived("Bye Camel", "Bye Donkey");
+
+        template.sendBody("direct:dynamic", "Camel");
+        template.sendBody("direct:dynamic", "Donkey");
+
+        assertMockEndpointsSatisfied();
+
+        EndpointCache cache = EndpointCache.lookup(context);
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testRecipientList() throws Exception {
+        getMockEndpoint("mock:a").expectedBodiesReceived("Hello");
+        getMockEndpoint("mock:b").expectedBodiesReceived("Hello");
+
+        template.sendBody("direct:recipients", "Hello");
+
+        assertMockEndpointsSatisfied();
+        assertSame(context.getEndpoint("mock:a"), EndpointCache.lookup(context).getEndpoint("mock:a"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        EndpointCache cache = EndpointCache.lookup(context);
+        cache.setMaxSize(2);
+
+        List<Endpoint> slip = cache.getEndpoints("mock:a,mock:b,mock:c");
+        assertEquals(3, slip.size());
+        assertEquals("mock://c", slip.get(2).getEndpointUri());
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvicted());
+
+        try {
+            cache.getEndpoint("unknown:foo");
+            fail("Should have thrown an exception");
+        } catch (ResolveEndpointFailedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRemovedOnShutdown() throws Exception {
+        EndpointCache cache = EndpointCache.lookup(context);
+        assertSame(cache, EndpointCache.lookup(context));
+
+        context.stop();
+        assertNotSame("Should not keep the cache of a shutdown context", cache, EndpointCache.lookup(context));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        template.sendBody("direct:slip", "A");
+        template.sendBody("direct:slip", "B");
+
+        MBeanServer server = context.getManagementStrategy().getManagementAgent().getMBeanServer();
+        Set<ObjectName> names = server.queryNames(new ObjectName("org.apache.camel:type=services,*"), null);
+        ObjectName cache = null;
+        for (ObjectName name : names) {
+            if (name.getKeyProperty("name").startsWith("EndpointCache")) {
+                cache = name;
+            }
+        }
+        assertNotNull("Should be registered in JMX", cache);
+        assertEquals(1L, server.getAttribute(cache, "Hits"));
+        assertEquals(3L, server.getAttribute(cache, "Misses"));
+    }
+
+    public static class RecipientsBean {
+
+        public List<Endpoint> recipients(String body, CamelContext camelContext) {
+            return EndpointCache.lookup(camelContext).getEndpoints("mock:a,mock:b");
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.JndiRegistry;
+import org.apache.camel.language.XPath;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Test to demonstrate binding bean parameters using the @FastXPath annotation.
+ *
+ * @version $Revision: 57 $
+ */
+public class FastXPathTest extends CamelTestSupport {
+
+    private static final String ORDER = "<order id=\"123\" customer=\"honda\">"
+            + "<item amount=\"2\">Camel in Action</item><note>rush <b>it</b> now</note></order>";
+
+    @Override
+    protected JndiRegistry createRegistry() throws Exception {
+        JndiRegistry jndi = super.createRegistry();
+        jndi.bind("orderBean", new OrderBean());
+        return jndi;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:order").beanRef("orderBean", "order");
+                from("direct:other").beanRef("orderBean", "other");
+                from("direct:xpath").beanRef("orderBean", "xpath");
+                from("direct:amount").beanRef("orderBean", "amount");
+                from("seda:amount?concurrentConsumers=10").beanRef("orderBean", "amount").to("mock:amount");
+            }
+        };
+    }
+
+    @Test
+    public void testSimplePaths() throws Exception {
+        assertTrue(new FastXPathExpression("order/item/@amount").isSimple());
+        assertTrue(new FastXPathExpression("/order/note/text()").isSimple());
+        assertFalse(new FastXPathExpression("//item[@amount > 1]/text()").isSimple());
+
+        Object out = template.requestBody("direct:order", ORDER);
+        assertEquals("123 honda 2 Camel in Action rush ", out);
+    }
+
+    @Test
+    public void testBytes() throws Exception {
+        Object out = template.requestBody("direct:order", ORDER.getBytes("UTF-8"));
+        assertEquals("123 honda 2 Camel in Action rush ", out);
+    }
+
+    @Test
+    public void testDocument() throws Exception {
+        Document xml = context.getTypeConverter().convertTo(Document.class, ORDER);
+        Object out = template.requestBody("direct:order", xml);
+        assertEquals("123 honda 2 Camel in Action rush ", out);
+    }
+
+    @Test
+    public void testMissing() throws Exception {
+        // a missing node is an empty text, which does not convert to a number
+        Object out = template.requestBody("direct:order", "<order id=\"456\"><item>Camel in Action</item></order>");
+        assertEquals("456  null Camel in Action ", out);
+
+        // a different root element does not match
+        out = template.requestBody("direct:order", "<invoice id=\"789\" customer=\"bmw\"/>");
+        assertEquals("null  null  ", out);
+    }
+
+    @Test
+    public void testMissingSameAsXPath() throws Exception {
+        Object out = template.requestBody("direct:xpath", "<order id=\"456\"/>");
+        assertEquals("[] [] null null", out);
+
+        // neither can bind a missing node to an int
+        try {
+            template.requestBody("direct:amount", "<order/>");
+            fail("Should have thrown an exception");
+        } catch (CamelExecutionException e) {
+            assertIsInstanceOf(IllegalArgumentException.class, e.getCause().getCause());
+        }
+    }
+
+    @Test
+    public void testPathsPerMethod() throws Exception {
+        FastXPathExpression invoice = new FastXPathExpression("invoice/@id");
+        // the parameters of a method are created one after the other
+        FastXPathExpression id = new FastXPathExpression("order/@id", Integer.class);
+        FastXPathExpression customer = new FastXPathExpression("/order/@customer", String.class);
+
+        // bind them the same way as the bean component
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(ORDER);
+        exchange.getIn().setHeader(Exchange.BEAN_MULTI_PARAMETER_ARRAY, Boolean.TRUE);
+        assertEquals(123, id.evaluate(exchange));
+        assertEquals("honda", customer.evaluate(exchange));
+        assertEquals("", invoice.evaluate(exchange));
+
+        // the first parameter extracts the paths of the method only
+        assertEquals(new HashSet<String>(Arrays.asList("order/@id", "order/@customer")), id.getMethodPaths());
+        assertEquals(Collections.singleton("order/@customer"), customer.getMethodPaths());
+        assertEquals(Collections.singleton("invoice/@id"), invoice.getMethodPaths());
+    }
+
+    @Test
+    public void testNothingLeftOnExchange() throws Exception {
+        Exchange out = template.request("direct:other", new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                exchange.getIn().setBody(ORDER);
+            }
+        });
+        assertEquals("Camel in Action honda", out.getOut().getBody());
+        for (String name : out.getProperties().keySet()) {
+            assertFalse("Should not keep " + name, name.startsWith("CamelFastXPath"));
+        }
+    }
+
+    @Test
+    public void testNamespace() throws Exception {
+        Object out = template.requestBody("direct:order", "<order xmlns=\"http://camelinaction.com/order\" id=\"123\"/>");
+        assertEquals("null  null  ", out);
+    }
+
+    @Test
+    public void testNotSimplePath() throws Exception {
+        Object out = template.requestBody("direct:other", ORDER);
+        assertEquals("Camel in Action honda", out);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:amount");
+        mock.expectedMessageCount(200);
+        for (int i = 0; i < 200; i++) {
+            mock.message(i).body().isEqualTo(mock.message(i).header("amount"));
+        }
+
+        for (int i = 0; i < 200; i++) {
+            template.sendBodyAndHeader("seda:amount", "<order><item amount=\"" + i + "\"/></order>", "amount", i);
+        }
+
+        assertMockEndpointsSatisfied();
+    }
+
+    public static class OrderBean {
+
+        public String order(@FastXPath("order/@id") Integer id,
+                            @FastXPath("order/@customer") String customer,
+                            @FastXPath("order/item/@amount") Integer amount,
+                            @FastXPath("order/item/text()") String item,
+                            @FastXPath("order/note/text()") String note) {
+            return id + " " + customer + " " + amount + " " + item + " " + note;
+        }
+
+        public String other(@FastXPath("//item[@amount > 1]/text()") String item,
+                            @FastXPath("order/@customer") String customer) {
+            return item + " " + customer;
+        }
+
+        public int amount(@FastXPath("order/item/@amount") int amount) {
+            return amount;
+        }
+
+        public String xpath(@XPath("order/@customer") String customer,
+                            @FastXPath("order/@customer") String fastCustomer,
+                            @XPath("order/item/@amount") Integer amount,
+                            @FastXPath("order/item/@amount") Integer fastAmount) {
+            return "[" + customer + "] [" + fastCustomer + "] " + amount + " " + fastAmount;
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.impl.DefaultCamelContext;
+
+/**
+ * Runs the use case with the file consumer watching target/rider instead of polling it.
+ *
+ * @version $Revision: 95 $
+ */
+public class UseCaseWatchMain {
+
+    public static void main(String[] args) throws Exception {
+        UseCaseWatchMain client = new UseCaseWatchMain();
+        System.out.println("Starting client... press ctrl + c to stop it");
+        client.start();
+        System.out.println("... started.");
+        System.out.println("Drop files into the target/rider folder");
+        System.out.println("for example copy src/main/resources/good.txt to target/rider");
+        System.out.println("and copy src/main/resources/bad.txt to target/rider");
+        Thread.sleep(99999999);
+    }
+
+    private void start() throws Exception {
+        CamelContext camel = new DefaultCamelContext();
+        // file component which can watch the directory instead of polling it
+        camel.addComponent("file", new WatchFileComponent());
+        camel.addRoutes(new UseCaseWatchRoute());
+        camel.start();
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory, and optionally its sub directories, using a <tt>java.nio.file.WatchService</tt>
+ * and reports the files which are created or modified to a {@link Listener}.
+ * <p/>
+ * The events of each wake up are reported together, so a burst of files is reported as a single batch,
+ * and the listener can ask to be called again after a while, eg to check files which are still being written.
+ * Sub directories which are created while watching are watched as well, and the files already in them
+ * are reported. When the operating system has dropped events the listener is told to list the directory.
+ * <p/>
+ * This requires Java 7 or newer, so only use this class after checking the <tt>WatchService</tt> is available.
+ * The class is compiled against the Java 7 API, so this module must be built with a JDK 7 or newer,
+ * even though the compiler targets Java 6.
+ *
+ * @version $Revision: 95 $
+ */
+public class DirectoryWatcher implements Runnable {
+
+    /**
+     * Receives the changes from the watcher thread
+     */
+    public interface Listener {
+
+        /**
+         * The files created or modified, which is empty when called again after the requested wait
+         *
+         * @return millis to wait before being called again if there are no more events, or 0 to only be called on events
+         */
+        long onFiles(List<File> files);
+
+        void onOverflow();
+    }
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<WatchKey, Path>();
+    private final boolean recursive;
+    private final Listener listener;
+
+    /**
+     * Starts watching the directory, the events are reported once {@link #run()} is called
+     */
+    public DirectoryWatcher(File directory, boolean recursive, Listener listener) throws IOException {
+        this.recursive = recursive;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            register(directory.toPath(), null);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of directories being watched
+     */
+    public int getWatchedDirectories() {
+        return keys.size();
+    }
+
+    public void run() {
+        try {
+            long wait = 0;
+            while (true) {
+                WatchKey key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : watchService.take();
+                List<File> files = new ArrayList<File>();
+                if (key == null) {
+                    wait = listener.onFiles(files);
+                    continue;
+                }
+
+                Path dir = keys.get(key);
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else if (dir != null) {
+                        Path child = dir.resolve((Path) event.context());
+                        if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && child.toFile().isDirectory()) {
+                            try {
+                                register(child, files);
+                            } catch (IOException e) {
+                                // could not watch the new directory so let the listener list the directories instead
+                                overflow = true;
+                            }
+                        } else {
+                            files.add(child.toFile());
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    keys.remove(key);
+                }
+
+                if (overflow) {
+                    listener.onOverflow();
+                }
+                wait = listener.onFiles(files);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // we are closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops watching, which also stops the thread running this watcher
+     */
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void register(Path dir, List<File> files) throws IOException {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, dir);
+        if (!recursive) {
+            return;
+        }
+
+        File[] children = dir.toFile().listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    register(child.toPath(), files);
+                } else if (files != null) {
+                    // a new directory may already contain files before we started to watch it
+                    files.add(child);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.camel.component.file.FileComponent;
+import org.apache.camel.component.file.GenericFileConfiguration;
+import org.apache.camel.component.file.GenericFileEndpoint;
+import org.apache.camel.util.StringHelper;
+
+/**
+ * A <tt>file</tt> component where a consumer can be driven by the file system events of a
+ * <tt>java.nio.file.WatchService</tt> instead of listing the directory on every poll, by setting the
+ * option <tt>watch=true</tt>, see {@link WatchFileConsumer}.
+ * <p/>
+ * All the other <tt>file</tt> options are supported as usual, and endpoints without <tt>watch=true</tt>
+ * poll the directory as the regular <tt>file</tt> component does. Install it as the <tt>file</tt> component
+ * and then opt in per endpoint:
+ * <pre>
+ * context.addComponent("file", new WatchFileComponent());
+ *
+ * from("file:target/rider?watch=true&reconcileDelay=60000")
+ * </pre>
+ *
+ * @version $Revision: 95 $
+ */
+public class WatchFileComponent extends FileComponent {
+
+    @Override
+    protected GenericFileEndpoint<File> buildFileEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        // same as the file component, but creating a watch file endpoint
+        if (StringHelper.hasStartToken(remaining, "simple")) {
+            throw new IllegalArgumentException("Invalid directory: " + remaining
+                    + ". Dynamic expressions with ${ } placeholders is not allowed."
+                    + " Use the fileName option to set the dynamic expression.");
+        }
+
+        File file = new File(remaining);
+        WatchFileEndpoint answer = new WatchFileEndpoint(uri, this);
+        answer.setFile(file);
+
+        GenericFileConfiguration config = new GenericFileConfiguration();
+        config.setDirectory(file.getPath());
+        answer.setConfiguration(config);
+        return answer;
+    }
+}
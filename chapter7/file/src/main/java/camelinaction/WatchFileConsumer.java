@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.FileConsumer;
+import org.apache.camel.component.file.GenericFile;
+import org.apache.camel.component.file.GenericFileOperations;
+
+/**
+ * A file consumer which picks up the files reported by a {@link DirectoryWatcher}, instead of listing
+ * the entire directory on every poll.
+ * <p/>
+ * A poll is triggered as soon as the file system reports new files, so they are picked up within millis
+ * instead of waiting for the next scheduled poll, and only the reported files are checked, so large
+ * directories are not listed on every poll. A file is picked up when there has been no events for it in the
+ * <tt>quietPeriod</tt> millis, so files which are still being written are left alone. The scheduled polls still run using the <tt>delay</tt> option
+ * but only pick up pending events. As a safety net the entire directory is listed on the first poll, every
+ * <tt>reconcileDelay</tt> millis and when the operating system has dropped events.
+ * <p/>
+ * Notice that some JVMs implement the <tt>WatchService</tt> by polling, such as on Mac OS X, and on Java 6
+ * this consumer falls back to polling the directory as the regular file consumer.
+ *
+ * @version $Revision: 95 $
+ */
+public class WatchFileConsumer extends FileConsumer {
+
+    private final String endpointPath;
+    private final Map<File, Long> pending = new LinkedHashMap<File, Long>();
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong reconcileCount = new AtomicLong();
+    private volatile boolean reconcile = true;
+    private long nextReconcile;
+    private boolean listing;
+    private volatile DirectoryWatcher watcher;
+    private ExecutorService executor;
+
+    public WatchFileConsumer(WatchFileEndpoint endpoint, Processor processor, GenericFileOperations<File> operations) {
+        super(endpoint, processor, operations);
+        this.endpointPath = endpoint.getConfiguration().getDirectory();
+    }
+
+    @Override
+    public WatchFileEndpoint getEndpoint() {
+        return (WatchFileEndpoint) super.getEndpoint();
+    }
+
+    /**
+     * Whether the directory is being watched, or polled as the JVM does not support watching
+     */
+    public boolean isWatching() {
+        return watcher != null;
+    }
+
+    /**
+     * Number of files reported by the file system events
+     */
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    /**
+     * Number of times the entire directory was listed
+     */
+    public long getReconcileCount() {
+        return reconcileCount.get();
+    }
+
+    /**
+     * Whether the JVM supports the <tt>java.nio.file.WatchService</tt> (Java 7 or newer)
+     */
+    public static boolean isWatchSupported() {
+        try {
+            Class.forName("java.nio.file.WatchService");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected synchronized int poll() throws Exception {
+        if (watcher == null) {
+            return super.poll();
+        }
+
+        long now = System.currentTimeMillis();
+        if (reconcile || now >= nextReconcile) {
+            reconcile = false;
+            nextReconcile = now + getEndpoint().getReconcileDelay();
+            reconcileCount.incrementAndGet();
+            synchronized (pending) {
+                // the listing picks up the pending files as well
+                pending.clear();
+            }
+            listing = true;
+        }
+        try {
+            return super.poll();
+        } finally {
+            listing = false;
+        }
+    }
+
+    @Override
+    protected boolean pollDirectory(String fileName, List<GenericFile<File>> fileList, int depth) {
+        if (watcher == null || listing) {
+            return super.pollDirectory(fileName, fileList, depth);
+        }
+
+        // take the files which have been quiet long enough
+        List<File> files = new ArrayList<File>();
+        long settled = System.currentTimeMillis() - getEndpoint().getQuietPeriod();
+        synchronized (pending) {
+            for (Iterator<Map.Entry<File, Long>> it = pending.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<File, Long> entry = it.next();
+                if (entry.getValue() <= settled) {
+                    files.add(entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            if (!canPollMoreFiles(fileList)) {
+                // keep the rest for the next poll
+                synchronized (pending) {
+                    for (File file : files.subList(i, files.size())) {
+                        pending.put(file, settled);
+                    }
+                }
+                return false;
+            }
+
+            File file = files.get(i);
+            if (!file.isFile()) {
+                continue;
+            }
+            GenericFile<File> gf = asGenericFile(endpointPath, file);
+            int fileDepth = depth(gf.getRelativeFilePath());
+            if (fileDepth < endpoint.getMinDepth() || fileDepth > endpoint.getMaxDepth()) {
+                continue;
+            }
+            if (isValidDirectory(file.getParentFile(), fileDepth) && isValidFile(gf, false) && !isInProgress(gf)) {
+                log.trace("Adding valid file from event: {}", file);
+                fileList.add(gf);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (isWatchSupported()) {
+            try {
+                watcher = new DirectoryWatcher(new File(endpointPath), endpoint.isRecursive(), new DirectoryWatcher.Listener() {
+                    public long onFiles(List<File> files) {
+                        eventCount.addAndGet(files.size());
+                        long now = System.currentTimeMillis();
+                        synchronized (pending) {
+                            for (File file : files) {
+                                // remove first so the file moves to the end of the insertion order
+                                pending.remove(file);
+                                pending.put(file, now);
+                            }
+                            if (pending.isEmpty()) {
+                                return 0;
+                            }
+                        }
+
+                        // poll right away instead of waiting for the next scheduled poll
+                        run();
+                        synchronized (pending) {
+                            // check again when the files which are still being written may have settled
+                            return pending.isEmpty() ? 0 : Math.max(1, getEndpoint().getQuietPeriod());
+                        }
+                    }
+
+                    public void onOverflow() {
+                        reconcile = true;
+                        run();
+                    }
+                });
+                executor = getEndpoint().getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "WatchFile");
+                executor.execute(watcher);
+                log.debug("Watching directory: {}", endpointPath);
+            } catch (IOException e) {
+                log.warn("Cannot watch directory: " + endpointPath + ". Polling the directory instead.", e);
+                watcher = null;
+            }
+        } else {
+            log.warn("Watching directories requires Java 7 or newer. Polling the directory instead: {}", endpointPath);
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        if (executor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(executor);
+            executor = null;
+        }
+        super.doStop();
+    }
+
+    /**
+     * Whether the directories of a reported file would have been polled, eg the <tt>.camel</tt> directory is not
+     */
+    private boolean isValidDirectory(File dir, int depth) {
+        for (int i = 1; i < depth && dir != null; i++) {
+            if (!isValidFile(asGenericFile(endpointPath, dir), true)) {
+                return false;
+            }
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
+    private static int depth(String relativePath) {
+        int depth = 1;
+        for (int i = 0; i < relativePath.length(); i++) {
+            if (relativePath.charAt(i) == File.separatorChar) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+}
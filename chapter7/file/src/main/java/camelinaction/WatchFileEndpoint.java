@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+
+import org.apache.camel.Component;
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.FileConsumer;
+import org.apache.camel.component.file.FileEndpoint;
+import org.apache.camel.component.file.GenericFileOperations;
+
+/**
+ * A <tt>file</tt> endpoint which creates a {@link WatchFileConsumer} when <tt>watch=true</tt>.
+ *
+ * @version $Revision: 95 $
+ */
+public class WatchFileEndpoint extends FileEndpoint {
+
+    private boolean watch;
+    private long reconcileDelay = 60000;
+    private long quietPeriod = 100;
+
+    public WatchFileEndpoint(String uri, Component component) {
+        super(uri, component);
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * Whether the consumer picks up the files using file system events instead of listing the directory
+     */
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    public long getReconcileDelay() {
+        return reconcileDelay;
+    }
+
+    /**
+     * Millis between listing the entire directory when watching, to pick up any file which was missed
+     * by the file system events, default 60000
+     */
+    public void setReconcileDelay(long reconcileDelay) {
+        this.reconcileDelay = reconcileDelay;
+    }
+
+    public long getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Millis without events for a file before it is picked up when watching, default 100. Can be set to 0
+     * when the files are written using a temporary name and then renamed, eg using the <tt>tempFileName</tt> option
+     */
+    public void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    @Override
+    protected FileConsumer newFileConsumer(Processor processor, GenericFileOperations<File> operations) {
+        if (watch) {
+            return new WatchFileConsumer(this, processor, operations);
+        }
+        return super.newFileConsumer(processor, operations);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+
+/**
+ * A main class which measures the time from a file is dropped into a directory until it is picked up,
+ * when polling the directory every 500 millis (the default) and when watching the directory, both with the
+ * default quiet period of 100 millis and with a quiet period of 0, which takes a file on its first event.
+ * <p/>
+ * The directory is filled with other files first, which the consumers do not pick up but which a poll has to list.
+ * <p/>
+ * Run it with <tt>mvn compile exec:java -Dexec.mainClass=camelinaction.WatchFileLatencyMain -Dexec.args="100000 50"</tt>
+ * where the arguments are the number of other files in the directory and the number of files to drop.
+ *
+ * @version $Revision: 95 $
+ */
+public class WatchFileLatencyMain {
+
+    public static void main(String[] args) throws Exception {
+        int others = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        File dir = new File("target/latency");
+        File[] existing = dir.listFiles();
+        if (existing == null || existing.length < others) {
+            System.out.println("Creating " + others + " files in " + dir);
+            dir.mkdirs();
+            for (int i = 0; i < others; i++) {
+                new File(dir, "other" + i + ".dat").createNewFile();
+            }
+        }
+
+        run("poll", "delay=500", dir, count);
+        run("watch", "watch=true&delay=500", dir, count);
+        run("watch0", "watch=true&delay=500&quietPeriod=0", dir, count);
+    }
+
+    private static void run(String name, final String options, File dir, final int count) throws Exception {
+        final Map<String, Long> dropped = new ConcurrentHashMap<String, Long>();
+        final long[] latencies = new long[count];
+        final CountDownLatch latch = new CountDownLatch(count);
+
+        CamelContext context = new DefaultCamelContext();
+        context.addComponent("file", new WatchFileComponent());
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("file:target/latency?include=.*\\.txt&delete=true&initialDelay=0&" + options).process(new Processor() {
+                    public void process(Exchange exchange) throws Exception {
+                        long now = System.nanoTime();
+                        Long start = dropped.get(exchange.getIn().getHeader(Exchange.FILE_NAME, String.class));
+                        if (start != null) {
+                            latencies[(int) (count - latch.getCount())] = now - start;
+                        }
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+        context.start();
+        Thread.sleep(1000);
+
+        File tmp = new File("target/latency-tmp");
+        tmp.mkdirs();
+        for (int i = 0; i < count; i++) {
+            // write the file elsewhere and move it into the directory so it is complete when it appears
+            String fileName = name + i + ".txt";
+            File file = new File(tmp, fileName);
+            write(file, "Hello " + i);
+            dropped.put(fileName, System.nanoTime());
+            file.renameTo(new File(dir, fileName));
+            Thread.sleep(100);
+        }
+        boolean done = latch.await(60, TimeUnit.SECONDS);
+        context.stop();
+
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        System.out.println(String.format("  %-6s %d files%s, latency avg %.1f ms, p50 %.1f ms, max %.1f ms", name, count,
+                done ? "" : " (timeout)", total / count / 1000000.0, latencies[count / 2] / 1000000.0,
+                latencies[count - 1] / 1000000.0));
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class WatchFileConsumerTest extends CamelTestSupport {
+
+    @Override
+    public void setUp() throws Exception {
+        deleteDirectory("target/watch");
+        deleteDirectory("target/poll");
+        super.setUp();
+    }
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        context.addComponent("file", new WatchFileComponent());
+        return context;
+    }
+
+    @Test
+    public void testPickupWithoutPolling() throws Exception {
+        WatchFileConsumer consumer = assertIsInstanceOf(WatchFileConsumer.class, context.getRoute("watch").getConsumer());
+        assertTrue(consumer.isWatching());
+
+        // the scheduled poll runs only every minute so the file must be picked up by the event
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedBodiesReceived("Hello World");
+        mock.setResultWaitTime(5000);
+
+        template.sendBodyAndHeader("file:target/watch", "Hello World", Exchange.FILE_NAME, "hello.txt");
+
+        assertMockEndpointsSatisfied();
+        assertTrue(consumer.getEventCount() > 0);
+        // only the first poll listed the directory
+        assertEquals(1, consumer.getReconcileCount());
+    }
+
+    @Test
+    public void testNewSubDirectory() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedBodiesReceivedInAnyOrder("Bye World", "Hi World");
+        mock.setResultWaitTime(5000);
+
+        template.sendBodyAndHeader("file:target/watch", "Bye World", Exchange.FILE_NAME, "orders/bye.txt");
+        template.sendBodyAndHeader("file:target/watch", "Hi World", Exchange.FILE_NAME, "orders/2012/hi.txt");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testPolling() throws Exception {
+        // without watch=true the directory is polled as usual
+        assertFalse(context.getRoute("poll").getConsumer() instanceof WatchFileConsumer);
+
+        getMockEndpoint("mock:poll").expectedBodiesReceived("Hello World");
+
+        template.sendBodyAndHeader("file:target/poll", "Hello World", Exchange.FILE_NAME, "hello.txt");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("file:target/watch?watch=true&recursive=true&delay=60000&initialDelay=0")
+                    .routeId("watch")
+                    .to("mock:result");
+
+                from("file:target/poll?delay=100&initialDelay=0&readLock=changed&readLockCheckInterval=100")
+                    .routeId("poll")
+                    .to("mock:poll");
+            }
+        };
+    }
+}
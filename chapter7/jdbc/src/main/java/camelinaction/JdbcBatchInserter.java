@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.jdbc.JdbcConstants;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JDBC sink which inserts the rows of many messages using a single batched {@link PreparedStatement}.
+ * <p/>
+ * The message body is the parameters of the insert as an array or list, such as returned from
+ * {@link OrderToSqlBean#toRow(String, int, String)}. The rows are buffered and inserted when
+ * <tt>batchSize</tt> rows are buffered, or at the latest <tt>batchTimeout</tt> millis after the
+ * first row of the batch was buffered.
+ * <p/>
+ * Each batch is inserted in its own transaction. The messages are not completed until their batch
+ * has been committed, and if the batch fails it is rolled back and all its messages fail with the
+ * exception.
+ * <p/>
+ * Use concurrent consumers on the route so the batches can fill up. The messages are only redelivered
+ * if the consumer does not acknowledge them before they are completed, for example a transacted JMS consumer.
+ *
+ * @version $Revision: 57 $
+ */
+public class JdbcBatchInserter extends ServiceSupport implements AsyncProcessor, CamelContextAware {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcBatchInserter.class);
+
+    private CamelContext camelContext;
+    private DataSource dataSource;
+    private String sql;
+    private int batchSize = 100;
+    private long batchTimeout = 1000;
+    private ScheduledExecutorService scheduler;
+    private List<Row> pending = new ArrayList<Row>();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong rowCount = new AtomicLong();
+
+    public JdbcBatchInserter() {
+    }
+
+    public JdbcBatchInserter(DataSource dataSource, String sql) {
+        this.dataSource = dataSource;
+        this.sql = sql;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The insert statement with a <tt>?</tt> placeholder per parameter
+     */
+    public void setSql(String sql) {
+        this.sql = sql;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The maximum number of rows in a batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * The maximum time in millis a row is buffered before its batch is inserted
+     */
+    public void setBatchTimeout(long batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * Number of batches inserted
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Number of rows inserted
+     */
+    public long getRowCount() {
+        return rowCount.get();
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        Object[] parameters;
+        try {
+            parameters = exchange.getIn().getMandatoryBody(Object[].class);
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+
+        List<Row> batch = null;
+        List<Row> started = null;
+        synchronized (this) {
+            pending.add(new Row(exchange, callback, parameters));
+            if (pending.size() >= batchSize) {
+                batch = pending;
+                pending = new ArrayList<Row>(batchSize);
+            } else if (pending.size() == 1) {
+                started = pending;
+            }
+        }
+
+        if (batch != null) {
+            // the batch is full so insert it using the current thread
+            insert(batch, exchange);
+            return true;
+        }
+        if (started != null) {
+            // the first row of a new batch so start its timeout
+            scheduleTimeout(started);
+        }
+        return false;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ObjectHelper.notNull(camelContext, "camelContext");
+        ObjectHelper.notNull(dataSource, "dataSource");
+        ObjectHelper.notEmpty(sql, "sql");
+
+        scheduler = camelContext.getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "JdbcBatchInserter");
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (scheduler != null) {
+            camelContext.getExecutorServiceManager().shutdownNow(scheduler);
+            scheduler = null;
+        }
+        // insert the remaining rows
+        flush();
+    }
+
+    /**
+     * Inserts the rows which are currently buffered
+     */
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * Inserts the buffered rows, if they are still the given batch or any batch when <tt>null</tt>
+     */
+    private void flush(List<Row> expected) {
+        List<Row> batch;
+        synchronized (this) {
+            if (pending.isEmpty() || (expected != null && pending != expected)) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<Row>(batchSize);
+        }
+        insert(batch, null);
+    }
+
+    private void scheduleTimeout(final List<Row> batch) {
+        ScheduledExecutorService executor = scheduler;
+        try {
+            if (executor != null) {
+                executor.schedule(new Runnable() {
+                    public void run() {
+                        // the batch may already have been inserted because it was full
+                        flush(batch);
+                    }
+                }, batchTimeout, TimeUnit.MILLISECONDS);
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            // we are stopping
+        }
+        flush(batch);
+    }
+
+    private void insert(List<Row> batch, Exchange current) {
+        int[] counts = null;
+        Exception cause = null;
+        try {
+            counts = executeBatch(batch);
+            batchCount.incrementAndGet();
+            rowCount.addAndGet(batch.size());
+            LOG.debug("Inserted batch of {} rows", batch.size());
+        } catch (Exception e) {
+            LOG.warn("Failed to insert batch of " + batch.size() + " rows, the batch is rolled back", e);
+            cause = e;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Row row = batch.get(i);
+            if (cause != null) {
+                row.exchange.setException(cause);
+            } else {
+                row.exchange.getIn().setHeader(JdbcConstants.JDBC_UPDATE_COUNT, counts[i]);
+            }
+            row.callback.done(row.exchange == current);
+        }
+    }
+
+    private int[] executeBatch(List<Row> batch) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                try {
+                    int[] nullTypes = null;
+                    for (Row row : batch) {
+                        for (int i = 0; i < row.parameters.length; i++) {
+                            if (row.parameters[i] != null) {
+                                statement.setObject(i + 1, row.parameters[i]);
+                            } else {
+                                // not all drivers accept an untyped null so use the type of the column
+                                if (nullTypes == null) {
+                                    nullTypes = parameterTypes(statement, row.parameters.length);
+                                }
+                                statement.setNull(i + 1, nullTypes[i]);
+                            }
+                        }
+                        statement.addBatch();
+                    }
+                    int[] answer = statement.executeBatch();
+                    connection.commit();
+                    return answer;
+                } finally {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static int[] parameterTypes(PreparedStatement statement, int count) {
+        int[] answer = new int[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                answer[i] = statement.getParameterMetaData().getParameterType(i + 1);
+            } catch (SQLException e) {
+                // the driver cannot tell the type of the parameter
+                answer[i] = Types.VARCHAR;
+            }
+        }
+        return answer;
+    }
+
+    private static final class Row {
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+        private final Object[] parameters;
+
+        private Row(Exchange exchange, AsyncCallback callback, Object[] parameters) {
+            this.exchange = exchange;
+            this.callback = callback;
+            this.parameters = parameters;
+        }
+    }
+
+}
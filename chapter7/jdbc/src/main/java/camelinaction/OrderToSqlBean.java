@@ -16,10 +16,18 @@
  */
 package camelinaction;
 
+import org.apache.camel.Handler;
 import org.apache.camel.language.XPath;
 
 public class OrderToSqlBean {
 
+    /**
+     * The insert statement for the rows returned from {@link #toRow(String, int, String)}
+     */
+    public static final String INSERT_SQL = "insert into incoming_orders (part_name, quantity, customer) values (?, ?, ?)";
+
+    // the default method when the method to invoke is not specified
+    @Handler
     public String toSql(@XPath("order/@name") String name,
                         @XPath("order/@amount") int amount,
                         @XPath("order/@customer") String customer) {
@@ -32,4 +40,13 @@ public class OrderToSqlBean {
         System.out.println(sb.toString());
         return sb.toString();
     }
+
+    /**
+     * Gets the parameters for {@link #INSERT_SQL}, to be inserted using the {@link JdbcBatchInserter}
+     */
+    public Object[] toRow(@XPath("order/@name") String name,
+                          @XPath("order/@amount") int amount,
+                          @XPath("order/@customer") String customer) {
+        return new Object[] {name, amount, customer};
+    }
 }
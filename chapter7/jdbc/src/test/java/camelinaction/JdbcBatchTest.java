@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import org.apache.camel.builder.NotifyBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.JndiRegistry;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Test to demonstrate inserting orders in batches using the {@link JdbcBatchInserter}.
+ *
+ * @version $Revision: 57 $
+ */
+public class JdbcBatchTest extends CamelTestSupport {
+
+    private JdbcTemplate jdbc;
+    private JdbcBatchInserter inserter;
+
+    @Before
+    public void setupDatabase() throws Exception {
+        DataSource ds = context.getRegistry().lookup("dataSource", DataSource.class);
+        jdbc = new JdbcTemplate(ds);
+
+        jdbc.execute("create table incoming_orders "
+            + "( part_name varchar(20), quantity int, customer varchar(20) not null)");
+    }
+
+    @After
+    public void dropDatabase() throws Exception {
+        jdbc.execute("drop table incoming_orders");
+    }
+
+    protected JndiRegistry createRegistry() throws Exception {
+        JndiRegistry jndi = super.createRegistry();
+        jndi.bind("orderToSql", new OrderToSqlBean());
+
+        DriverManagerDataSource ds = new DriverManagerDataSource();
+        ds.setDriverClassName("org.hsqldb.jdbcDriver");
+        ds.setUrl("jdbc:hsqldb:mem:order");
+        ds.setUsername("sa");
+        ds.setPassword("");
+
+        jndi.bind("dataSource", ds);
+        return jndi;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+
+            @Override
+            public void configure() throws Exception {
+                inserter = new JdbcBatchInserter(context.getRegistry().lookup("dataSource", DataSource.class),
+                        OrderToSqlBean.INSERT_SQL);
+                inserter.setCamelContext(context);
+                inserter.setBatchSize(10);
+                inserter.setBatchTimeout(500);
+
+                // use concurrent consumers so the batches can fill up
+                from("seda:accounting?concurrentConsumers=10")
+                    .to("bean:orderToSql?method=toRow")
+                    .process(inserter)
+                    .to("mock:result");
+
+                // rows which are already converted, sharing the batches with the route above
+                from("seda:rows")
+                    .process(inserter)
+                    .to("mock:result");
+            }
+        };
+    }
+
+    @Test
+    public void testBatchInsert() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(100);
+
+        for (int i = 0; i < 100; i++) {
+            template.sendBody("seda:accounting", "<order name=\"motor\" amount=\"" + i + "\" customer=\"honda\"/>");
+        }
+
+        mock.assertIsSatisfied();
+
+        assertEquals(100, jdbc.queryForInt("select count(*) from incoming_orders"));
+        assertEquals(4950, jdbc.queryForInt("select sum(quantity) from incoming_orders"));
+        assertEquals(100, inserter.getRowCount());
+        assertTrue("Should insert in batches, was " + inserter.getBatchCount(), inserter.getBatchCount() < 100);
+    }
+
+    @Test
+    public void testBatchTimeout() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(3);
+        mock.expectedHeaderReceived("CamelJdbcUpdateCount", 1);
+
+        for (int i = 0; i < 3; i++) {
+            template.sendBody("seda:accounting", "<order name=\"motor\" amount=\"1\" customer=\"honda\"/>");
+        }
+
+        // the batch is not full so its inserted when the batch timeout triggers
+        mock.assertIsSatisfied();
+
+        assertEquals(3, jdbc.queryForInt("select count(*) from incoming_orders"));
+        assertEquals(1, inserter.getBatchCount());
+    }
+
+    @Test
+    public void testBatchRollback() throws Exception {
+        // insert both rows in the same batch regardless of when they arrive
+        inserter.setBatchSize(2);
+        inserter.setBatchTimeout(60000);
+
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(0);
+        NotifyBuilder notify = new NotifyBuilder(context).whenFailed(2).create();
+
+        template.sendBody("seda:accounting", "<order name=\"motor\" amount=\"1\" customer=\"honda\"/>");
+        // the customer is null so the batch fails
+        template.sendBody("seda:rows", new Object[] {"motor", 1, null});
+
+        // wait until the batch has failed
+        assertTrue(notify.matches(5, TimeUnit.SECONDS));
+        mock.assertIsSatisfied();
+
+        // the entire batch is rolled back
+        assertEquals(0, jdbc.queryForInt("select count(*) from incoming_orders"));
+        assertEquals(0, inserter.getRowCount());
+    }
+
+}
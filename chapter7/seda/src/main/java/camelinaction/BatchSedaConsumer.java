@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.seda.SedaConsumer;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.UnitOfWorkHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A <tt>seda</tt> consumer which drains up to <tt>batchSize</tt> exchanges from the queue each time it
+ * wakes up, instead of polling the queue once per exchange.
+ * <p/>
+ * The exchanges are either routed one by one within the same wakeup, or when <tt>groupExchanges=true</tt>
+ * as a single exchange, which has the batch as a <tt>List&lt;Exchange&gt;</tt> in the
+ * {@link Exchange#GROUPED_EXCHANGE} property, the same as the aggregator does when grouping exchanges.
+ * This allows a bean to handle the entire batch at once, for example to write the records in bulk.
+ * <p/>
+ * The consumer never waits for a batch to fill up, it only takes the exchanges which are already queued.
+ * So when grouping, a batch can have a single exchange when the queue is not busy.
+ *
+ * @version $Revision: 95 $
+ */
+public class BatchSedaConsumer extends SedaConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSedaConsumer.class);
+
+    private final BatchSedaEndpoint endpoint;
+
+    public BatchSedaConsumer(BatchSedaEndpoint endpoint, Processor processor) {
+        super(endpoint, processor);
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    protected void sendToConsumers(Exchange exchange) throws Exception {
+        // the exchange has already been taken from the queue, so drain the rest of the batch
+        int batchSize = endpoint.getBatchSize();
+        List<Exchange> drained = new ArrayList<Exchange>();
+        if (batchSize > 1) {
+            endpoint.getQueue().drainTo(drained, batchSize - 1);
+        }
+
+        if (endpoint.isGroupExchanges()) {
+            // always group, also a batch of one, so the route can rely on the grouped exchanges
+            sendGrouped(exchange, drained);
+        } else if (drained.isEmpty()) {
+            super.sendToConsumers(exchange);
+        } else {
+            sendEach(exchange, drained);
+        }
+    }
+
+    private void sendEach(Exchange exchange, List<Exchange> drained) {
+        // the exchange is completed by the seda consumer, so only the drained exchanges are completed here
+        process(exchange);
+        for (Exchange original : drained) {
+            Exchange copy = prepareExchange(original);
+            process(copy);
+            complete(original, copy);
+        }
+    }
+
+    private void sendGrouped(Exchange exchange, List<Exchange> drained) {
+        List<Exchange> batch = new ArrayList<Exchange>(drained.size() + 1);
+        batch.add(exchange);
+        for (Exchange original : drained) {
+            batch.add(prepareExchange(original));
+        }
+
+        Exchange group = new DefaultExchange(endpoint);
+        group.setProperty(Exchange.GROUPED_EXCHANGE, batch);
+        group.setProperty(Exchange.BATCH_SIZE, batch.size());
+        process(group);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Exchange copy = batch.get(i);
+            if (group.getException() != null) {
+                copy.setException(group.getException());
+            }
+            // the exchanges in the batch are not routed on their own, so the on completions must be done here
+            UnitOfWorkHelper.doneSynchronizations(copy, copy.handoverCompletions(), LOG);
+            if (i > 0) {
+                complete(drained.get(i - 1), copy);
+            }
+        }
+    }
+
+    private void process(Exchange exchange) {
+        try {
+            super.sendToConsumers(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+        }
+    }
+
+    /**
+     * Copies the result back to the exchange taken from the queue, the same way as the seda consumer does
+     */
+    private void complete(Exchange original, Exchange copy) {
+        if (copy.hasOut()) {
+            original.setOut(copy.getOut().copy());
+        } else {
+            original.setIn(copy.getIn());
+        }
+        if (copy.getException() != null) {
+            original.setException(copy.getException());
+            getExceptionHandler().handleException("Error processing exchange", copy, copy.getException());
+        }
+    }
+}
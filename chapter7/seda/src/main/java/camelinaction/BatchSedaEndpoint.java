@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.camel.Component;
+import org.apache.camel.Consumer;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.seda.SedaEndpoint;
+
+/**
+ * A <tt>seda</tt> endpoint which consumers can take up to <tt>batchSize</tt> exchanges from the queue
+ * per poll, see {@link BatchSedaConsumer}.
+ *
+ * @version $Revision: 95 $
+ */
+public class BatchSedaEndpoint extends SedaEndpoint {
+
+    private int batchSize = 1;
+    private boolean groupExchanges;
+
+    public BatchSedaEndpoint(String endpointUri, Component component, BlockingQueue<Exchange> queue, int concurrentConsumers) {
+        super(endpointUri, component, queue, concurrentConsumers);
+    }
+
+    @Override
+    public Consumer createConsumer(Processor processor) throws Exception {
+        return new BatchSedaConsumer(this, processor);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The maximum number of exchanges to take from the queue per poll, the default of 1 is the same as
+     * a regular <tt>seda</tt> consumer
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isGroupExchanges() {
+        return groupExchanges;
+    }
+
+    /**
+     * Whether to route the batch as a single exchange, with the exchanges stored as a <tt>List</tt> in the
+     * {@link Exchange#GROUPED_EXCHANGE} property, or to route the exchanges one by one (default)
+     */
+    public void setGroupExchanges(boolean groupExchanges) {
+        this.groupExchanges = groupExchanges;
+    }
+}
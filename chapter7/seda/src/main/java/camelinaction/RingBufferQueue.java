@@ -0,0 +1,367 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded lock free {@link BlockingQueue} backed by a preallocated ring buffer, in the style of the
+ * LMAX Disruptor, which can be used as the queue of a <tt>seda</tt> endpoint, see {@link RingBufferSedaComponent}.
+ * <p/>
+ * Any number of producers and consumers claim slots in the ring using a compare and set on a shared
+ * sequence, and each slot has its own sequence which tells whether it is ready to be written or read.
+ * Offering and polling never takes a lock, and unlike a <tt>LinkedBlockingQueue</tt> no node is
+ * allocated per element.
+ * <p/>
+ * The {@link WaitStrategy} decides what a producer does when the ring is full, and a consumer
+ * does when the ring is empty.
+ * <p/>
+ * Removing an arbitrary element is not supported, {@link #remove(Object)} always returns <tt>false</tt>.
+ *
+ * @version $Revision: 95 $
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * How to wait when the ring is full or empty
+     */
+    public enum WaitStrategy {
+        /**
+         * Spin a little and then park the thread until signalled, uses the least CPU
+         */
+        blocking,
+        /**
+         * Spin a little and then yield the thread, trades CPU for lower latency
+         */
+        yielding,
+        /**
+         * Keep spinning, gives the lowest latency but uses a full core per waiting thread
+         */
+        busySpin
+    }
+
+    private static final int SPIN_TRIES = 100;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new PaddedAtomicLong();
+    private final AtomicLong tail = new PaddedAtomicLong();
+    private final WaitStrategy waitStrategy;
+    private final Waiter notEmpty;
+    private final Waiter notFull;
+
+    /**
+     * @param capacity     the capacity, which is rounded up to a power of two of at least 2
+     * @param waitStrategy the wait strategy
+     */
+    public RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, was " + capacity);
+        }
+        // a single slot cannot tell a published element from a freed slot as both
+        // would have the same sequence, so use at least two slots
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+        this.notEmpty = new Waiter() {
+            boolean isReady() {
+                return tail.get() != head.get();
+            }
+        };
+        this.notFull = new Waiter() {
+            boolean isReady() {
+                return size() < RingBufferQueue.this.capacity;
+            }
+        };
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long available = sequences.get(index) - pos;
+            if (available == 0) {
+                // the slot is free so claim it
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, e);
+                    // publish the element to the consumers
+                    sequences.set(index, pos + 1);
+                    notEmpty.signal();
+                    return true;
+                }
+                pos = tail.get();
+            } else if (available < 0) {
+                // the slot has not been consumed since the previous lap so the ring is full
+                return false;
+            } else {
+                // another producer claimed the slot
+                pos = tail.get();
+            }
+        }
+    }
+
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long available = sequences.get(index) - (pos + 1);
+            if (available == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E answer = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    // free the slot for the next lap
+                    sequences.set(index, pos + capacity);
+                    notFull.signal();
+                    return answer;
+                }
+                pos = head.get();
+            } else if (available < 0) {
+                // the slot has not been published yet so the ring is empty
+                return null;
+            } else {
+                // another consumer took the element
+                pos = head.get();
+            }
+        }
+    }
+
+    public E peek() {
+        long pos = head.get();
+        int index = (int) pos & mask;
+        if (sequences.get(index) == pos + 1) {
+            return buffer.get(index);
+        }
+        return null;
+    }
+
+    public void put(E e) throws InterruptedException {
+        for (int attempt = 0; !offer(e); attempt++) {
+            idle(notFull, attempt, 0);
+        }
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(e)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int attempt = 0; !offer(e); attempt++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            idle(notFull, attempt, remaining);
+        }
+        return true;
+    }
+
+    public E take() throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            E answer = poll();
+            if (answer != null) {
+                return answer;
+            }
+            idle(notEmpty, attempt, 0);
+        }
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E answer = poll();
+        if (answer != null) {
+            return answer;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int attempt = 0; ; attempt++) {
+            answer = poll();
+            if (answer != null) {
+                return answer;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            idle(notEmpty, attempt, remaining);
+        }
+    }
+
+    /**
+     * Waits before the next attempt according to the wait strategy
+     *
+     * @param nanos the max time to park, or 0 to park until signalled
+     */
+    private void idle(Waiter waiter, int attempt, long nanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waitStrategy == WaitStrategy.busySpin || attempt < SPIN_TRIES) {
+            return;
+        }
+        if (waitStrategy == WaitStrategy.yielding) {
+            Thread.yield();
+        } else {
+            waiter.await(nanos);
+        }
+    }
+
+    public int size() {
+        // read the head first so the size is never negative
+        long first = head.get();
+        long size = tail.get() - first;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * Not supported as elements can only be taken from the head of the ring
+     *
+     * @return <tt>false</tt>
+     */
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * A snapshot of the elements in the ring, which does not support removal
+     */
+    public Iterator<E> iterator() {
+        List<E> answer = new ArrayList<E>();
+        long end = tail.get();
+        for (long pos = head.get(); pos < end; pos++) {
+            int index = (int) pos & mask;
+            E e = buffer.get(index);
+            // skip slots which are not published or already taken
+            if (e != null && sequences.get(index) == pos + 1) {
+                answer.add(e);
+            }
+        }
+        return Collections.unmodifiableList(answer).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "RingBufferQueue[capacity=" + capacity + ", size=" + size() + ", waitStrategy=" + waitStrategy + "]";
+    }
+
+    /**
+     * Parks the threads using the blocking wait strategy. The lock is only taken when there are
+     * waiting threads, so offering and polling stay lock free while the queue is busy.
+     */
+    private abstract static class Waiter {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition condition = lock.newCondition();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        abstract boolean isReady();
+
+        void await(long nanos) throws InterruptedException {
+            // register as waiting before checking the state, so a signal cannot be missed
+            waiting.incrementAndGet();
+            try {
+                lock.lockInterruptibly();
+                try {
+                    if (!isReady()) {
+                        if (nanos > 0) {
+                            condition.awaitNanos(nanos);
+                        } else {
+                            condition.await();
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        void signal() {
+            if (waiting.get() > 0) {
+                lock.lock();
+                try {
+                    condition.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the head and tail sequences on separate cache lines, so producers and consumers
+     * do not invalidate each others cache line
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+import camelinaction.RingBufferQueue.WaitStrategy;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.seda.SedaComponent;
+
+/**
+ * A <tt>seda</tt> component where an endpoint can use a lock free {@link RingBufferQueue} instead of a
+ * <tt>LinkedBlockingQueue</tt>, by setting the option <tt>ringBuffer=true</tt>.
+ * <p/>
+ * All the other <tt>seda</tt> options are supported as usual, such as <tt>concurrentConsumers</tt> and
+ * <tt>multipleConsumers</tt>. The ring buffer is bounded, so its capacity is the <tt>size</tt> option, or the
+ * queue size of this component, which defaults to 1024. Use <tt>blockWhenFull=true</tt> to let the
+ * producers wait for free space instead of failing when the ring is full. The {@link WaitStrategy} is set using the
+ * <tt>waitStrategy</tt> option, which defaults to <tt>blocking</tt>.
+ * <p/>
+ * All the endpoints of the same queue share the queue. An endpoint without <tt>ringBuffer=true</tt> reuses
+ * an existing ring buffer, but <tt>ringBuffer=true</tt> is rejected if a plain queue has already been created.
+ * <p/>
+ * The consumers of any of the endpoints, also those using a <tt>LinkedBlockingQueue</tt>, can take a batch
+ * of exchanges per poll using the <tt>batchSize</tt> and <tt>groupExchanges</tt> options, see {@link BatchSedaConsumer}.
+ * <p/>
+ * Install it as the <tt>seda</tt> component and then opt in per endpoint:
+ * <pre>
+ * context.addComponent("seda", new RingBufferSedaComponent());
+ *
+ * from("seda:update?ringBuffer=true&waitStrategy=yielding&concurrentConsumers=20")
+ * </pre>
+ *
+ * @version $Revision: 95 $
+ */
+public class RingBufferSedaComponent extends SedaComponent {
+
+    private final Map<String, BlockingQueue<Exchange>> ringBuffers = new HashMap<String, BlockingQueue<Exchange>>();
+    private WaitStrategy waitStrategy = WaitStrategy.blocking;
+
+    public RingBufferSedaComponent() {
+        setQueueSize(1024);
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * The default wait strategy for the ring buffers
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
+        int consumers = getAndRemoveParameter(parameters, "concurrentConsumers", Integer.class, defaultConcurrentConsumers);
+        boolean limitConcurrentConsumers = getAndRemoveParameter(parameters, "limitConcurrentConsumers", Boolean.class, Boolean.TRUE);
+        if (limitConcurrentConsumers && consumers > maxConcurrentConsumers) {
+            throw new IllegalArgumentException("The limitConcurrentConsumers flag in set to true. ConcurrentConsumers cannot be set at a value greater than "
+                    + maxConcurrentConsumers + " was " + consumers);
+        }
+        BatchSedaEndpoint answer = new BatchSedaEndpoint(uri, this, createQueue(uri, parameters), consumers);
+        answer.configureProperties(parameters);
+        return answer;
+    }
+
+    @Override
+    public synchronized BlockingQueue<Exchange> createQueue(String uri, Map<String, Object> parameters) {
+        // the options must always be removed, also when the queue already exists
+        boolean ringBuffer = getAndRemoveParameter(parameters, "ringBuffer", Boolean.class, Boolean.FALSE);
+        WaitStrategy strategy = getAndRemoveParameter(parameters, "waitStrategy", WaitStrategy.class, waitStrategy);
+
+        String key = getQueueKey(uri);
+        BlockingQueue<Exchange> queue = ringBuffers.get(key);
+        if (queue != null) {
+            parameters.remove("size");
+            return queue;
+        }
+        if (!ringBuffer) {
+            return super.createQueue(uri, parameters);
+        }
+        if (getQueues().containsKey(key)) {
+            // the endpoints of the same queue must use the same queue, and a plain queue cannot become a ring
+            throw new IllegalArgumentException("Cannot use ringBuffer=true on " + uri
+                + " as a queue which is not a ring buffer has already been created for " + key);
+        }
+
+        Integer size = getAndRemoveParameter(parameters, "size", Integer.class);
+        queue = new RingBufferQueue<Exchange>(size != null && size > 0 ? size : getQueueSize(), strategy);
+        ringBuffers.put(key, queue);
+        return queue;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        ringBuffers.clear();
+        super.doStop();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.NotifyBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class BatchSedaConsumerTest extends CamelTestSupport {
+
+    private final List<Integer> batchSizes = new ArrayList<Integer>();
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        context.addComponent("seda", new RingBufferSedaComponent());
+        return context;
+    }
+
+    @Test
+    public void testGroupExchanges() throws Exception {
+        getMockEndpoint("mock:audit").expectedMessageCount(25);
+        getMockEndpoint("mock:batch").expectedMessageCount(3);
+
+        // queue the messages before the consumer is started so they are taken in batches
+        for (int i = 0; i < 25; i++) {
+            template.sendBody("seda:audit?batchSize=10&groupExchanges=true", "Order " + i);
+        }
+        context.startRoute("audit");
+
+        assertMockEndpointsSatisfied();
+        assertEquals("[10, 10, 5]", batchSizes.toString());
+        assertEquals("Order 0", getMockEndpoint("mock:audit").getExchanges().get(0).getIn().getBody());
+        assertEquals("Order 24", getMockEndpoint("mock:audit").getExchanges().get(24).getIn().getBody());
+    }
+
+    @Test
+    public void testGroupExchangesWhileRunning() throws Exception {
+        getMockEndpoint("mock:audit").expectedBodiesReceived("Order 0", "Order 1", "Order 2");
+        getMockEndpoint("mock:batch").expectedMessageCount(3);
+        context.startRoute("audit");
+
+        // send the messages one at a time, so each batch only has a single exchange
+        for (int i = 0; i < 3; i++) {
+            NotifyBuilder notify = new NotifyBuilder(context).from("seda:audit*").whenDone(1).create();
+            template.sendBody("seda:audit?batchSize=10&groupExchanges=true", "Order " + i);
+            assertTrue(notify.matches(5, TimeUnit.SECONDS));
+        }
+
+        assertMockEndpointsSatisfied();
+        assertEquals("[1, 1, 1]", batchSizes.toString());
+    }
+
+    @Test
+    public void testOneByOne() throws Exception {
+        getMockEndpoint("mock:update").expectedMessageCount(25);
+        getMockEndpoint("mock:update").message(0).body().isEqualTo("Order 0");
+        getMockEndpoint("mock:update").message(24).body().isEqualTo("Order 24");
+
+        for (int i = 0; i < 25; i++) {
+            template.sendBody("seda:update?batchSize=10", "Order " + i);
+        }
+        context.startRoute("update");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testRequestReply() throws Exception {
+        context.startRoute("update");
+
+        Object reply = template.requestBody("seda:update?batchSize=10", "Order 1");
+        assertEquals("Updated Order 1", reply);
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("seda:audit?batchSize=10&groupExchanges=true").routeId("audit").noAutoStartup()
+                    .process(new Processor() {
+                        @SuppressWarnings("unchecked")
+                        public void process(Exchange exchange) throws Exception {
+                            List<Exchange> batch = exchange.getProperty(Exchange.GROUPED_EXCHANGE, List.class);
+                            batchSizes.add(batch.size());
+                            for (Exchange order : batch) {
+                                template.send("mock:audit", order);
+                            }
+                        }
+                    })
+                    .to("mock:batch");
+
+                from("seda:update?batchSize=10").routeId("update").noAutoStartup()
+                    .to("mock:update")
+                    .transform(body().prepend("Updated "));
+            }
+        };
+    }
+}
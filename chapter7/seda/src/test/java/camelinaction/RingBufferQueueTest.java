@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import camelinaction.RingBufferQueue.WaitStrategy;
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class RingBufferQueueTest extends TestCase {
+
+    public void testOfferAndPoll() throws Exception {
+        RingBufferQueue<String> queue = new RingBufferQueue<String>(3, WaitStrategy.blocking);
+        assertEquals(4, queue.getCapacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer("" + i));
+        }
+        // the ring is full
+        assertFalse(queue.offer("4"));
+        assertFalse(queue.offer("4", 10, TimeUnit.MILLISECONDS));
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+
+        List<String> list = new ArrayList<String>(queue);
+        assertEquals("[0, 1, 2, 3]", list.toString());
+
+        assertEquals("0", queue.peek());
+        assertEquals("0", queue.poll());
+        assertTrue(queue.offer("4"));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("" + i, queue.poll(1, TimeUnit.SECONDS));
+        }
+
+        // the ring is empty
+        assertNull(queue.poll());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.size());
+    }
+
+    public void testCapacityOne() throws Exception {
+        RingBufferQueue<String> queue = new RingBufferQueue<String>(1, WaitStrategy.blocking);
+        assertEquals(2, queue.getCapacity());
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertFalse(queue.offer("c"));
+
+        assertEquals("a", queue.poll(1, TimeUnit.SECONDS));
+        assertEquals("b", queue.poll(1, TimeUnit.SECONDS));
+        assertNull(queue.poll());
+    }
+
+    public void testBlocking() throws Exception {
+        assertProducersAndConsumers(WaitStrategy.blocking, 4, 4);
+    }
+
+    public void testYielding() throws Exception {
+        assertProducersAndConsumers(WaitStrategy.yielding, 4, 2);
+    }
+
+    public void testBusySpin() throws Exception {
+        assertProducersAndConsumers(WaitStrategy.busySpin, 2, 2);
+    }
+
+    public void testTakeIsSignalled() throws Exception {
+        final RingBufferQueue<String> queue = new RingBufferQueue<String>(4, WaitStrategy.blocking);
+        final CountDownLatch taken = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    if ("Hello".equals(queue.take())) {
+                        taken.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        consumer.start();
+
+        // let the consumer park before the element is offered
+        Thread.sleep(100);
+        queue.put("Hello");
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+    }
+
+    private void assertProducersAndConsumers(WaitStrategy strategy, int producers, int consumers) throws Exception {
+        final int count = 10000;
+        final RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(64, strategy);
+        final AtomicIntegerArray received = new AtomicIntegerArray(count * producers);
+        final CountDownLatch done = new CountDownLatch(count * producers);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < producers; i++) {
+            final int offset = i * count;
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            queue.put(offset + j);
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < consumers; i++) {
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            Integer value = queue.poll(100, TimeUnit.MILLISECONDS);
+                            if (value != null) {
+                                received.incrementAndGet(value);
+                                done.countDown();
+                            } else if (done.getCount() == 0) {
+                                return;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        assertTrue("Should receive all the elements", done.await(60, TimeUnit.SECONDS));
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        // each element is received exactly once
+        for (int i = 0; i < received.length(); i++) {
+            assertEquals("Element " + i, 1, received.get(i));
+        }
+        assertEquals(0, queue.size());
+    }
+}
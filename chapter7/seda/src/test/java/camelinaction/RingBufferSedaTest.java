@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ResolveEndpointFailedException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.seda.SedaEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * @version $Revision: 95 $
+ */
+public class RingBufferSedaTest extends CamelTestSupport {
+
+    @Override
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext context = super.createCamelContext();
+        context.addComponent("seda", new RingBufferSedaComponent());
+        return context;
+    }
+
+    @Test
+    public void testRingBuffer() throws Exception {
+        getMockEndpoint("mock:update").expectedMessageCount(500);
+
+        for (int i = 0; i < 500; i++) {
+            template.sendBody("seda:update?ringBuffer=true&waitStrategy=yielding&size=100&blockWhenFull=true", "Update " + i);
+        }
+
+        assertMockEndpointsSatisfied();
+
+        SedaEndpoint seda = context.getEndpoint("seda:update?ringBuffer=true&waitStrategy=yielding&size=100&blockWhenFull=true", SedaEndpoint.class);
+        RingBufferQueue<?> queue = assertIsInstanceOf(RingBufferQueue.class, seda.getQueue());
+        assertEquals(128, queue.getCapacity());
+        assertEquals(RingBufferQueue.WaitStrategy.yielding, queue.getWaitStrategy());
+    }
+
+    @Test
+    public void testMultipleConsumers() throws Exception {
+        // each consumer polls the queue and sends to all the consumers, so the order is not kept
+        getMockEndpoint("mock:accounting").expectedBodiesReceivedInAnyOrder("Order 1", "Order 2");
+        getMockEndpoint("mock:production").expectedBodiesReceivedInAnyOrder("Order 1", "Order 2");
+
+        template.sendBody("seda:orders?ringBuffer=true&multipleConsumers=true", "Order 1");
+        template.sendBody("seda:orders?ringBuffer=true&multipleConsumers=true", "Order 2");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testSizeOne() throws Exception {
+        getMockEndpoint("mock:single").expectedBodiesReceived("A", "B", "C");
+
+        template.sendBody("seda:single?ringBuffer=true&size=1&blockWhenFull=true", "A");
+        template.sendBody("seda:single?ringBuffer=true&size=1&blockWhenFull=true", "B");
+        template.sendBody("seda:single?ringBuffer=true&size=1&blockWhenFull=true", "C");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testLinkedBlockingQueueByDefault() throws Exception {
+        getMockEndpoint("mock:plain").expectedMessageCount(1);
+
+        template.sendBody("seda:plain", "Hello");
+
+        assertMockEndpointsSatisfied();
+        assertFalse(context.getEndpoint("seda:plain", SedaEndpoint.class).getQueue() instanceof RingBufferQueue);
+    }
+
+    @Test
+    public void testPlainEndpointSharesRingBuffer() throws Exception {
+        SedaEndpoint ring = context.getEndpoint("seda:update?ringBuffer=true&waitStrategy=yielding&size=100&blockWhenFull=true", SedaEndpoint.class);
+        SedaEndpoint plain = context.getEndpoint("seda:update", SedaEndpoint.class);
+        assertSame(ring.getQueue(), plain.getQueue());
+    }
+
+    @Test
+    public void testRingBufferAfterPlainQueue() throws Exception {
+        try {
+            context.getEndpoint("seda:plain?ringBuffer=true");
+            fail("Should have thrown an exception");
+        } catch (ResolveEndpointFailedException e) {
+            assertIsInstanceOf(IllegalArgumentException.class, e.getCause());
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("seda:update?ringBuffer=true&waitStrategy=yielding&size=100&blockWhenFull=true&concurrentConsumers=4")
+                    .to("mock:update");
+
+                from("seda:orders?ringBuffer=true&multipleConsumers=true").to("mock:accounting");
+                from("seda:orders?ringBuffer=true&multipleConsumers=true").to("mock:production");
+
+                from("seda:plain").to("mock:plain");
+
+                from("seda:single?ringBuffer=true&size=1&blockWhenFull=true").to("mock:single");
+            }
+        };
+    }
+}
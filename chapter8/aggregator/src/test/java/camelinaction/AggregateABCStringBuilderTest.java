@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * The ABC example using the {@link StringBuilderAggregationStrategy}, which appends the
+ * messages to a buffer instead of copying the aggregated body for every message.
+ *
+ * @see camelinaction.StringBuilderAggregationStrategy
+ * @version $Revision: 132 $
+ */
+public class AggregateABCStringBuilderTest extends CamelTestSupport {
+
+    private StringBuilderAggregationStrategy strategy = new StringBuilderAggregationStrategy();
+
+    @Test
+    public void testABC() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedBodiesReceived("ABC");
+        // the body is turned into a String on completion
+        mock.message(0).body().isInstanceOf(String.class);
+
+        template.sendBodyAndHeader("direct:start", "A", "myId", 1);
+        template.sendBodyAndHeader("direct:start", "B", "myId", 1);
+        template.sendBodyAndHeader("direct:start", "F", "myId", 2);
+        template.sendBodyAndHeader("direct:start", "C", "myId", 1);
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testThousandsOfMessages() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:big");
+        mock.expectedMessageCount(1);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String fragment = "order" + i + ";";
+            expected.append(fragment);
+            template.sendBody("direct:big", fragment);
+        }
+
+        assertMockEndpointsSatisfied();
+        assertEquals(expected.toString(), mock.getReceivedExchanges().get(0).getIn().getBody());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:start")
+                    .log("Sending ${body} with correlation key ${header.myId}")
+                    .aggregate(header("myId"), strategy).completionSize(3)
+                        // turn the aggregated body into a String
+                        .bean(strategy, "complete")
+                        .log("Sending out ${body}")
+                        .to("mock:result");
+
+                from("direct:big")
+                    .aggregate(constant(true), strategy).completionSize(5000)
+                        .bean(strategy, "complete")
+                        .to("mock:big");
+            }
+        };
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * The ABC and XML examples for using the Aggregator EIP, where the messages are partitioned
+ * by their correlation key using the {@link CorrelationPartitioner} across 4 aggregators.
+ *
+ * @see CorrelationPartitioner
+ * @version $Revision: 133 $
+ */
+public class AggregatePartitionedTest extends CamelTestSupport {
+
+    private static final int PARTITIONS = 4;
+
+    @Test
+    public void testABC() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedBodiesReceived("ABC");
+
+        template.sendBodyAndHeader("direct:start", "A", "myId", 1);
+        template.sendBodyAndHeader("direct:start", "B", "myId", 1);
+        template.sendBodyAndHeader("direct:start", "F", "myId", 2);
+        template.sendBodyAndHeader("direct:start", "C", "myId", 1);
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testXML() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:xml");
+        mock.expectedMessageCount(2);
+
+        template.sendBody("direct:xml", "<order name=\"motor\" amount=\"1000\" customer=\"honda\"/>");
+        template.sendBody("direct:xml", "<order name=\"motor\" amount=\"500\" customer=\"toyota\"/>");
+        template.sendBody("direct:xml", "<order name=\"gearbox\" amount=\"200\" customer=\"toyota\"/>");
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Test
+    public void testManyKeysConcurrently() throws Exception {
+        final int keys = 1000;
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(keys);
+
+        // each thread sends A, B and C to its own keys, so the groups must be aggregated in order
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int t = 0; t < 10; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (String body : new String[]{"A", "B", "C"}) {
+                        for (int key = thread; key < keys; key += 10) {
+                            template.sendBodyAndHeader("direct:start", body, "myId", key);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Object> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertMockEndpointsSatisfied();
+
+        // every group should be aggregated in order by one of the partitions
+        Map<String, Integer> partitions = new HashMap<String, Integer>();
+        for (Exchange exchange : mock.getReceivedExchanges()) {
+            assertEquals("ABC", exchange.getIn().getBody());
+            String partition = exchange.getIn().getHeader("partition", String.class);
+            Integer count = partitions.get(partition);
+            partitions.put(partition, count == null ? 1 : count + 1);
+        }
+        assertEquals("Should use all partitions: " + partitions, PARTITIONS, partitions.size());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                // partition the messages by the correlation key
+                from("direct:start")
+                    .process(new CorrelationPartitioner(header("myId"), "direct:aggregate", PARTITIONS));
+
+                from("direct:xml")
+                    .process(new CorrelationPartitioner(xpath("/order/@customer"), "direct:aggregateXml", PARTITIONS));
+
+                // and let each partition have its own aggregator
+                for (int i = 0; i < PARTITIONS; i++) {
+                    from("direct:aggregate-" + i)
+                        .aggregate(header("myId"), new MyAggregationStrategy()).completionSize(3)
+                            .setHeader("partition", constant(i))
+                            .to("mock:result");
+
+                    from("direct:aggregateXml-" + i)
+                        .aggregate(xpath("/order/@customer"), new MyAggregationStrategy())
+                            .completionSize(2).completionTimeout(5000)
+                            .log("Completed by ${property.CamelAggregatedCompletedBy}")
+                            .to("mock:xml");
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * The same example as {@link AggregateXMLTest} but using the {@link TimingWheelCompletionTimeout}
+ * instead of the built in completion timeout.
+ *
+ * @see TimingWheelCompletionTimeout
+ * @version $Revision: 134 $
+ */
+public class AggregateXMLTimingWheelTest extends CamelTestSupport {
+
+    private TimingWheelCompletionTimeout timeout;
+
+    @Test
+    public void testXML() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(2);
+        // toyota completes by size and honda by timeout
+        mock.message(0).property("CamelAggregatedCompletedBy").isEqualTo("size");
+        mock.message(0).body().isEqualTo("<order name=\"motor\" amount=\"500\" customer=\"toyota\"/>"
+                + "<order name=\"gearbox\" amount=\"200\" customer=\"toyota\"/>");
+        mock.message(1).property("CamelAggregatedCompletedBy").isEqualTo("timeout");
+        mock.message(1).body().isEqualTo("<order name=\"motor\" amount=\"1000\" customer=\"honda\"/>");
+
+        template.sendBody("direct:start", "<order name=\"motor\" amount=\"1000\" customer=\"honda\"/>");
+        template.sendBody("direct:start", "<order name=\"motor\" amount=\"500\" customer=\"toyota\"/>");
+        template.sendBody("direct:start", "<order name=\"gearbox\" amount=\"200\" customer=\"toyota\"/>");
+
+        assertMockEndpointsSatisfied();
+
+        // the completed groups are no longer scheduled
+        assertEquals(0, timeout.getScheduledCount());
+    }
+
+    @Test
+    public void testTimeoutPerGroup() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedBodiesReceived("<order name=\"motor\" amount=\"1000\" customer=\"honda\"/>");
+
+        template.sendBody("direct:start", "<order name=\"motor\" amount=\"1000\" customer=\"honda\"/>");
+        Thread.sleep(700);
+        template.sendBody("direct:start", "<order name=\"brake\" amount=\"20\" customer=\"bmw\"/>");
+        Thread.sleep(700);
+
+        // only the honda group has been inactive for 1 second
+        assertMockEndpointsSatisfied();
+        assertEquals(1, timeout.getScheduledCount());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                // complete the groups which has been inactive for 1 second
+                timeout = new TimingWheelCompletionTimeout("direct:start", xpath("/order/@customer"),
+                        new MyAggregationStrategy(), 1000);
+                // let Camel manage the timing wheel
+                getContext().addService(timeout);
+
+                from("direct:start")
+                    // reschedule the timeout of the group of the arrived message
+                    .process(timeout)
+                    .aggregate(timeout.correlationExpression(), timeout.aggregationStrategy())
+                        // complete when we have 2 messages or when the timeout message arrives
+                        .completionSize(2)
+                        .completionPredicate(timeout.completionPredicate()).eagerCheckCompletion()
+                        // cancel the timeout of the completed group
+                        .process(timeout.completed())
+                        .log("Completed by ${property.CamelAggregatedCompletedBy}")
+                        .log("Sending out ${body}")
+                        .to("mock:result");
+            }
+        };
+    }
+}
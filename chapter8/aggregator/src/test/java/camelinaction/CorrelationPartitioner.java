@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.Service;
+import org.apache.camel.util.ServiceHelper;
+
+/**
+ * Partitions the messages by their correlation key, so they can be aggregated by N aggregators
+ * instead of a single aggregator.
+ * <p/>
+ * The Aggregator EIP uses a single lock, so messages are aggregated one at a time even when they
+ * belong to different correlation groups. By sending the messages to one of N routes, each with
+ * its own aggregator, messages for different partitions are aggregated in parallel. All messages
+ * with the same correlation key are sent to the same partition, so each correlation group is still
+ * aggregated in the order the messages arrive.
+ * <p/>
+ * The partitions are the endpoints <tt>uri-0</tt> to <tt>uri-N</tt>, eg <tt>direct:aggregate-0</tt>,
+ * and the messages are sent directly to the partition without copying the exchange.
+ *
+ * @version $Revision: 133 $
+ */
+public class CorrelationPartitioner implements Processor, Service {
+
+    private final Expression correlationExpression;
+    private final String[] uris;
+    private final AtomicReferenceArray<Producer> producers;
+
+    /**
+     * @param correlationExpression the same correlation expression as used by the aggregators
+     * @param uri                   the uri of the partitions, which is appended with the partition number
+     * @param partitions            the number of partitions
+     */
+    public CorrelationPartitioner(Expression correlationExpression, String uri, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Partitions must be positive, was " + partitions);
+        }
+        this.correlationExpression = correlationExpression;
+        this.uris = new String[partitions];
+        for (int i = 0; i < partitions; i++) {
+            uris[i] = uri + "-" + i;
+        }
+        this.producers = new AtomicReferenceArray<Producer>(partitions);
+    }
+
+    public int getPartitions() {
+        return uris.length;
+    }
+
+    /**
+     * Gets the uri of the given partition
+     */
+    public String getUri(int partition) {
+        return uris[partition];
+    }
+
+    /**
+     * Gets the partition for the given correlation key
+     */
+    public int partition(Object key) {
+        int hash = key != null ? key.hashCode() : 0;
+        // spread the bits as keys often only differ in the last characters
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % uris.length;
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        // evaluate as a String so the key has the same hash code no matter its type
+        String key = correlationExpression.evaluate(exchange, String.class);
+        getProducer(exchange, partition(key)).process(exchange);
+    }
+
+    private Producer getProducer(Exchange exchange, int partition) throws Exception {
+        Producer answer = producers.get(partition);
+        if (answer == null) {
+            synchronized (producers) {
+                answer = producers.get(partition);
+                if (answer == null) {
+                    answer = exchange.getContext().getEndpoint(uris[partition]).createProducer();
+                    ServiceHelper.startService(answer);
+                    producers.set(partition, answer);
+                }
+            }
+        }
+        return answer;
+    }
+
+    public void start() throws Exception {
+        // the producers are created when needed
+    }
+
+    public void stop() throws Exception {
+        synchronized (producers) {
+            for (int i = 0; i < producers.length(); i++) {
+                ServiceHelper.stopService(producers.getAndSet(i, null));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CorrelationPartitioner[" + correlationExpression + " -> " + uris.length + " partitions]";
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hashed timing wheel which keeps track of when keys time out.
+ * <p/>
+ * The wheel has a number of buckets each covering a tick of time. A key is put in the bucket of the
+ * tick it times out in, and as time passes the buckets are expired one tick at a time. Scheduling and
+ * cancelling a key is a constant time operation, and expiring a tick only visits the keys in its bucket,
+ * so the cost does not depend on how many keys are scheduled in total.
+ * <p/>
+ * Keys which time out more than one turn of the wheel ahead stay in their bucket until the turn they
+ * time out in. The timeouts are precise to within one tick.
+ * <p/>
+ * The wheel does not run by itself, call {@link #expire()} every tick to get the keys which has timed out.
+ *
+ * @version $Revision: 134 $
+ */
+public class HashedTimingWheel<K> {
+
+    private final long tickDuration;
+    private final Node<K>[] buckets;
+    private final int mask;
+    private final Map<K, Node<K>> nodes = new HashMap<K, Node<K>>();
+    private final long startTime;
+    // the next tick to expire
+    private long tick;
+
+    private static final class Node<K> {
+        private final K key;
+        private final long deadline;
+        private Node<K> prev;
+        private Node<K> next;
+
+        private Node(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * @param tickDuration  the duration of a tick in millis
+     * @param ticksPerWheel the number of buckets in the wheel, is rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickDuration, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive");
+        }
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.buckets = new Node[size];
+        this.mask = size - 1;
+        this.startTime = currentTime();
+    }
+
+    /**
+     * Schedules the key to time out after the delay, replacing any existing timeout of the key
+     *
+     * @param delay the delay in millis
+     */
+    public synchronized void schedule(K key, long delay) {
+        remove(nodes.remove(key));
+
+        // the key times out at the end of the tick which contains the deadline
+        long deadline = Math.max(tick, (currentTime() + delay - startTime) / tickDuration);
+        Node<K> node = new Node<K>(key, deadline);
+        int index = (int) (deadline & mask);
+        node.next = buckets[index];
+        if (node.next != null) {
+            node.next.prev = node;
+        }
+        buckets[index] = node;
+        nodes.put(key, node);
+    }
+
+    /**
+     * Cancels the timeout of the key
+     *
+     * @return <tt>true</tt> if the key was scheduled
+     */
+    public synchronized boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        remove(node);
+        return node != null;
+    }
+
+    /**
+     * Whether the key is scheduled
+     */
+    public synchronized boolean isScheduled(K key) {
+        return nodes.containsKey(key);
+    }
+
+    /**
+     * Number of scheduled keys
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Expires the ticks which has passed, and removes and returns the keys which has timed out
+     */
+    public synchronized List<K> expire() {
+        List<K> answer = new ArrayList<K>();
+        long now = (currentTime() - startTime) / tickDuration;
+        // the current tick has not passed yet
+        while (tick < now) {
+            Node<K> node = buckets[(int) (tick & mask)];
+            while (node != null) {
+                Node<K> next = node.next;
+                // keys for a later turn of the wheel stay in the bucket
+                if (node.deadline <= tick) {
+                    nodes.remove(node.key);
+                    remove(node);
+                    answer.add(node.key);
+                }
+                node = next;
+            }
+            tick++;
+        }
+        return answer;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public int getTicksPerWheel() {
+        return buckets.length;
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private void remove(Node<K> node) {
+        if (node == null) {
+            return;
+        }
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            buckets[(int) (node.deadline & mask)] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+}
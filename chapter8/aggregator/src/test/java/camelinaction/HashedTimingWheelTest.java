@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision: 134 $
+ */
+public class HashedTimingWheelTest extends TestCase {
+
+    private long now;
+    private HashedTimingWheel<String> wheel;
+
+    @Override
+    protected void setUp() throws Exception {
+        // 8 ticks of 100 millis so a turn of the wheel is 800 millis
+        wheel = new HashedTimingWheel<String>(100, 8) {
+            @Override
+            protected long currentTime() {
+                return now;
+            }
+        };
+    }
+
+    public void testExpire() throws Exception {
+        wheel.schedule("foo", 250);
+        wheel.schedule("bar", 500);
+
+        now = 250;
+        assertTrue(wheel.expire().isEmpty());
+        // foo times out at the end of its tick
+        now = 300;
+        assertEquals(Collections.singletonList("foo"), wheel.expire());
+        assertFalse(wheel.isScheduled("foo"));
+
+        now = 600;
+        assertEquals(Collections.singletonList("bar"), wheel.expire());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCancel() throws Exception {
+        wheel.schedule("foo", 200);
+        wheel.schedule("bar", 200);
+        assertTrue(wheel.cancel("foo"));
+        assertFalse(wheel.cancel("foo"));
+
+        now = 1000;
+        assertEquals(Collections.singletonList("bar"), wheel.expire());
+    }
+
+    public void testReschedule() throws Exception {
+        wheel.schedule("foo", 200);
+        now = 150;
+        // the timeout starts over
+        wheel.schedule("foo", 200);
+        assertEquals(1, wheel.size());
+
+        now = 300;
+        assertTrue(wheel.expire().isEmpty());
+        now = 400;
+        assertEquals(Collections.singletonList("foo"), wheel.expire());
+    }
+
+    public void testTimeoutLongerThanWheel() throws Exception {
+        // times out in the 3rd turn of the wheel, in the same bucket as bar
+        wheel.schedule("foo", 2050);
+        wheel.schedule("bar", 450);
+
+        now = 500;
+        assertEquals(Collections.singletonList("bar"), wheel.expire());
+        now = 2000;
+        assertTrue(wheel.expire().isEmpty());
+        now = 2100;
+        assertEquals(Collections.singletonList("foo"), wheel.expire());
+    }
+
+    public void testCatchUpMissedTicks() throws Exception {
+        wheel.schedule("foo", 100);
+        wheel.schedule("bar", 300);
+        wheel.schedule("baz", 5000);
+
+        now = 1000;
+        assertEquals(Arrays.asList("foo", "bar"), wheel.expire());
+        assertTrue(wheel.isScheduled("baz"));
+    }
+}
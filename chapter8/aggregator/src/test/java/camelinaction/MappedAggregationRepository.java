@@ -0,0 +1,567 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.DefaultExchangeHolder;
+import org.apache.camel.spi.RecoverableAggregationRepository;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent {@link RecoverableAggregationRepository} which stores the exchanges in an append-only log
+ * in a memory mapped file, and keeps an in-memory index of where the exchanges are in the log.
+ * <p/>
+ * Every change is appended to the log, so adding an exchange is a single write to memory, and the
+ * operating system writes the mapped file to disk in the background (use <tt>sync</tt> to force
+ * the writes to disk). When the log has grown so less than <tt>compactRatio</tt> of it is in use,
+ * the log is compacted by copying the records in use to a new log. The log is also compacted when
+ * the repository is stopped.
+ * <p/>
+ * At startup the index is rebuilt by scanning the log and verifying the checksum of each record, without
+ * unmarshalling the exchanges. As the log is compacted, the time it takes is proportional to the open
+ * correlation groups and completed exchanges rather than the history of the repository.
+ * <p/>
+ * The compacted log is written to a new file which then replaces the log by renaming it, so the log is
+ * left as is if the compaction fails. This requires a file system where a file can be renamed over
+ * an open file, otherwise the log is not compacted.
+ * <p/>
+ * The log is limited to 2gb.
+ *
+ * @version $Revision: 131 $
+ */
+public class MappedAggregationRepository extends ServiceSupport implements RecoverableAggregationRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedAggregationRepository.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte COMPLETED = 3;
+    private static final byte CONFIRM = 4;
+    // record length, crc, type and key length
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 2;
+
+    private String persistentFileName;
+    private int initialSize = 16 * 1024 * 1024;
+    private boolean sync;
+    private boolean returnOldExchange;
+    private double compactRatio = 0.5;
+    private int compactThreshold = 1024 * 1024;
+    private long recoveryInterval = 5000;
+    private boolean useRecovery = true;
+    private int maximumRedeliveries;
+    private String deadLetterUri;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long liveBytes;
+    private int compactions;
+    // the offset of the records in the log
+    private final Map<String, Integer> keys = new HashMap<String, Integer>();
+    private final Map<String, Integer> completed = new LinkedHashMap<String, Integer>();
+
+    public MappedAggregationRepository() {
+    }
+
+    public MappedAggregationRepository(String persistentFileName) {
+        this.persistentFileName = persistentFileName;
+    }
+
+    public synchronized Exchange add(CamelContext camelContext, String key, Exchange exchange) {
+        Exchange answer = null;
+        Integer old = keys.get(key);
+        if (old != null) {
+            if (returnOldExchange) {
+                answer = read(camelContext, old);
+            }
+            liveBytes -= buffer.getInt(old);
+        }
+
+        int offset = append(ADD, key, marshal(exchange));
+        keys.put(key, offset);
+        liveBytes += buffer.getInt(offset);
+        compactIfNeeded();
+        return answer;
+    }
+
+    public synchronized Exchange get(CamelContext camelContext, String key) {
+        Integer offset = keys.get(key);
+        return offset != null ? read(camelContext, offset) : null;
+    }
+
+    public synchronized void remove(CamelContext camelContext, String key, Exchange exchange) {
+        Integer old = keys.remove(key);
+        if (old != null) {
+            liveBytes -= buffer.getInt(old);
+        }
+        append(REMOVE, key, new byte[0]);
+
+        // keep the exchange as completed until its confirmed, so it can be recovered
+        String exchangeId = exchange.getExchangeId();
+        int offset = append(COMPLETED, exchangeId, marshal(exchange));
+        completed.put(exchangeId, offset);
+        liveBytes += buffer.getInt(offset);
+        compactIfNeeded();
+    }
+
+    public synchronized void confirm(CamelContext camelContext, String exchangeId) {
+        Integer old = completed.remove(exchangeId);
+        if (old != null) {
+            liveBytes -= buffer.getInt(old);
+            append(CONFIRM, exchangeId, new byte[0]);
+            compactIfNeeded();
+        }
+    }
+
+    public synchronized Set<String> getKeys() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(keys.keySet()));
+    }
+
+    public synchronized Set<String> scan(CamelContext camelContext) {
+        Set<String> answer = new LinkedHashSet<String>(completed.keySet());
+        if (!answer.isEmpty()) {
+            LOG.trace("Scanned and found {} exchange(s) to recover", answer.size());
+        }
+        return Collections.unmodifiableSet(answer);
+    }
+
+    public synchronized Exchange recover(CamelContext camelContext, String exchangeId) {
+        Integer offset = completed.get(exchangeId);
+        return offset != null ? read(camelContext, offset) : null;
+    }
+
+    /**
+     * Compacts the log by copying the records in use to a new log.
+     * <p/>
+     * If the compaction fails the repository keeps using the current log.
+     */
+    public synchronized void compact() {
+        File target = new File(persistentFileName);
+        File compact = new File(persistentFileName + ".compact");
+        long start = System.currentTimeMillis();
+        int before = position;
+
+        RandomAccessFile newFile = null;
+        boolean renamed = false;
+        try {
+            int size = (int) Math.min(Integer.MAX_VALUE, Math.max(initialSize, liveBytes * 2 + 4));
+            newFile = new RandomAccessFile(compact, "rw");
+            newFile.setLength(0);
+            newFile.setLength(size);
+            FileChannel newChannel = newFile.getChannel();
+            MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            // copy the records as is, they do not need to be unmarshalled
+            Map<String, Integer> newKeys = new HashMap<String, Integer>(keys.size());
+            Map<String, Integer> newCompleted = new LinkedHashMap<String, Integer>(completed.size());
+            int newPosition = copy(keys, newKeys, newBuffer, 0);
+            newPosition = copy(completed, newCompleted, newBuffer, newPosition);
+            newBuffer.putInt(newPosition, 0);
+            newBuffer.force();
+
+            // replace the log with the compacted log, the rename is atomic so the log is always complete
+            if (!compact.renameTo(target)) {
+                throw new IOException("Cannot rename " + compact + " to " + target);
+            }
+            renamed = true;
+
+            IOHelper.close(channel);
+            IOHelper.close(file);
+            file = newFile;
+            channel = newChannel;
+            buffer = newBuffer;
+            position = newPosition;
+            keys.clear();
+            keys.putAll(newKeys);
+            completed.clear();
+            completed.putAll(newCompleted);
+            compactions++;
+        } catch (IOException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        } finally {
+            if (!renamed) {
+                IOHelper.close(newFile);
+                compact.delete();
+            }
+        }
+
+        LOG.debug("Compacted {} from {} to {} bytes in {} millis",
+                new Object[]{persistentFileName, before, position, System.currentTimeMillis() - start});
+    }
+
+    private int copy(Map<String, Integer> index, Map<String, Integer> newIndex, MappedByteBuffer target, int offset) {
+        for (Map.Entry<String, Integer> entry : index.entrySet()) {
+            int from = entry.getValue();
+            int length = buffer.getInt(from);
+            target.position(offset);
+            target.put(bytes(from, length));
+            newIndex.put(entry.getKey(), offset);
+            offset += length;
+        }
+        return offset;
+    }
+
+    private void compactIfNeeded() {
+        if (position > compactThreshold && liveBytes < position * compactRatio) {
+            try {
+                compact();
+            } catch (RuntimeException e) {
+                // the log is left as is, so just keep appending to it
+                LOG.warn("Failed to compact " + persistentFileName + ", will try again later", e);
+            }
+        }
+    }
+
+    private int append(byte type, String key, byte[] data) {
+        byte[] keyBytes = key.getBytes(UTF8);
+        if (keyBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Key is too long: " + key);
+        }
+        int length = HEADER_SIZE + keyBytes.length + data.length;
+        // leave room for the end marker
+        ensureCapacity(position + length + 4);
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(keyBytes);
+        crc.update(data);
+
+        int offset = position;
+        buffer.position(offset);
+        buffer.putInt(length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(data);
+        // mark the end of the log, as there may be garbage from an incomplete write after it
+        buffer.putInt(0);
+        position = offset + length;
+
+        if (sync) {
+            buffer.force();
+        }
+        return offset;
+    }
+
+    private void ensureCapacity(long size) {
+        if (size <= buffer.capacity()) {
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The log " + persistentFileName + " cannot grow above 2gb");
+        }
+        try {
+            int newSize = (int) Math.min(Integer.MAX_VALUE, Math.max(size, buffer.capacity() * 2L));
+            file.setLength(newSize);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        } catch (IOException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+    }
+
+    private Exchange read(CamelContext camelContext, int offset) {
+        int length = buffer.getInt(offset);
+        int keyLength = buffer.getShort(offset + HEADER_SIZE - 2);
+        byte[] data = new byte[length - HEADER_SIZE - keyLength];
+        bytes(offset + HEADER_SIZE + keyLength, data.length).get(data);
+        return unmarshal(camelContext, data);
+    }
+
+    /**
+     * Rebuilds the index by scanning the records in the log, until the end marker or an invalid record
+     */
+    private void recoverIndex() {
+        keys.clear();
+        completed.clear();
+        liveBytes = 0;
+
+        int offset = 0;
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_SIZE || offset + length > buffer.capacity() || !isValid(offset, length)) {
+                LOG.warn("Ignoring incomplete record at offset {} in {}", offset, persistentFileName);
+                break;
+            }
+
+            byte type = buffer.get(offset + 8);
+            byte[] keyBytes = new byte[buffer.getShort(offset + 9)];
+            bytes(offset + HEADER_SIZE, keyBytes.length).get(keyBytes);
+            String key = new String(keyBytes, UTF8);
+
+            Integer old = null;
+            if (type == ADD) {
+                old = keys.put(key, offset);
+                liveBytes += length;
+            } else if (type == REMOVE) {
+                old = keys.remove(key);
+            } else if (type == COMPLETED) {
+                old = completed.put(key, offset);
+                liveBytes += length;
+            } else if (type == CONFIRM) {
+                old = completed.remove(key);
+            }
+            if (old != null) {
+                liveBytes -= buffer.getInt(old);
+            }
+            offset += length;
+        }
+        position = offset;
+        buffer.putInt(position, 0);
+    }
+
+    private boolean isValid(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.get(offset + 8));
+        byte[] rest = new byte[length - HEADER_SIZE];
+        bytes(offset + HEADER_SIZE, rest.length).get(rest);
+        crc.update(rest);
+        return buffer.getInt(offset + 4) == (int) crc.getValue();
+    }
+
+    /**
+     * A view of the given range of the log
+     */
+    private ByteBuffer bytes(int offset, int length) {
+        ByteBuffer answer = buffer.duplicate();
+        answer.position(offset);
+        answer.limit(offset + length);
+        return answer;
+    }
+
+    private static byte[] marshal(Exchange exchange) {
+        DefaultExchangeHolder holder = DefaultExchangeHolder.marshal(exchange, false);
+        // retain the aggregation properties and the from endpoint the same way as the HawtDB repository
+        DefaultExchangeHolder.addProperty(holder, Exchange.AGGREGATED_SIZE, exchange.getProperty(Exchange.AGGREGATED_SIZE, Integer.class));
+        DefaultExchangeHolder.addProperty(holder, Exchange.AGGREGATED_COMPLETED_BY, exchange.getProperty(Exchange.AGGREGATED_COMPLETED_BY, String.class));
+        DefaultExchangeHolder.addProperty(holder, Exchange.AGGREGATED_CORRELATION_KEY, exchange.getProperty(Exchange.AGGREGATED_CORRELATION_KEY, String.class));
+        if (exchange.getFromEndpoint() != null) {
+            DefaultExchangeHolder.addProperty(holder, "CamelAggregatedFromEndpoint", exchange.getFromEndpoint().getEndpointUri());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(holder);
+            out.close();
+        } catch (IOException e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Exchange unmarshal(CamelContext camelContext, byte[] data) {
+        DefaultExchangeHolder holder;
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+            holder = (DefaultExchangeHolder) in.readObject();
+            in.close();
+        } catch (Exception e) {
+            throw ObjectHelper.wrapRuntimeCamelException(e);
+        }
+
+        Exchange answer = new DefaultExchange(camelContext);
+        DefaultExchangeHolder.unmarshal(answer, holder);
+        String fromEndpointUri = (String) answer.removeProperty("CamelAggregatedFromEndpoint");
+        if (fromEndpointUri != null) {
+            answer.setFromEndpoint(camelContext.hasEndpoint(fromEndpointUri));
+        }
+        return answer;
+    }
+
+    public String getPersistentFileName() {
+        return persistentFileName;
+    }
+
+    public void setPersistentFileName(String persistentFileName) {
+        this.persistentFileName = persistentFileName;
+    }
+
+    public int getInitialSize() {
+        return initialSize;
+    }
+
+    /**
+     * The initial size in bytes of the log file
+     */
+    public void setInitialSize(int initialSize) {
+        this.initialSize = initialSize;
+    }
+
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * Whether to force every write to disk
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    public boolean isReturnOldExchange() {
+        return returnOldExchange;
+    }
+
+    public void setReturnOldExchange(boolean returnOldExchange) {
+        this.returnOldExchange = returnOldExchange;
+    }
+
+    public double getCompactRatio() {
+        return compactRatio;
+    }
+
+    /**
+     * Compact the log when less than this ratio of the log is in use
+     */
+    public void setCompactRatio(double compactRatio) {
+        this.compactRatio = compactRatio;
+    }
+
+    public int getCompactThreshold() {
+        return compactThreshold;
+    }
+
+    /**
+     * The log is not compacted until it is larger than this number of bytes
+     */
+    public void setCompactThreshold(int compactThreshold) {
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Number of times the log has been compacted
+     */
+    public synchronized int getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Size in bytes of the log
+     */
+    public synchronized int getLogSize() {
+        return position;
+    }
+
+    public void setRecoveryInterval(long interval, TimeUnit timeUnit) {
+        this.recoveryInterval = timeUnit.toMillis(interval);
+    }
+
+    public void setRecoveryInterval(long interval) {
+        this.recoveryInterval = interval;
+    }
+
+    public long getRecoveryIntervalInMillis() {
+        return recoveryInterval;
+    }
+
+    public boolean isUseRecovery() {
+        return useRecovery;
+    }
+
+    public void setUseRecovery(boolean useRecovery) {
+        this.useRecovery = useRecovery;
+    }
+
+    public int getMaximumRedeliveries() {
+        return maximumRedeliveries;
+    }
+
+    public void setMaximumRedeliveries(int maximumRedeliveries) {
+        this.maximumRedeliveries = maximumRedeliveries;
+    }
+
+    public String getDeadLetterUri() {
+        return deadLetterUri;
+    }
+
+    public void setDeadLetterUri(String deadLetterUri) {
+        this.deadLetterUri = deadLetterUri;
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception {
+        ObjectHelper.notEmpty(persistentFileName, "persistentFileName", this);
+
+        File target = new File(persistentFileName);
+        File compact = new File(persistentFileName + ".compact");
+        // a compacted log which was not renamed is incomplete
+        compact.delete();
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+
+        long start = System.currentTimeMillis();
+        file = new RandomAccessFile(target, "rw");
+        int size = (int) Math.min(Integer.MAX_VALUE, Math.max(file.length(), initialSize));
+        file.setLength(size);
+        channel = file.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        recoverIndex();
+
+        LOG.info("Recovered {} correlation key(s) and {} completed exchange(s) from {} in {} millis",
+                new Object[]{keys.size(), completed.size(), persistentFileName, System.currentTimeMillis() - start});
+    }
+
+    @Override
+    protected synchronized void doStop() throws Exception {
+        if (buffer != null) {
+            // compact so the log is quick to recover when started again
+            if (liveBytes < position) {
+                compact();
+            }
+            buffer.force();
+        }
+        IOHelper.close(channel);
+        IOHelper.close(file);
+        buffer = null;
+        channel = null;
+        file = null;
+    }
+
+}
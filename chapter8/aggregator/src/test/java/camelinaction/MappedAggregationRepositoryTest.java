@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MappedAggregationRepository} survives a restart and compacts its log.
+ *
+ * @version $Revision: 131 $
+ */
+public class MappedAggregationRepositoryTest extends CamelTestSupport {
+
+    private MappedAggregationRepository repo;
+
+    @Override
+    public void setUp() throws Exception {
+        deleteDirectory("target/data");
+        super.setUp();
+        repo = new MappedAggregationRepository("target/data/repo.log");
+        repo.setInitialSize(64 * 1024);
+        repo.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        repo.stop();
+        super.tearDown();
+    }
+
+    @Test
+    public void testAddGetRemoveConfirm() throws Exception {
+        assertNull(repo.get(context, "foo"));
+
+        repo.add(context, "foo", createExchange("A"));
+        repo.add(context, "foo", createExchange("AB"));
+        assertEquals("AB", repo.get(context, "foo").getIn().getBody());
+        assertEquals(1, repo.getKeys().size());
+
+        Exchange exchange = repo.get(context, "foo");
+        repo.remove(context, "foo", exchange);
+        assertNull(repo.get(context, "foo"));
+        assertTrue(repo.getKeys().isEmpty());
+
+        // the completed exchange can be recovered until its confirmed
+        assertTrue(repo.scan(context).contains(exchange.getExchangeId()));
+        assertEquals("AB", repo.recover(context, exchange.getExchangeId()).getIn().getBody());
+
+        repo.confirm(context, exchange.getExchangeId());
+        assertTrue(repo.scan(context).isEmpty());
+        assertNull(repo.recover(context, exchange.getExchangeId()));
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        repo.add(context, "foo", createExchange("A"));
+        repo.add(context, "bar", createExchange("B"));
+        Exchange completed = createExchange("C");
+        repo.add(context, "baz", completed);
+        repo.remove(context, "baz", completed);
+
+        repo.stop();
+        repo.start();
+
+        assertEquals(2, repo.getKeys().size());
+        assertEquals("A", repo.get(context, "foo").getIn().getBody());
+        assertEquals("B", repo.get(context, "bar").getIn().getBody());
+        assertEquals("C", repo.recover(context, completed.getExchangeId()).getIn().getBody());
+        assertEquals(completed.getExchangeId(), repo.recover(context, completed.getExchangeId()).getExchangeId());
+    }
+
+    @Test
+    public void testRecoverIgnoresIncompleteRecord() throws Exception {
+        repo.add(context, "foo", createExchange("A"));
+        repo.add(context, "bar", createExchange("B"));
+        int size = repo.getLogSize();
+        repo.stop();
+
+        // simulate a crash while writing a record by writing a record header without the data
+        RandomAccessFile file = new RandomAccessFile("target/data/repo.log", "rw");
+        file.seek(size);
+        file.writeInt(1000);
+        file.writeInt(1234);
+        file.close();
+
+        repo.start();
+        assertEquals(2, repo.getKeys().size());
+        assertEquals(size, repo.getLogSize());
+
+        // and we can continue writing
+        repo.add(context, "baz", createExchange("C"));
+        repo.stop();
+        repo.start();
+        assertEquals(3, repo.getKeys().size());
+        assertEquals("C", repo.get(context, "baz").getIn().getBody());
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        repo.setCompactThreshold(32 * 1024);
+
+        // update the same key many times which leaves a lot of garbage in the log
+        for (int i = 0; i < 1000; i++) {
+            repo.add(context, "foo", createExchange("Message " + i));
+            repo.add(context, "bar" + (i % 10), createExchange("Message " + i));
+        }
+
+        assertTrue("Should have compacted", repo.getCompactions() > 0);
+        assertTrue("Log should be compacted, was " + repo.getLogSize(), repo.getLogSize() < 32 * 1024);
+        assertEquals(11, repo.getKeys().size());
+        assertEquals("Message 999", repo.get(context, "foo").getIn().getBody());
+        assertEquals("Message 990", repo.get(context, "bar0").getIn().getBody());
+
+        // and the compacted log can be recovered
+        repo.stop();
+        repo.start();
+        assertEquals(11, repo.getKeys().size());
+        assertEquals("Message 999", repo.get(context, "foo").getIn().getBody());
+        assertEquals("Message 999", repo.get(context, "bar9").getIn().getBody());
+    }
+
+    @Test
+    public void testCompactFailure() throws Exception {
+        repo.add(context, "foo", createExchange("A"));
+        repo.add(context, "foo", createExchange("B"));
+
+        // the compacted log cannot be created when there is a directory in the way
+        File compact = new File("target/data/repo.log.compact");
+        assertTrue(new File(compact, "blocker").mkdirs());
+        try {
+            repo.compact();
+            fail("Should have thrown an exception");
+        } catch (RuntimeCamelException e) {
+            // expected
+        }
+
+        // the repository keeps using the current log
+        assertEquals(0, repo.getCompactions());
+        assertEquals("B", repo.get(context, "foo").getIn().getBody());
+        repo.add(context, "bar", createExchange("C"));
+
+        deleteDirectory(compact);
+        repo.compact();
+        assertEquals(1, repo.getCompactions());
+        assertEquals("B", repo.get(context, "foo").getIn().getBody());
+        assertEquals("C", repo.get(context, "bar").getIn().getBody());
+
+        repo.stop();
+        repo.start();
+        assertEquals(2, repo.getKeys().size());
+        assertEquals("C", repo.get(context, "bar").getIn().getBody());
+    }
+
+    private Exchange createExchange(String body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+}
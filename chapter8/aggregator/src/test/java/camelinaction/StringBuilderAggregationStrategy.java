@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+
+/**
+ * An aggregation strategy which adds the bodies together the same way as {@link MyAggregationStrategy},
+ * but appends them to a <tt>StringBuilder</tt> kept as the body of the aggregated message.
+ * <p/>
+ * {@link MyAggregationStrategy} copies the aggregated body for every message, so the time it takes
+ * grows with the square of the completion size. By appending to a <tt>StringBuilder</tt> each message
+ * only costs the copy of its own body, which matters when aggregating thousands of small messages.
+ * <p/>
+ * The <tt>StringBuilder</tt> converts to a <tt>String</tt> when needed, but to turn the body into a
+ * <tt>String</tt> when the aggregation completes, call the {@link #complete(Exchange)} method,
+ * eg using <tt>.bean(strategy, "complete")</tt> as the first step after the aggregator.
+ *
+ * @version $Revision: 132 $
+ */
+public class StringBuilderAggregationStrategy implements AggregationStrategy {
+
+    private int initialCapacity = 256;
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    /**
+     * The initial capacity of the <tt>StringBuilder</tt>, set it to the expected size of the
+     * aggregated body to avoid growing the buffer.
+     */
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        String newBody = newExchange.getIn().getBody(String.class);
+
+        // the first time we start the buffer on the new message
+        if (oldExchange == null) {
+            StringBuilder buffer = new StringBuilder(Math.max(initialCapacity, newBody != null ? newBody.length() : 0));
+            if (newBody != null) {
+                buffer.append(newBody);
+            }
+            newExchange.getIn().setBody(buffer);
+            return newExchange;
+        }
+
+        // append the new body to the buffer, which is only copied when it needs to grow
+        Object body = oldExchange.getIn().getBody();
+        StringBuilder buffer;
+        if (body instanceof StringBuilder) {
+            buffer = (StringBuilder) body;
+        } else {
+            // the aggregated message may have been converted, eg when restored from a persistent repository
+            buffer = new StringBuilder(oldExchange.getIn().getBody(String.class));
+            oldExchange.getIn().setBody(buffer);
+        }
+        if (newBody != null) {
+            buffer.append(newBody);
+        }
+        return oldExchange;
+    }
+
+    /**
+     * Turns the body of the completed aggregated message into a <tt>String</tt>
+     */
+    public void complete(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof StringBuilder) {
+            exchange.getIn().setBody(body.toString());
+        }
+    }
+
+}
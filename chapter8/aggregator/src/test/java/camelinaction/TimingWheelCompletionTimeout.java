@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Predicate;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.apache.camel.spi.AggregationRepository;
+import org.apache.camel.support.ExpressionAdapter;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.ObjectHelper;
+import org.apache.camel.util.ServiceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A completion timeout for the Aggregator EIP which uses a {@link HashedTimingWheel} to keep track of
+ * when the correlation groups time out.
+ * <p/>
+ * The built in <tt>completionTimeout</tt> checks every open group for timeout every second, which costs
+ * more the more groups are open. With the timing wheel each arriving message reschedules the timeout of
+ * its group in constant time, and each tick only visits the groups which time out in that tick.
+ * <p/>
+ * When a group times out a timeout message with the correlation key of the group is sent to the
+ * aggregator, which completes the group the same way as the END message in {@link AggregateABCEagerTest}.
+ * As the timeout message goes through the aggregator it works with any aggregation repository, and the
+ * groups in a persistent repository are scheduled again when this service is started.
+ * <p/>
+ * This processor must be the step before the aggregator, and the aggregator must use the correlation
+ * expression, aggregation strategy and completion predicate from this class with eager completion check.
+ * The step after the aggregator must be the {@link #completed()} processor:
+ * <pre>
+ * from("direct:start")
+ *     .process(timeout)
+ *     .aggregate(timeout.correlationExpression(), timeout.aggregationStrategy())
+ *         .completionPredicate(timeout.completionPredicate()).eagerCheckCompletion()
+ *         .process(timeout.completed())
+ *         .to("mock:result");
+ * </pre>
+ * The aggregated message completed by timeout has the property <tt>CamelAggregatedCompletedBy</tt> set to
+ * <tt>timeout</tt> the same way as the built in completion timeout.
+ *
+ * @version $Revision: 134 $
+ */
+public class TimingWheelCompletionTimeout extends ServiceSupport implements Processor, CamelContextAware {
+
+    public static final String TIMEOUT = "CamelTimingWheelTimeout";
+    public static final String TIMEOUT_KEY = "CamelTimingWheelTimeoutKey";
+    private static final String TIMED_OUT = "CamelTimingWheelTimedOut";
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelCompletionTimeout.class);
+
+    private final String endpointUri;
+    private final Expression correlationExpression;
+    private final AggregationStrategy aggregationStrategy;
+    private final long timeout;
+    private long tickDuration = 100;
+    private int ticksPerWheel = 512;
+    private AggregationRepository aggregationRepository;
+
+    private CamelContext camelContext;
+    private HashedTimingWheel<String> wheel;
+    private ScheduledExecutorService executor;
+    private ProducerTemplate template;
+
+    /**
+     * @param endpointUri           the endpoint to send the timeout messages to, which is the input of the aggregator route
+     * @param correlationExpression the correlation expression of the aggregator
+     * @param aggregationStrategy   the aggregation strategy of the aggregator
+     * @param timeout               the time in millis a group can be inactive before it is completed
+     */
+    public TimingWheelCompletionTimeout(String endpointUri, Expression correlationExpression,
+                                        AggregationStrategy aggregationStrategy, long timeout) {
+        this.endpointUri = endpointUri;
+        this.correlationExpression = correlationExpression;
+        this.aggregationStrategy = aggregationStrategy;
+        this.timeout = timeout;
+    }
+
+    public CamelContext getCamelContext() {
+        return camelContext;
+    }
+
+    public void setCamelContext(CamelContext camelContext) {
+        this.camelContext = camelContext;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * The duration of a tick in millis, which is how precise the timeouts are
+     */
+    public void setTickDuration(long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public int getTicksPerWheel() {
+        return ticksPerWheel;
+    }
+
+    /**
+     * The number of ticks in the wheel, which is best set so a turn of the wheel is longer than the timeout
+     */
+    public void setTicksPerWheel(int ticksPerWheel) {
+        this.ticksPerWheel = ticksPerWheel;
+    }
+
+    public AggregationRepository getAggregationRepository() {
+        return aggregationRepository;
+    }
+
+    /**
+     * The persistent repository of the aggregator, so the groups it holds are scheduled when started
+     */
+    public void setAggregationRepository(AggregationRepository aggregationRepository) {
+        this.aggregationRepository = aggregationRepository;
+    }
+
+    /**
+     * Number of groups scheduled to time out
+     */
+    public int getScheduledCount() {
+        return wheel != null ? wheel.size() : 0;
+    }
+
+    /**
+     * Reschedules the timeout of the group of the arriving message
+     */
+    public void process(Exchange exchange) throws Exception {
+        if (!isTimeout(exchange)) {
+            String key = correlationExpression.evaluate(exchange, String.class);
+            if (key != null) {
+                wheel.schedule(key, timeout);
+            }
+        }
+    }
+
+    /**
+     * The correlation expression for the aggregator, which uses the key of the timeout messages
+     */
+    public Expression correlationExpression() {
+        return new ExpressionAdapter() {
+            public Object evaluate(Exchange exchange) {
+                if (isTimeout(exchange)) {
+                    return exchange.getIn().getHeader(TIMEOUT_KEY, String.class);
+                }
+                return correlationExpression.evaluate(exchange, String.class);
+            }
+
+            @Override
+            public String toString() {
+                return correlationExpression.toString();
+            }
+        };
+    }
+
+    /**
+     * The aggregation strategy for the aggregator, which does not aggregate the timeout messages
+     */
+    public AggregationStrategy aggregationStrategy() {
+        return new AggregationStrategy() {
+            public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+                if (isTimeout(newExchange)) {
+                    if (oldExchange == null) {
+                        // the group has already been completed
+                        return newExchange;
+                    }
+                    oldExchange.setProperty(TIMED_OUT, Boolean.TRUE);
+                    return oldExchange;
+                }
+                return aggregationStrategy.aggregate(oldExchange, newExchange);
+            }
+        };
+    }
+
+    /**
+     * The completion predicate for the aggregator, which completes the group when the timeout message arrives
+     */
+    public Predicate completionPredicate() {
+        return new Predicate() {
+            public boolean matches(Exchange exchange) {
+                return isTimeout(exchange);
+            }
+        };
+    }
+
+    /**
+     * The processor for the step after the aggregator, which cancels the timeout of the completed group
+     */
+    public Processor completed() {
+        return new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                if (isTimeout(exchange)) {
+                    // the timeout message of a group which was completed in the meantime
+                    exchange.setProperty(Exchange.ROUTE_STOP, Boolean.TRUE);
+                    return;
+                }
+                if (exchange.removeProperty(TIMED_OUT) != null) {
+                    exchange.setProperty(Exchange.AGGREGATED_COMPLETED_BY, "timeout");
+                } else {
+                    wheel.cancel(exchange.getProperty(Exchange.AGGREGATED_CORRELATION_KEY, String.class));
+                }
+            }
+        };
+    }
+
+    private static boolean isTimeout(Exchange exchange) {
+        return exchange.getIn().getHeader(TIMEOUT) != null;
+    }
+
+    private void onTick() {
+        List<String> keys = wheel.expire();
+        for (String key : keys) {
+            LOG.debug("Completion timeout of correlation key: {}", key);
+            try {
+                Exchange exchange = template.request(endpointUri, new TimeoutMessage(key));
+                if (exchange.getException() != null) {
+                    LOG.warn("Error completing correlation key: " + key + " by timeout", exchange.getException());
+                }
+            } catch (Exception e) {
+                LOG.warn("Error completing correlation key: " + key + " by timeout", e);
+            }
+        }
+    }
+
+    private static final class TimeoutMessage implements Processor {
+        private final String key;
+
+        private TimeoutMessage(String key) {
+            this.key = key;
+        }
+
+        public void process(Exchange exchange) throws Exception {
+            exchange.getIn().setHeader(TIMEOUT, Boolean.TRUE);
+            exchange.getIn().setHeader(TIMEOUT_KEY, key);
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ObjectHelper.notNull(camelContext, "camelContext", this);
+        wheel = new HashedTimingWheel<String>(tickDuration, ticksPerWheel);
+        template = camelContext.createProducerTemplate();
+
+        if (aggregationRepository != null) {
+            // the groups restored from a persistent repository times out a full timeout after we started
+            for (String key : aggregationRepository.getKeys()) {
+                wheel.schedule(key, timeout);
+            }
+        }
+
+        executor = camelContext.getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "TimingWheelCompletionTimeout");
+        executor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                onTick();
+            }
+        }, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (executor != null) {
+            camelContext.getExecutorServiceManager().shutdownNow(executor);
+            executor = null;
+        }
+        ServiceHelper.stopService(template);
+        template = null;
+    }
+
+}
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Processor;
+import org.apache.camel.processor.loadbalancer.SimpleLoadBalancerSupport;
+
+/**
+ * A sticky load balancer which uses consistent hashing to map the correlation key to a processor.
+ * <p/>
+ * Each processor is placed on a hash ring at a number of virtual nodes, and a key goes to the
+ * processor of the first virtual node at or after the hash of the key. When a processor is added or
+ * removed only the keys of that processor move, whereas the sticky load balancer moves nearly all of them.
+ * <p/>
+ * With bounded load enabled, a processor must not have more than the average in flight exchanges
+ * times <tt>(1 + balanceFactor)</tt>. A key whose processor is full spills over to the next processor
+ * on the ring, so a hot key cannot overload a single processor.
+ *
+ * @version $Revision: 95 $
+ */
+public class ConsistentHashLoadBalancer extends SimpleLoadBalancerSupport {
+
+    private final Expression correlationExpression;
+    private int virtualNodes = 100;
+    private boolean boundedLoad;
+    private double balanceFactor = 0.25;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final Map<Processor, Node> nodes = new HashMap<Processor, Node>();
+    private volatile Ring ring = new Ring(new int[0], new Node[0], 0);
+
+    /**
+     * A processor with its current load
+     */
+    private static final class Node {
+        private final Processor processor;
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        private Node(Processor processor) {
+            this.processor = processor;
+        }
+    }
+
+    /**
+     * A virtual node of a processor on the hash ring
+     */
+    private static final class VirtualNode implements Comparable<VirtualNode> {
+        private final int hash;
+        private final Node node;
+
+        private VirtualNode(int hash, Node node) {
+            this.hash = hash;
+            this.node = node;
+        }
+
+        public int compareTo(VirtualNode other) {
+            return hash < other.hash ? -1 : hash > other.hash ? 1 : 0;
+        }
+    }
+
+    /**
+     * The virtual nodes sorted by their hash
+     */
+    private static final class Ring {
+        private final int[] hashes;
+        private final Node[] nodes;
+        private final int size;
+
+        private Ring(int[] hashes, Node[] nodes, int size) {
+            this.hashes = hashes;
+            this.nodes = nodes;
+            this.size = size;
+        }
+    }
+
+    public ConsistentHashLoadBalancer(Expression correlationExpression) {
+        this.correlationExpression = correlationExpression;
+    }
+
+    public Expression getCorrelationExpression() {
+        return correlationExpression;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * Number of virtual nodes per processor on the hash ring, more nodes spreads the keys more evenly
+     */
+    public synchronized void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        rebuild();
+    }
+
+    public boolean isBoundedLoad() {
+        return boundedLoad;
+    }
+
+    /**
+     * Whether to spill keys over to the next processor on the ring when their processor is full
+     */
+    public void setBoundedLoad(boolean boundedLoad) {
+        this.boundedLoad = boundedLoad;
+    }
+
+    public double getBalanceFactor() {
+        return balanceFactor;
+    }
+
+    /**
+     * How much a processor may be loaded above the average when using bounded load, default 0.25
+     */
+    public void setBalanceFactor(double balanceFactor) {
+        this.balanceFactor = balanceFactor;
+    }
+
+    /**
+     * Number of exchanges which were sent to another processor than their own, as it was full
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    @Override
+    public synchronized void addProcessor(Processor processor) {
+        super.addProcessor(processor);
+        rebuild();
+    }
+
+    @Override
+    public synchronized void removeProcessor(Processor processor) {
+        super.removeProcessor(processor);
+        rebuild();
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        Object key = correlationExpression.evaluate(exchange, Object.class);
+        Node node = choose(ring, key);
+        if (node == null) {
+            throw new IllegalStateException("No processors available to process " + exchange);
+        }
+
+        inflight.incrementAndGet();
+        node.inflight.incrementAndGet();
+        try {
+            node.processor.process(exchange);
+        } finally {
+            node.inflight.decrementAndGet();
+            inflight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Chooses the processor for the given key
+     */
+    public Processor chooseProcessor(Object key) {
+        Node node = choose(ring, key);
+        return node != null ? node.processor : null;
+    }
+
+    private Node choose(Ring ring, Object key) {
+        int[] hashes = ring.hashes;
+        if (hashes.length == 0) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(hashes, hash(key != null ? key.toString() : ""));
+        if (index < 0) {
+            // not an exact match so use the next virtual node on the ring
+            index = -index - 1;
+        }
+        if (index == hashes.length) {
+            index = 0;
+        }
+        Node owner = ring.nodes[index];
+        if (!boundedLoad) {
+            return owner;
+        }
+
+        // the capacity of a processor including the exchange about to be sent
+        int capacity = (int) Math.ceil((inflight.get() + 1) * (1 + balanceFactor) / ring.size);
+        for (int i = 0; i < hashes.length; i++) {
+            Node node = ring.nodes[(index + i) % hashes.length];
+            if (node.inflight.get() < capacity) {
+                if (node != owner) {
+                    spilledCount.incrementAndGet();
+                }
+                return node;
+            }
+        }
+        // the loads changed while walking the ring
+        return owner;
+    }
+
+    private void rebuild() {
+        Map<Processor, Node> current = new HashMap<Processor, Node>();
+        Map<String, Integer> names = new HashMap<String, Integer>();
+        List<VirtualNode> virtual = new ArrayList<VirtualNode>();
+
+        for (Processor processor : getProcessors()) {
+            Node node = nodes.get(processor);
+            if (node == null) {
+                node = new Node(processor);
+            }
+            current.put(processor, node);
+
+            // the name must not depend on the position of the processor, so adding or removing
+            // other processors does not move its virtual nodes
+            String name = String.valueOf(processor);
+            Integer seen = names.get(name);
+            names.put(name, seen == null ? 1 : seen + 1);
+            if (seen != null) {
+                name = name + "-" + seen;
+            }
+
+            for (int i = 0; i < virtualNodes; i++) {
+                virtual.add(new VirtualNode(hash(name + "#" + i), node));
+            }
+        }
+
+        Collections.sort(virtual);
+        int[] hashes = new int[virtual.size()];
+        Node[] owners = new Node[virtual.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = virtual.get(i).hash;
+            owners[i] = virtual.get(i).node;
+        }
+
+        nodes.clear();
+        nodes.putAll(current);
+        ring = new Ring(hashes, owners, current.size());
+    }
+
+    /**
+     * The string hash code spread with the MurmurHash3 finalizer, as similar keys have similar hash codes
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashLoadBalancer[" + correlationExpression + "]";
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.processor.loadbalancer.SimpleLoadBalancerSupport;
+
+/**
+ * A load balancer which sends the exchange to the processor which is expected to respond the fastest.
+ * <p/>
+ * For each processor the number of in flight exchanges and a moving average of the response time is
+ * tracked, and the cost of a processor is its average response time times its in flight exchanges plus one.
+ * Two processors are picked at random and the exchange is sent to the one with the lowest cost, which is
+ * known as <i>power of two choices</i>. This avoids sending all the exchanges to the same processor, and
+ * a processor which slows down quickly gets less exchanges.
+ * <p/>
+ * The average is a peak EWMA, which jumps to a slower response time at once, and decays back towards
+ * faster response times over the <tt>decayTime</tt>. The average also decays while a processor is not used,
+ * so a processor which was slow once is tried again. A failure counts as a response time of at least the
+ * <tt>failurePenalty</tt>, so a processor which fails fast does not look fast.
+ * <p/>
+ * A processor which fails <tt>maxFailures</tt> times in a row is ejected, and is not used for the
+ * <tt>ejectionTime</tt>. If all processors are ejected they are used anyway.
+ *
+ * @version $Revision: 95 $
+ */
+public class LatencyAwareLoadBalancer extends SimpleLoadBalancerSupport {
+
+    private final Random random = new Random();
+    private final Map<Processor, Node> nodes = new HashMap<Processor, Node>();
+    private volatile Node[] active = new Node[0];
+    private long decayTime = 10000;
+    private long failurePenalty = 1000;
+    private int maxFailures = 3;
+    private long ejectionTime = 30000;
+    private final AtomicLong ejectedCount = new AtomicLong();
+
+    /**
+     * A processor with its load and response time
+     */
+    private final class Node {
+        private final Processor processor;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile double latency;
+        private volatile long lastUpdate = System.nanoTime();
+        private volatile long ejectedUntil;
+
+        private Node(Processor processor) {
+            this.processor = processor;
+        }
+
+        double cost(long now) {
+            return latency(now) * (inflight.get() + 1);
+        }
+
+        /**
+         * The average decayed by the time since it was last updated
+         */
+        double latency(long now) {
+            return latency * Math.exp(-(double) (now - lastUpdate) / TimeUnit.MILLISECONDS.toNanos(decayTime));
+        }
+
+        boolean isEjected(long now) {
+            return ejectedUntil - now > 0;
+        }
+
+        synchronized void update(long now, long elapsed) {
+            double current = latency(now);
+            if (elapsed > current) {
+                // peak sensitive, so a slow processor is penalized at once
+                latency = elapsed;
+            } else {
+                double weight = Math.exp(-(double) (now - lastUpdate) / TimeUnit.MILLISECONDS.toNanos(decayTime));
+                latency = current * weight + elapsed * (1 - weight);
+            }
+            lastUpdate = now;
+        }
+    }
+
+    public long getDecayTime() {
+        return decayTime;
+    }
+
+    /**
+     * Time in millis for the average response time to decay towards faster response times, default 10000
+     */
+    public void setDecayTime(long decayTime) {
+        this.decayTime = decayTime;
+    }
+
+    public long getFailurePenalty() {
+        return failurePenalty;
+    }
+
+    /**
+     * The minimum response time in millis a failure counts as, default 1000
+     */
+    public void setFailurePenalty(long failurePenalty) {
+        this.failurePenalty = failurePenalty;
+    }
+
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    /**
+     * Number of failures in a row before a processor is ejected, default 3
+     */
+    public void setMaxFailures(int maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    public long getEjectionTime() {
+        return ejectionTime;
+    }
+
+    /**
+     * Time in millis a failed processor is ejected, default 30000
+     */
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * Number of times a processor was ejected
+     */
+    public long getEjectedCount() {
+        return ejectedCount.get();
+    }
+
+    /**
+     * The average response time in millis of the processor
+     */
+    public double getLatency(Processor processor) {
+        Node node = node(processor);
+        return node != null ? node.latency(System.nanoTime()) / 1000000 : 0;
+    }
+
+    /**
+     * Number of exchanges in flight at the processor
+     */
+    public int getInflight(Processor processor) {
+        Node node = node(processor);
+        return node != null ? node.inflight.get() : 0;
+    }
+
+    /**
+     * Whether the processor is currently ejected
+     */
+    public boolean isEjected(Processor processor) {
+        Node node = node(processor);
+        return node != null && node.isEjected(System.nanoTime());
+    }
+
+    @Override
+    public synchronized void addProcessor(Processor processor) {
+        super.addProcessor(processor);
+        nodes.put(processor, new Node(processor));
+        active = nodes.values().toArray(new Node[nodes.size()]);
+    }
+
+    @Override
+    public synchronized void removeProcessor(Processor processor) {
+        super.removeProcessor(processor);
+        nodes.remove(processor);
+        active = nodes.values().toArray(new Node[nodes.size()]);
+    }
+
+    public void process(Exchange exchange) throws Exception {
+        Node node = choose();
+        if (node == null) {
+            throw new IllegalStateException("No processors available to process " + exchange);
+        }
+
+        node.inflight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            node.processor.process(exchange);
+        } catch (Exception e) {
+            exchange.setException(e);
+        } finally {
+            node.inflight.decrementAndGet();
+            long now = System.nanoTime();
+            if (exchange.getException() != null) {
+                node.update(now, Math.max(now - start, TimeUnit.MILLISECONDS.toNanos(failurePenalty)));
+                onFailure(node, now);
+            } else {
+                node.update(now, now - start);
+                node.failures.set(0);
+            }
+        }
+    }
+
+    private void onFailure(Node node, long now) {
+        if (node.failures.incrementAndGet() >= maxFailures) {
+            node.failures.set(0);
+            node.ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+            ejectedCount.incrementAndGet();
+            log.warn("Ejecting {} for {} millis after {} failures", new Object[] {node.processor, ejectionTime, maxFailures});
+        }
+    }
+
+    private Node choose() {
+        Node[] nodes = active;
+        long now = System.nanoTime();
+        int available = 0;
+        for (Node node : nodes) {
+            if (!node.isEjected(now)) {
+                available++;
+            }
+        }
+        if (available == 0 || available == nodes.length) {
+            // use all of them, also when they are all ejected
+            return choose(nodes, nodes.length, now);
+        }
+
+        Node[] candidates = new Node[available];
+        int i = 0;
+        for (Node node : nodes) {
+            if (!node.isEjected(now)) {
+                candidates[i++] = node;
+            }
+        }
+        return choose(candidates, available, now);
+    }
+
+    /**
+     * Picks two processors at random and chooses the one with the lowest cost
+     */
+    private Node choose(Node[] nodes, int size, long now) {
+        if (size <= 1) {
+            return size == 0 ? null : nodes[0];
+        }
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        return nodes[first].cost(now) <= nodes[second].cost(now) ? nodes[first] : nodes[second];
+    }
+
+    private synchronized Node node(Processor processor) {
+        return nodes.get(processor);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyAwareLoadBalancer";
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Demonstrates how to use the Load Balancer EIP pattern.
+ * <p/>
+ * Using a custom load balancer with consistent hashing.
+ *
+ * @version $Revision: 95 $
+ */
+public class ConsistentHashLoadBalancerTest extends CamelTestSupport {
+
+    @Test
+    public void testLoadBalancer() throws Exception {
+        MockEndpoint a = getMockEndpoint("mock:a");
+        MockEndpoint b = getMockEndpoint("mock:b");
+        MockEndpoint c = getMockEndpoint("mock:c");
+        getMockEndpoint("mock:all").expectedMessageCount(20);
+
+        String[] types = {"gold", "silver", "bronze", "platinum"};
+        for (int i = 0; i < 20; i++) {
+            template.sendBodyAndHeader("direct:start", "Order " + i, "type", types[i % types.length]);
+        }
+        assertMockEndpointsSatisfied();
+
+        // all the messages of a type must go to the same service
+        Set<String> seen = new HashSet<String>();
+        for (MockEndpoint mock : new MockEndpoint[] {a, b, c}) {
+            Set<String> received = new HashSet<String>();
+            for (Exchange exchange : mock.getReceivedExchanges()) {
+                received.add(exchange.getIn().getHeader("type", String.class));
+            }
+            for (String type : received) {
+                assertTrue("Type " + type + " sent to more than one service", seen.add(type));
+            }
+        }
+        assertEquals(4, seen.size());
+    }
+
+    @Test
+    public void testRemoveProcessor() throws Exception {
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer(header("type"));
+        Processor[] services = new Processor[4];
+        for (int i = 0; i < services.length; i++) {
+            services[i] = new Service("service-" + i);
+            balancer.addProcessor(services[i]);
+        }
+
+        Map<String, Processor> before = new HashMap<String, Processor>();
+        Map<Processor, Integer> counts = new HashMap<Processor, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            Processor processor = balancer.chooseProcessor("key-" + i);
+            before.put("key-" + i, processor);
+            counts.put(processor, counts.containsKey(processor) ? counts.get(processor) + 1 : 1);
+        }
+        // the keys are spread evenly
+        for (Processor service : services) {
+            assertTrue(service + " has " + counts.get(service) + " keys", counts.get(service) > 150 && counts.get(service) < 350);
+        }
+
+        balancer.removeProcessor(services[2]);
+        for (int i = 0; i < 1000; i++) {
+            Processor processor = balancer.chooseProcessor("key-" + i);
+            assertNotSame(services[2], processor);
+            if (before.get("key-" + i) != services[2]) {
+                // only the keys of the removed service are moved
+                assertSame(before.get("key-" + i), processor);
+            }
+        }
+
+        // adding the service again moves its keys back
+        balancer.addProcessor(services[2]);
+        for (int i = 0; i < 1000; i++) {
+            assertSame(before.get("key-" + i), balancer.chooseProcessor("key-" + i));
+        }
+    }
+
+    @Test
+    public void testBoundedLoad() throws Exception {
+        final ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer(header("type"));
+        balancer.setBoundedLoad(true);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(8);
+        final Map<String, AtomicInteger> load = new HashMap<String, AtomicInteger>();
+        for (int i = 0; i < 4; i++) {
+            final String name = "service-" + i;
+            load.put(name, new AtomicInteger());
+            balancer.addProcessor(new Service(name) {
+                @Override
+                public void process(Exchange exchange) throws Exception {
+                    load.get(name).incrementAndGet();
+                    started.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }
+            });
+        }
+
+        // send the same hot key concurrently, where the exchanges are kept in flight
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        Exchange exchange = new DefaultExchange(context);
+                        exchange.getIn().setHeader("type", "gold");
+                        balancer.process(exchange);
+                    } catch (Exception e) {
+                        // ignore
+                    }
+                }
+            });
+        }
+        try {
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // no service has more than the average of 2 times 1.25 rounded up
+            for (AtomicInteger count : load.values()) {
+                assertTrue("Load " + load, count.get() <= 3);
+            }
+            assertTrue(balancer.getSpilledCount() >= 5);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:start")
+                    // use a custom load balancer with consistent hashing on the type header
+                    .loadBalance(new ConsistentHashLoadBalancer(header("type")))
+                        // this is the 3 processors which we will balance across
+                        .to("seda:a").to("seda:b").to("seda:c")
+                    .end();
+
+                from("seda:a").to("mock:a", "mock:all");
+                from("seda:b").to("mock:b", "mock:all");
+                from("seda:c").to("mock:c", "mock:all");
+            }
+        };
+    }
+
+    private static class Service implements Processor {
+        private final String name;
+
+        Service(String name) {
+            this.name = name;
+        }
+
+        public void process(Exchange exchange) throws Exception {
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Test;
+
+/**
+ * Demonstrates how to use the Load Balancer EIP pattern.
+ * <p/>
+ * Using a custom load balancer which prefers the fastest service.
+ *
+ * @version $Revision: 95 $
+ */
+public class LatencyAwareLoadBalancerTest extends CamelTestSupport {
+
+    @Test
+    public void testSlowServiceGetsLessMessages() throws Exception {
+        MockEndpoint a = getMockEndpoint("mock:a");
+        MockEndpoint b = getMockEndpoint("mock:b");
+        MockEndpoint slow = getMockEndpoint("mock:slow");
+
+        for (int i = 0; i < 60; i++) {
+            template.sendBody("direct:start", "Order " + i);
+        }
+
+        assertEquals(60, a.getReceivedCounter() + b.getReceivedCounter() + slow.getReceivedCounter());
+        // the fast services share the load
+        assertTrue("A received " + a.getReceivedCounter(), a.getReceivedCounter() > 10);
+        assertTrue("B received " + b.getReceivedCounter(), b.getReceivedCounter() > 10);
+        assertTrue("Slow received " + slow.getReceivedCounter(), slow.getReceivedCounter() < 10);
+    }
+
+    @Test
+    public void testEjectFailedService() throws Exception {
+        LatencyAwareLoadBalancer balancer = new LatencyAwareLoadBalancer();
+        balancer.setMaxFailures(2);
+        balancer.setEjectionTime(500);
+        // without a failure penalty the bad service fails fast so it looks faster than the good service
+        balancer.setFailurePenalty(0);
+        Service good = new Service(false);
+        Service bad = new Service(true);
+        balancer.addProcessor(good);
+        balancer.addProcessor(bad);
+
+        for (int i = 0; i < 20; i++) {
+            balancer.process(new DefaultExchange(context));
+        }
+        // the bad service is ejected after 2 failures
+        assertEquals(2, bad.count);
+        assertEquals(18, good.count);
+        assertTrue(balancer.isEjected(bad));
+        assertEquals(1, balancer.getEjectedCount());
+
+        // and is tried again when the ejection time is over
+        Thread.sleep(600);
+        assertFalse(balancer.isEjected(bad));
+        for (int i = 0; i < 20; i++) {
+            balancer.process(new DefaultExchange(context));
+        }
+        assertEquals(4, bad.count);
+        assertEquals(2, balancer.getEjectedCount());
+    }
+
+    @Test
+    public void testFailurePenalty() throws Exception {
+        LatencyAwareLoadBalancer balancer = new LatencyAwareLoadBalancer();
+        Service good = new Service(false);
+        Service bad = new Service(true);
+        balancer.addProcessor(good);
+        balancer.addProcessor(bad);
+
+        for (int i = 0; i < 20; i++) {
+            balancer.process(new DefaultExchange(context));
+        }
+        // the bad service fails fast, but the failure counts as slow so it is not used again
+        assertEquals(1, bad.count);
+        assertEquals(19, good.count);
+        assertFalse(balancer.isEjected(bad));
+        assertTrue("Latency was " + balancer.getLatency(bad), balancer.getLatency(bad) > 500);
+    }
+
+    @Test
+    public void testSlowOnceIsTriedAgain() throws Exception {
+        LatencyAwareLoadBalancer balancer = new LatencyAwareLoadBalancer();
+        balancer.setDecayTime(100);
+        // the service is slow the first time only
+        Service slowOnce = new Service(false, 50, 1);
+        balancer.addProcessor(slowOnce);
+        balancer.process(new DefaultExchange(context));
+
+        Service good = new Service(false);
+        balancer.addProcessor(good);
+
+        // the average of the slow service decays while it is not used, so it is tried again
+        long deadline = System.currentTimeMillis() + 5000;
+        while (slowOnce.count == 1 && System.currentTimeMillis() < deadline) {
+            balancer.process(new DefaultExchange(context));
+        }
+        assertTrue("Should try the slow service again", slowOnce.count > 1);
+        assertTrue(good.count > 0);
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:start")
+                    // use a custom load balancer which prefers the fastest service
+                    .loadBalance(new LatencyAwareLoadBalancer())
+                        // this is the 3 processors which we will balance across
+                        .to("direct:a").to("direct:b").to("direct:slow")
+                    .end();
+
+                from("direct:a").delay(1).to("mock:a");
+                from("direct:b").delay(1).to("mock:b");
+                // this service has slowed down
+                from("direct:slow").delay(50).to("mock:slow");
+            }
+        };
+    }
+
+    private static class Service implements Processor {
+        private final boolean fail;
+        private final long firstDelay;
+        private final long delay;
+        private int count;
+
+        Service(boolean fail) {
+            this(fail, 5, 5);
+        }
+
+        Service(boolean fail, long firstDelay, long delay) {
+            this.fail = fail;
+            this.firstDelay = firstDelay;
+            this.delay = delay;
+        }
+
+        public void process(Exchange exchange) throws Exception {
+            count++;
+            if (fail) {
+                throw new IllegalStateException("Service is down");
+            }
+            Thread.sleep(count == 1 ? firstDelay : delay);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelSpringTestSupport;
+import org.junit.Test;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Demonstrates how to use the Load Balancer EIP pattern.
+ * <p/>
+ * In this example we use the {@link camelinaction.ConsistentHashLoadBalancer} which sends
+ * the messages with the same type to the same service.
+ *
+ * @version $Revision: 95 $
+ */
+public class SpringConsistentHashLoadBalancerTest extends CamelSpringTestSupport {
+
+    @Override
+    protected AbstractXmlApplicationContext createApplicationContext() {
+        return new ClassPathXmlApplicationContext("META-INF/spring/consistenthash-loadbalancer.xml");
+    }
+
+    @Test
+    public void testLoadBalancer() throws Exception {
+        ConsistentHashLoadBalancer balancer = context.getRegistry().lookup("consistentHash", ConsistentHashLoadBalancer.class);
+        boolean goldToA = balancer.chooseProcessor("gold").toString().contains("mock://a");
+        boolean silverToA = balancer.chooseProcessor("silver").toString().contains("mock://a");
+
+        // the messages are sent one at a time so they are not spilled over
+        MockEndpoint a = getMockEndpoint("mock:a");
+        MockEndpoint b = getMockEndpoint("mock:b");
+        a.expectedMessageCount((goldToA ? 2 : 0) + (silverToA ? 2 : 0));
+        b.expectedMessageCount((goldToA ? 0 : 2) + (silverToA ? 0 : 2));
+
+        template.sendBodyAndHeader("direct:start", "Hello", "type", "gold");
+        template.sendBodyAndHeader("direct:start", "Camel rocks", "type", "silver");
+        template.sendBodyAndHeader("direct:start", "Cool", "type", "silver");
+        template.sendBodyAndHeader("direct:start", "Bye", "type", "gold");
+
+        assertMockEndpointsSatisfied();
+    }
+}
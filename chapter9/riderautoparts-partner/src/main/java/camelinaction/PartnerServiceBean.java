@@ -23,6 +23,12 @@ import org.apache.camel.language.XPath;
  */
 public class PartnerServiceBean {
 
+    /**
+     * The insert statement for the rows returned from {@link #toRow(int, String, int, long)}
+     */
+    public static final String INSERT_SQL
+        = "INSERT INTO PARTNER_METRIC (partner_id, time_occurred, status_code, perf_time) VALUES (?, ?, ?, ?)";
+
     public String toSql(@XPath("partner/@id") int partnerId,
                         @XPath("partner/date/text()") String date,
                         @XPath("partner/code/text()") int statusCode,
@@ -37,4 +43,14 @@ public class PartnerServiceBean {
 
         return sb.toString();
     }
+
+    /**
+     * Gets the parameters for {@link #INSERT_SQL}, to be inserted using the {@link JdbcBatchInserter}
+     */
+    public Object[] toRow(@XPath("partner/@id") int partnerId,
+                          @XPath("partner/date/text()") String date,
+                          @XPath("partner/code/text()") int statusCode,
+                          @XPath("partner/time/text()") long responsTime) {
+        return new Object[] {partnerId, date, statusCode, responsTime};
+    }
 }
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.junit4.CamelSpringTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.AbstractXmlApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * @version $Revision: 131 $
+ */
+public class RiderAutoPartsPartnerBatchTest extends CamelSpringTestSupport {
+
+    private JdbcTemplate jdbc;
+
+    @Before
+    public void setupDatabase() throws Exception {
+        DataSource ds = context.getRegistry().lookup("myDataSource", DataSource.class);
+        jdbc = new JdbcTemplate(ds);
+
+        jdbc.execute("create table partner_metric "
+            + "( partner_id varchar(10), time_occurred varchar(20), status_code varchar(3), perf_time varchar(10) )");
+    }
+
+    @After
+    public void dropDatabase() throws Exception {
+        jdbc.execute("drop table partner_metric");
+    }
+
+    @Test
+    public void testSendPartnerReportsIntoDatabase() throws Exception {
+        MockEndpoint mock = getMockEndpoint("mock:done");
+        mock.expectedMessageCount(100);
+
+        // there should be 0 row in the database when we start
+        assertEquals(0, jdbc.queryForInt("select count(*) from partner_metric"));
+
+        for (int i = 1; i <= 100; i++) {
+            String xml = "<?xml version=\"1.0\"?><partner id=\"" + i + "\"><date>200911150815</date><code>200</code><time>4387</time></partner>";
+            template.sendBody("activemq:queue:partners", xml);
+        }
+
+        mock.assertIsSatisfied();
+
+        // there should be 100 rows in the database, which is inserted in batches
+        assertEquals(100, jdbc.queryForInt("select count(*) from partner_metric"));
+        assertEquals(5050, jdbc.queryForInt("select sum(cast(partner_id as int)) from partner_metric"));
+
+        JdbcBatchInserter inserter = context.getRegistry().lookup("partnerInserter", JdbcBatchInserter.class);
+        assertTrue("Should insert in batches, was " + inserter.getBatchCount(), inserter.getBatchCount() < 100);
+    }
+
+    @Test
+    public void testFailedBatchIsRedelivered() throws Exception {
+        // the first batch cannot connect to the database
+        final AtomicBoolean failed = new AtomicBoolean();
+        DataSource ds = context.getRegistry().lookup("myDataSource", DataSource.class);
+        JdbcBatchInserter inserter = context.getRegistry().lookup("partnerInserter", JdbcBatchInserter.class);
+        inserter.setDataSource(new DelegatingDataSource(ds) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (failed.compareAndSet(false, true)) {
+                    throw new SQLException("Cannot connect to the database");
+                }
+                return super.getConnection();
+            }
+        });
+
+        MockEndpoint mock = getMockEndpoint("mock:done");
+        mock.expectedMessageCount(100);
+        mock.setResultWaitTime(20000);
+
+        for (int i = 1; i <= 100; i++) {
+            String xml = "<?xml version=\"1.0\"?><partner id=\"" + i + "\"><date>200911150815</date><code>200</code><time>4387</time></partner>";
+            template.sendBody("activemq:queue:partners", xml);
+        }
+
+        mock.assertIsSatisfied();
+
+        // the messages of the failed batch is rolled back and redelivered, so all the rows are inserted
+        assertTrue("Should have failed a batch", failed.get());
+        assertEquals(100, jdbc.queryForInt("select count(*) from partner_metric"));
+        assertEquals(5050, jdbc.queryForInt("select sum(cast(partner_id as int)) from partner_metric"));
+    }
+
+    @Override
+    protected AbstractXmlApplicationContext createApplicationContext() {
+        return new ClassPathXmlApplicationContext("camelinaction/RiderAutoPartsPartnerBatchTest.xml");
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.MappedAggregationRepository;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Service;
+import org.apache.camel.component.hawtdb.HawtDBAggregationRepository;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.aggregate.MemoryAggregationRepository;
+import org.apache.camel.spi.AggregationRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the aggregation repositories from the chapter 8 aggregator example.
+ * <p/>
+ * Each repository is filled with <tt>openGroups</tt> correlation groups, and the benchmarks then
+ * add to and get from those groups, or complete a group by removing and confirming it. The
+ * score is operations per millisecond.
+ *
+ * @version $Revision: 131 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationRepositoryBenchmark {
+
+    private static final String DIRECTORY = "target/benchmark/repository";
+
+    @Param({"memory", "hawtdb", "mapped"})
+    private String repository;
+
+    @Param({"1000", "100000"})
+    private int openGroups;
+
+    private CamelContext context;
+    private AggregationRepository repo;
+    private Exchange exchange;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // start from an empty repository
+        new File(DIRECTORY + "/hawtdb.dat").delete();
+        new File(DIRECTORY + "/mapped.log").delete();
+        new File(DIRECTORY).mkdirs();
+
+        context = new DefaultCamelContext();
+        context.start();
+
+        if ("hawtdb".equals(repository)) {
+            repo = new HawtDBAggregationRepository("benchmark", DIRECTORY + "/hawtdb.dat");
+        } else if ("mapped".equals(repository)) {
+            repo = new MappedAggregationRepository(DIRECTORY + "/mapped.log");
+        } else {
+            repo = new MemoryAggregationRepository();
+        }
+        ((Service) repo).start();
+
+        exchange = new DefaultExchange(context);
+        exchange.getIn().setBody("ABC");
+        exchange.getIn().setHeader("myId", 1);
+        for (int i = 0; i < openGroups; i++) {
+            repo.add(context, "group" + i, exchange);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ((Service) repo).stop();
+        context.stop();
+    }
+
+    private String nextKey() {
+        counter = (counter + 1) % openGroups;
+        return "group" + counter;
+    }
+
+    @Benchmark
+    public Exchange add() {
+        return repo.add(context, nextKey(), exchange);
+    }
+
+    @Benchmark
+    public Exchange get() {
+        return repo.get(context, nextKey());
+    }
+
+    @Benchmark
+    public void removeAndConfirm() {
+        // complete a group and start it again, so the number of open groups stays the same
+        String key = nextKey();
+        Exchange completed = new DefaultExchange(context);
+        completed.getIn().setBody("ABC");
+        repo.remove(context, key, completed);
+        repo.confirm(context, completed.getExchangeId());
+        repo.add(context, key, exchange);
+    }
+
+}
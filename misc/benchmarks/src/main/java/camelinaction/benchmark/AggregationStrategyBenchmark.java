@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.CombineDataAggregationStrategy;
+import camelinaction.InventoryBatcher;
+import camelinaction.MyAggregationStrategy;
+import camelinaction.StringBuilderAggregationStrategy;
+import camelinaction.UpdateInventory;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.aggregate.AggregationStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the aggregation strategies by aggregating a group of messages up to the completion size.
+ * <p/>
+ * The score is groups per millisecond, so the cost per message is the score divided by the completion size.
+ * The exchanges are created as part of the benchmark, which is the same for all the strategies.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationStrategyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int completionSize;
+
+    private CamelContext context;
+    private AggregationStrategy concat;
+    private StringBuilderAggregationStrategy stringBuilder;
+    private AggregationStrategy combineData;
+    private InventoryBatcher batcher;
+    private UpdateInventory update;
+
+    @Setup
+    public void setup() throws Exception {
+        context = new DefaultCamelContext();
+        context.start();
+
+        concat = new MyAggregationStrategy();
+        stringBuilder = new StringBuilderAggregationStrategy();
+        combineData = new CombineDataAggregationStrategy();
+        batcher = new InventoryBatcher();
+        batcher.setBatchSize(completionSize);
+        update = new UpdateInventory("123", "4567", "bumper", "4");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Benchmark
+    public Exchange stringConcat() {
+        Exchange answer = null;
+        for (int i = 0; i < completionSize; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody("A");
+            answer = concat.aggregate(answer, exchange);
+        }
+        return answer;
+    }
+
+    @Benchmark
+    public Exchange stringBuilder() {
+        Exchange answer = null;
+        for (int i = 0; i < completionSize; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody("A");
+            answer = stringBuilder.aggregate(answer, exchange);
+        }
+        stringBuilder.complete(answer);
+        return answer;
+    }
+
+    @Benchmark
+    public Exchange combineData() {
+        Exchange answer = null;
+        for (int i = 0; i < completionSize; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.setProperty(Exchange.TO_ENDPOINT, i % 2 == 0 ? "seda:erp" : "seda:crm");
+            exchange.getIn().setBody("A");
+            answer = combineData.aggregate(answer, exchange);
+        }
+        return answer;
+    }
+
+    @Benchmark
+    public Exchange inventoryBatcher() {
+        Exchange answer = null;
+        for (int i = 0; i < completionSize; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody(update);
+            answer = batcher.aggregate(answer, exchange);
+        }
+        return answer;
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.CsvLine;
+import camelinaction.InventoryService;
+import camelinaction.MappedFileSplitter;
+import camelinaction.UpdateInventory;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ExpressionBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.IOHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks splitting the big CSV file from the chapter 10 example with the <tt>tokenize("\n")</tt> expression
+ * from the book, against the memory mapped {@link MappedFileSplitter}.
+ * <p/>
+ * The <tt>split</tt> benchmarks only iterate the lines and convert them to model objects, the <tt>route</tt>
+ * benchmarks run them through a streaming Splitter, without the simulated delay of updating the inventory.
+ * <p/>
+ * The score is lines per millisecond.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BigFileSplitBenchmark {
+
+    private static final int LINES = 100000;
+
+    private File file;
+    private InventoryService service;
+    private MappedFileSplitter splitter;
+    private Expression tokenizer;
+    private CamelContext context;
+    private ProducerTemplate template;
+
+    @Setup
+    public void setup() throws Exception {
+        file = File.createTempFile("inventory", ".csv");
+        OutputStream os = new FileOutputStream(file);
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < LINES; i++) {
+                sb.append("123,").append(i).append(",bumper,4\n");
+            }
+            os.write(sb.toString().getBytes("UTF-8"));
+        } finally {
+            IOHelper.close(os);
+        }
+
+        service = new InventoryService();
+        splitter = new MappedFileSplitter();
+        tokenizer = ExpressionBuilder.tokenizeExpression(ExpressionBuilder.bodyExpression(), "\n");
+
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:tokenize")
+                    .split(body().tokenize("\n")).streaming()
+                        .bean(service, "csvToObject")
+                    .end();
+
+                from("direct:mapped")
+                    .split(splitter).streaming()
+                        .bean(service, "csvToObject")
+                    .end();
+            }
+        });
+        context.start();
+        template = context.createProducerTemplate();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        template.stop();
+        context.stop();
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void splitTokenize(Blackhole bh) throws Exception {
+        // read from a stream we close ourselves, as the scanner from the tokenizer is not closed
+        InputStream is = context.getTypeConverter().convertTo(InputStream.class, file);
+        try {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody(is);
+            Iterator<?> it = tokenizer.evaluate(exchange, Iterator.class);
+            while (it.hasNext()) {
+                UpdateInventory update = service.csvToObject((String) it.next());
+                bh.consume(update);
+            }
+        } finally {
+            IOHelper.close(is);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void splitMapped(Blackhole bh) throws Exception {
+        Iterator<CsvLine> it = splitter.split(file);
+        try {
+            while (it.hasNext()) {
+                UpdateInventory update = service.csvToObject(it.next());
+                bh.consume(update);
+            }
+        } finally {
+            IOHelper.close((Closeable) it);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void routeTokenize() throws Exception {
+        template.sendBody("direct:tokenize", file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void routeMapped() throws Exception {
+        template.sendBody("direct:mapped", file);
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.CompiledChoiceProcessor;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.ExpressionBuilder;
+import org.apache.camel.builder.ValueBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.processor.ChoiceProcessor;
+import org.apache.camel.processor.FilterProcessor;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.ServiceHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the content-based router from the chapter 2 cbr example with a number of
+ * <tt>when(header("CamelFileName").endsWith(...))</tt> branches, using the sequential
+ * {@link ChoiceProcessor} and the {@link CompiledChoiceProcessor}.
+ * <p/>
+ * The file name matches the last branch, which is the worst case for the sequential router.
+ * The score is routed messages per millisecond.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChoiceBenchmark {
+
+    @Param({"sequential", "compiled"})
+    private String router;
+
+    @Param({"2", "10", "100", "1000"})
+    private int branches;
+
+    private CamelContext context;
+    private AsyncProcessor choice;
+    private Exchange exchange;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new DefaultCamelContext();
+        context.start();
+
+        Processor noop = new Processor() {
+            public void process(Exchange exchange) throws Exception {
+                // noop
+            }
+        };
+        List<FilterProcessor> filters = new ArrayList<FilterProcessor>();
+        for (int i = 0; i < branches; i++) {
+            ValueBuilder fileName = new ValueBuilder(ExpressionBuilder.headerExpression(Exchange.FILE_NAME));
+            filters.add(new FilterProcessor(fileName.endsWith(".e" + i), noop));
+        }
+
+        if ("compiled".equals(router)) {
+            choice = new CompiledChoiceProcessor(context, filters, noop);
+        } else {
+            choice = AsyncProcessorConverterHelper.convert(new ChoiceProcessor(filters, noop));
+        }
+        ServiceHelper.startService(choice);
+
+        exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "report.e" + (branches - 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ServiceHelper.stopService(choice);
+        context.stop();
+    }
+
+    @Benchmark
+    public Exchange route() throws Exception {
+        choice.process(exchange);
+        return exchange;
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.HashedTimingWheel;
+import org.apache.camel.support.DefaultTimeoutMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the cost of keeping track of the completion timeout of the open aggregation groups, using the
+ * timeout map of the built in completion timeout or the {@link HashedTimingWheel}.
+ * <p/>
+ * Each operation reschedules the timeout of a group, as when a message arrives, and checks for timeouts
+ * as the timeout checker does. The timeout map checks every open group, while the timing wheel only checks
+ * the groups in the current tick, so its cost only depends on the number of groups which actually time out.
+ * <p/>
+ * The score is operations per millisecond.
+ *
+ * @version $Revision: 134 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionTimeoutBenchmark {
+
+    private static final long TIMEOUT = 60000;
+
+    @Param({"10", "1000000"})
+    private int groups;
+
+    private ScheduledExecutorService executor;
+    private DefaultTimeoutMap<String, String> timeoutMap;
+    private HashedTimingWheel<String> wheel;
+    private String[] keys;
+    private long clock;
+    private int counter;
+    private long operations;
+
+    @Setup
+    public void setup() throws Exception {
+        keys = new String[groups];
+        for (int i = 0; i < groups; i++) {
+            keys[i] = "group" + i;
+        }
+
+        // the timeout map is not started, as the benchmark checks for timeouts itself
+        executor = Executors.newSingleThreadScheduledExecutor();
+        timeoutMap = new DefaultTimeoutMap<String, String>(executor, 1000);
+
+        // use a clock which advances 1 milli per 100 operations, as if 100 messages arrive per milli,
+        // and a turn of the wheel longer than the timeout
+        wheel = new HashedTimingWheel<String>(100, 1024) {
+            @Override
+            protected long currentTime() {
+                return clock;
+            }
+        };
+
+        // spread the groups over the timeout as they would have arrived over time
+        for (int i = 0; i < groups; i++) {
+            timeoutMap.put(keys[i], keys[i], TIMEOUT);
+            wheel.schedule(keys[i], (long) i * TIMEOUT / groups);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    private String nextKey() {
+        counter = (counter + 1) % groups;
+        return keys[counter];
+    }
+
+    @Benchmark
+    public int timeoutMap() {
+        String key = nextKey();
+        timeoutMap.put(key, key, TIMEOUT);
+        timeoutMap.purge();
+        return timeoutMap.size();
+    }
+
+    @Benchmark
+    public int timingWheel() {
+        if (++operations % 100 == 0) {
+            clock++;
+        }
+        wheel.schedule(nextKey(), TIMEOUT);
+        List<String> expired = wheel.expire();
+        // keep the groups open by scheduling them again
+        for (String key : expired) {
+            wheel.schedule(key, TIMEOUT);
+        }
+        return expired.size();
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.InventoryConverter;
+import camelinaction.PurchaseOrder;
+import camelinaction.PurchaseOrderConverter;
+import camelinaction.inventory.UpdateInventoryInput;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the type converters from chapter 3 and chapter 13.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+
+    private CamelContext context;
+    private Exchange exchange;
+    private byte[] purchaseOrder;
+    private String inventory;
+
+    @Setup
+    public void setup() throws Exception {
+        // the purchase order converter uses the Camel type converters
+        context = new DefaultCamelContext();
+        context.start();
+        exchange = new DefaultExchange(context);
+
+        purchaseOrder = "##START##AKC4433   179.95    3##END##".getBytes();
+        inventory = "123,4567,bumper,4";
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Benchmark
+    public PurchaseOrder purchaseOrderConverter() {
+        return PurchaseOrderConverter.toPurchaseOrder(purchaseOrder, exchange);
+    }
+
+    @Benchmark
+    public UpdateInventoryInput inventoryConverter() {
+        return InventoryConverter.toInput(inventory);
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.EndpointCache;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the routing slip and recipient list EIPs from the chapter 8 routing slip and chapter 2
+ * recipient list examples, where the bean computing where to go returns the uris as a <tt>String</tt>,
+ * or returns the endpoints from the {@link EndpointCache}.
+ * <p/>
+ * Each message is routed to three endpoints which do nothing, where one of them has options.
+ * The score is messages per millisecond.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicRoutingBenchmark {
+
+    private static final String SLIP = "direct:a,log:b?level=OFF&showBody=false,direct:c";
+
+    @Param({"uri", "cached"})
+    private String slip;
+
+    private CamelContext context;
+    private EndpointCache cache;
+    private Producer routingSlip;
+    private Producer recipientList;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new DefaultCamelContext();
+        context.disableJMX();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:slip").routingSlip("slip");
+                from("direct:recipients").recipientList(header("slip"));
+
+                from("direct:a").to("log:a?level=OFF");
+                from("direct:c").to("log:c?level=OFF");
+            }
+        });
+        context.start();
+
+        cache = EndpointCache.lookup(context);
+        routingSlip = context.getEndpoint("direct:slip").createProducer();
+        recipientList = context.getEndpoint("direct:recipients").createProducer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    private Exchange createExchange() {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody("Hello World");
+        // what the bean would return
+        if ("cached".equals(slip)) {
+            exchange.getIn().setHeader("slip", cache.getEndpoints(SLIP));
+        } else {
+            exchange.getIn().setHeader("slip", SLIP);
+        }
+        return exchange;
+    }
+
+    @Benchmark
+    public Exchange routingSlip() throws Exception {
+        Exchange exchange = createExchange();
+        routingSlip.process(exchange);
+        return exchange;
+    }
+
+    @Benchmark
+    public Exchange recipientList() throws Exception {
+        Exchange exchange = createExchange();
+        recipientList.process(exchange);
+        return exchange;
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.CsvLine;
+import camelinaction.InventoryRecord;
+import camelinaction.InventoryService;
+import camelinaction.UpdateInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks converting a CSV line from the chapter 10 big file example to a model object.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryServiceBenchmark {
+
+    private InventoryService service;
+    private String csv;
+    private CsvLine line;
+
+    @Setup
+    public void setup() throws Exception {
+        service = new InventoryService();
+        csv = "123,4567,bumper,4";
+
+        // a direct buffer, the same as the memory mapped regions from the MappedFileSplitter
+        byte[] bytes = csv.getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        line = new CsvLine(buffer, 0, bytes.length, new int[]{3, 8, 15, 17});
+    }
+
+    @Benchmark
+    public UpdateInventory csvToObject() {
+        return service.csvToObject(csv);
+    }
+
+    @Benchmark
+    public UpdateInventory csvLineToObject() {
+        return service.csvToObject(line);
+    }
+
+    @Benchmark
+    public InventoryRecord csvLineToRecord() {
+        return service.csvToRecord(line);
+    }
+
+    @Benchmark
+    public InventoryRecord csvLineToFlyweight() {
+        return service.csvToFlyweight(line);
+    }
+
+}
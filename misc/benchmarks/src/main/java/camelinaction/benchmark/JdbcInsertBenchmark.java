@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.JdbcBatchInserter;
+import camelinaction.OrderToSqlBean;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.impl.SimpleRegistry;
+import org.hsqldb.jdbc.jdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks inserting orders into an in memory HSQLDB database, one literal insert statement per order
+ * using the jdbc component as in the chapter 7 JDBC example, against the {@link JdbcBatchInserter}.
+ * <p/>
+ * The score is rows per millisecond.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcInsertBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({"10", "100", "1000"})
+    private int batchSize;
+
+    private CamelContext context;
+    private ProducerTemplate template;
+    private jdbcDataSource dataSource;
+    private JdbcBatchInserter inserter;
+
+    @Setup
+    public void setup() throws Exception {
+        dataSource = new jdbcDataSource();
+        dataSource.setDatabase("jdbc:hsqldb:mem:benchmark");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        execute("create table incoming_orders (part_name varchar(20), quantity int, customer varchar(20))");
+
+        SimpleRegistry registry = new SimpleRegistry();
+        registry.put("dataSource", dataSource);
+        context = new DefaultCamelContext(registry);
+        inserter = new JdbcBatchInserter(dataSource, OrderToSqlBean.INSERT_SQL);
+        inserter.setBatchSize(batchSize);
+        context.addService(inserter);
+        context.start();
+        template = context.createProducerTemplate();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteRows() throws Exception {
+        execute("delete from incoming_orders");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+        execute("drop table incoming_orders");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void statementPerRow() {
+        for (int i = 0; i < ROWS; i++) {
+            template.sendBody("jdbc:dataSource", "insert into incoming_orders (part_name, quantity, customer) values ('motor', '"
+                    + i + "', 'honda')");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void batchInserter() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(ROWS);
+        AsyncCallback callback = new AsyncCallback() {
+            public void done(boolean doneSync) {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < ROWS; i++) {
+            Exchange exchange = new DefaultExchange(context);
+            exchange.getIn().setBody(new Object[] {"motor", i, "honda"});
+            inserter.process(exchange, callback);
+        }
+        inserter.flush();
+        latch.await();
+    }
+
+    private void execute(String sql) throws Exception {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().execute(sql);
+        } finally {
+            connection.close();
+        }
+    }
+
+}
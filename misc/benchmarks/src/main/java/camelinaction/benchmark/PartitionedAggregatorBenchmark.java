@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.CorrelationPartitioner;
+import camelinaction.MyAggregationStrategy;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Aggregator EIP with many correlation keys sent concurrently from all cores, using a
+ * single aggregator or the {@link CorrelationPartitioner} to partition the keys across N aggregators.
+ * <p/>
+ * With 1 partition all messages go through a single aggregator, which is the same as not partitioning.
+ * To see how the throughput scales with the number of threads, run with <tt>-t 1</tt>, <tt>-t 2</tt>
+ * and so on, instead of the default of one thread per core.
+ * <p/>
+ * The score is messages per millisecond.
+ *
+ * @version $Revision: 133 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class PartitionedAggregatorBenchmark {
+
+    @Param({"1", "16"})
+    private int partitions;
+
+    @Param({"10000"})
+    private int keys;
+
+    private CamelContext context;
+    private ProducerTemplate template;
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private final Random random = new Random();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:start")
+                    .process(new CorrelationPartitioner(header("myId"), "direct:aggregate", partitions));
+
+                for (int i = 0; i < partitions; i++) {
+                    from("direct:aggregate-" + i)
+                        .aggregate(header("myId"), new MyAggregationStrategy()).completionSize(3)
+                            .to("log:completed?level=OFF");
+                }
+            }
+        });
+        context.start();
+        template = context.createProducerTemplate();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        template.stop();
+        context.stop();
+    }
+
+    @Benchmark
+    public void aggregate(Keys state) {
+        template.sendBodyAndHeader("direct:start", "A", "myId", state.random.nextInt(keys));
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.BatchSedaConsumer;
+import camelinaction.RingBufferSedaComponent;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.seda.SedaEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a <tt>seda</tt> consumer taking one exchange per poll, against the {@link BatchSedaConsumer}
+ * taking up to <tt>batchSize</tt> exchanges per poll, routed one by one or as a grouped exchange.
+ * The messages are added to the queue directly, so the producer side is not part of the measurement.
+ * <p/>
+ * The score is messages per millisecond.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SedaBatchBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"1", "10", "100"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean groupExchanges;
+
+    private CamelContext context;
+    private SedaEndpoint endpoint;
+    private volatile CountDownLatch latch;
+
+    @Setup
+    public void setup() throws Exception {
+        context = new DefaultCamelContext();
+        context.addComponent("seda", new RingBufferSedaComponent());
+        endpoint = context.getEndpoint("seda:audit?batchSize=" + batchSize + "&groupExchanges=" + groupExchanges,
+                SedaEndpoint.class);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from(endpoint).process(new Processor() {
+                    public void process(Exchange exchange) throws Exception {
+                        Integer size = exchange.getProperty(Exchange.BATCH_SIZE, Integer.class);
+                        for (int i = size != null ? size : 1; i > 0; i--) {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+        });
+        context.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void consume() throws Exception {
+        latch = new CountDownLatch(MESSAGES);
+        // add to the queue directly so only the consumer side is measured
+        for (int i = 0; i < MESSAGES; i++) {
+            Exchange exchange = endpoint.createExchange();
+            exchange.getIn().setBody("123,4444,20100110,222,1");
+            endpoint.getQueue().add(exchange);
+        }
+        latch.await();
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.RingBufferQueue;
+import camelinaction.RingBufferQueue.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Benchmarks handing off messages between producers and consumers through the queue of a <tt>seda</tt>
+ * endpoint, using the default <tt>LinkedBlockingQueue</tt>, an <tt>ArrayBlockingQueue</tt> and the
+ * {@link RingBufferQueue} with each of its wait strategies.
+ * <p/>
+ * The producers and consumers use the timed <tt>offer</tt> and <tt>poll</tt> methods, the same way as
+ * the <tt>seda</tt> consumer polls its queue. The number of producers and consumers is set with the
+ * JMH thread groups option, eg 4 producers and 4 consumers:
+ * <pre>
+ * java -jar target/benchmarks.jar SedaQueueBenchmark -tg 4,4
+ * </pre>
+ * The score is messages per millisecond, where the <tt>offer</tt> and <tt>poll</tt> scores should be
+ * about the same, as every message offered is also polled.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SedaQueueBenchmark {
+
+    private static final Object MESSAGE = new Object();
+
+    @Param({"linked", "array", "blocking", "yielding", "busySpin"})
+    private String queueType;
+
+    @Param({"1024"})
+    private int capacity;
+
+    private BlockingQueue<Object> queue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        if ("linked".equals(queueType)) {
+            queue = new LinkedBlockingQueue<Object>(capacity);
+        } else if ("array".equals(queueType)) {
+            queue = new ArrayBlockingQueue<Object>(capacity);
+        } else {
+            queue = new RingBufferQueue<Object>(capacity, WaitStrategy.valueOf(queueType));
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean offer(Control control) throws InterruptedException {
+        // give up when the iteration is over, as the consumers may have stopped polling
+        while (!control.stopMeasurement) {
+            if (queue.offer(MESSAGE, 1, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public Object poll(Control control) throws InterruptedException {
+        while (!control.stopMeasurement) {
+            Object answer = queue.poll(1, TimeUnit.MILLISECONDS);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.OrderCsvToXmlBean;
+import camelinaction.OrderToCsvBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the beans which transform orders in chapter 3 and chapter 12.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    private OrderToCsvBean orderToCsv;
+    private OrderCsvToXmlBean orderCsvToXml;
+    private String inhouse;
+    private String csv;
+
+    @Setup
+    public void setup() {
+        orderToCsv = new OrderToCsvBean();
+        orderCsvToXml = new OrderCsvToXmlBean();
+
+        inhouse = "0000005555000001144120091209  2319@1108";
+        csv = "123,4444,20100110,222,1";
+    }
+
+    @Benchmark
+    public String orderToCsv() {
+        return orderToCsv.map(inhouse);
+    }
+
+    @Benchmark
+    public String orderCsvToXml() {
+        return orderCsvToXml.fromCsvToXml(csv);
+    }
+
+}
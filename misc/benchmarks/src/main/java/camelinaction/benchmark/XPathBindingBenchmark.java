@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package camelinaction.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import camelinaction.FastXPath;
+import camelinaction.OrderToSqlBean;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks binding the parameters of the {@link OrderToSqlBean} from the chapter 7 JDBC example
+ * using the regular <tt>@XPath</tt> annotation, against the same bean using <tt>@FastXPath</tt>.
+ *
+ * @version $Revision: 95 $
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathBindingBenchmark {
+
+    private static final String ORDER = "<order name=\"motor\" amount=\"1\" customer=\"honda\"/>";
+
+    private CamelContext context;
+    private ProducerTemplate template;
+
+    @Setup
+    public void setup() throws Exception {
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:xpath").bean(new OrderToSqlBean(), "toSql");
+                from("direct:fastXPath").bean(new FastXPathOrderToSqlBean());
+            }
+        });
+        context.start();
+        template = context.createProducerTemplate();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Benchmark
+    public Object xpath() {
+        return template.requestBody("direct:xpath", ORDER);
+    }
+
+    @Benchmark
+    public Object fastXPath() {
+        return template.requestBody("direct:fastXPath", ORDER);
+    }
+
+    /**
+     * The {@link OrderToSqlBean} using <tt>@FastXPath</tt>
+     */
+    public static class FastXPathOrderToSqlBean {
+
+        public String toSql(@FastXPath("order/@name") String name,
+                            @FastXPath("order/@amount") int amount,
+                            @FastXPath("order/@customer") String customer) {
+            return "insert into incoming_orders (part_name, quantity, customer) values ('"
+                    + name + "', " + amount + ", '" + customer + "')";
+        }
+    }
+
+}